@@ -93,6 +93,10 @@ val rewriteDependencies = configurations.create("rewriteDependencies")
 configurations.named("compileOnly").configure {
     extendsFrom(rewriteDependencies)
 }
+// The classes of the isolated package are unit tested directly, outside of the isolated class loader
+configurations.named("testImplementation").configure {
+    extendsFrom(rewriteDependencies)
+}
 
 dependencies {
     "rewriteDependencies"(platform("org.openrewrite:rewrite-bom:$latest"))
@@ -5,12 +5,15 @@
 package org.openrewrite.gradle;
 
 import org.gradle.api.DefaultTask;
+import org.gradle.api.file.FileCollection;
 import org.gradle.api.file.ProjectLayout;
 import org.gradle.api.provider.Provider;
 import org.gradle.api.tasks.Input;
 import org.gradle.api.tasks.Internal;
 import org.gradle.api.tasks.options.Option;
 import org.gradle.util.GradleVersion;
+import org.gradle.workers.WorkerExecutor;
+import org.jspecify.annotations.Nullable;
 
 import javax.inject.Inject;
 import java.io.File;
@@ -26,9 +29,25 @@ public abstract class AbstractRewriteTask extends DefaultTask {
     protected GradleProjectParser gpp;
     protected RewriteExtension extension;
 
+    @Nullable
+    protected FileCollection parsedSources;
+
     protected AbstractRewriteTask() {
-        if (GradleVersion.current().compareTo(GradleVersion.version("7.4")) >= 0) {
-            notCompatibleWithConfigurationCache("org.openrewrite.rewrite needs to parse the whole project");
+        this(false);
+    }
+
+    /**
+     * @param configurationCacheCompatible Whether the task works without the project when it runs. Tasks which parse
+     *                                     the project need it, so they can't be restored from the configuration cache.
+     *                                     {@link RecipeEnvironmentModel} only captures what it takes to set up recipes
+     *                                     and styles, not the source sets, classpaths, compile options, build scripts
+     *                                     or Android variants that parsing reads from the project.
+     */
+    protected AbstractRewriteTask(boolean configurationCacheCompatible) {
+        if (!configurationCacheCompatible && GradleVersion.current().compareTo(GradleVersion.version("7.4")) >= 0) {
+            notCompatibleWithConfigurationCache("org.openrewrite.rewrite reads source sets, classpaths, compile " +
+                                                "options, build scripts and Android variants from the project " +
+                                                "while parsing it");
         }
     }
 
@@ -38,6 +57,16 @@ public abstract class AbstractRewriteTask extends DefaultTask {
         return (T) this;
     }
 
+    /**
+     * @param parsedSources The directories that the {@link RewriteParseTask} of each project writes to, which are
+     *                      used instead of parsing when {@link RewriteExtension#isParseEachProjectSeparately()} is set.
+     */
+    public <T extends AbstractRewriteTask> T setParsedSources(FileCollection parsedSources) {
+        this.parsedSources = parsedSources;
+        //noinspection unchecked
+        return (T) this;
+    }
+
     public <T extends AbstractRewriteTask> T setResolvedDependencies(Provider<Set<File>> resolvedDependencies) {
         this.resolvedDependencies = resolvedDependencies;
         //noinspection unchecked
@@ -59,6 +88,33 @@ public abstract class AbstractRewriteTask extends DefaultTask {
         throw new AssertionError("unexpected; getProjectLayout() should be overridden by Gradle");
     }
 
+    @Inject
+    public WorkerExecutor getWorkerExecutor() {
+        throw new AssertionError("unexpected; getWorkerExecutor() should be overridden by Gradle");
+    }
+
+    /**
+     * @return Whether to run the active recipes in a worker process, see {@link RewriteExtension#isRunInWorkerProcess()}.
+     */
+    protected boolean isRunInWorkerProcess() {
+        if (extension == null || !extension.isRunInWorkerProcess()) {
+            return false;
+        }
+        if (GradleVersion.current().compareTo(GradleVersion.version("5.6")) < 0) {
+            getLogger().warn("Running recipes in a worker process requires Gradle 5.6 or later. Running them in the build's own process instead.");
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * @return Whether to run recipes against the sources parsed by the {@link RewriteParseTask} of each project, see
+     * {@link RewriteExtension#isParseEachProjectSeparately()}.
+     */
+    protected boolean isParsingEachProjectSeparately() {
+        return parsedSources != null && extension != null && extension.isParseEachProjectSeparately();
+    }
+
     @Internal
     protected <T extends GradleProjectParser> T getProjectParser() {
         if (gpp == null) {
@@ -76,6 +132,11 @@ public abstract class AbstractRewriteTask extends DefaultTask {
                     .map(File::toPath)
                     .collect(Collectors.toSet());
             gpp = new DelegatingProjectParser(getProject(), extension, classpath);
+            if (parsedSources != null && isParsingEachProjectSeparately()) {
+                gpp.useExportedSources(parsedSources.getFiles().stream()
+                        .map(File::toPath)
+                        .collect(Collectors.toList()));
+            }
         }
         //noinspection unchecked
         return (T) gpp;
@@ -8,15 +8,23 @@ import org.gradle.api.Project;
 import org.gradle.internal.service.ServiceRegistry;
 import org.jspecify.annotations.Nullable;
 
+import java.io.IOException;
+import java.lang.ref.WeakReference;
 import java.lang.reflect.InvocationTargetException;
 import java.net.MalformedURLException;
 import java.net.URI;
 import java.net.URL;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.Callable;
 import java.util.function.Consumer;
@@ -29,39 +37,47 @@ public class DelegatingProjectParser implements GradleProjectParser {
     protected static RewriteClassLoader rewriteClassLoader;
     protected final GradleProjectParser gpp;
 
+    private static final int MAX_REWRITE_CLASS_LOADERS = 4;
+
+    /**
+     * The classloaders made of {@link #rewriteClasspath}, by the plugin classloader that they fall back on. Access is
+     * guarded by the class.
+     */
+    private static final Map<ClassLoader, RewriteClassLoader> REWRITE_CLASS_LOADERS =
+            new LinkedHashMap<ClassLoader, RewriteClassLoader>(MAX_REWRITE_CLASS_LOADERS, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<ClassLoader, RewriteClassLoader> eldest) {
+                    if (size() <= MAX_REWRITE_CLASS_LOADERS) {
+                        return false;
+                    }
+                    retire(eldest.getValue());
+                    return true;
+                }
+            };
+
+    /**
+     * What is using each classloader that has been handed out. Access is guarded by the class.
+     */
+    private static final Map<RewriteClassLoader, ClassLoaderUsers> CLASS_LOADER_USERS = new HashMap<>();
+
+    /**
+     * Classloaders that are no longer handed out, but which a parser of another task running in parallel may still be
+     * using. Each is closed once nothing uses it anymore. Access is guarded by the class.
+     */
+    private static final Set<RewriteClassLoader> RETIRED_CLASS_LOADERS = new HashSet<>();
+
     public DelegatingProjectParser(Project project, RewriteExtension extension, Set<Path> classpath) {
         try {
-            List<URL> classpathUrls = classpath.stream()
-                    .map(Path::toUri)
-                    .map(uri -> {
-                        try {
-                            return uri.toURL();
-                        } catch (MalformedURLException e) {
-                            throw new RuntimeException(e);
-                        }
-                    })
-                    .collect(Collectors.toList());
-
+            List<URL> classpathUrls = toUrls(classpath);
             @SuppressWarnings("ConstantConditions")
             URL currentJar = jarContainingResource(getClass()
                     .getResource("/org/openrewrite/gradle/isolated/DefaultProjectParser.class")
                     .toString());
             classpathUrls.add(currentJar);
 
-            ClassLoader pluginClassLoader = getPluginClassLoader(project);
-
-            if (rewriteClassLoader == null ||
-                    !classpathUrls.equals(rewriteClasspath) ||
-                    rewriteClassLoader.getPluginClassLoader() != pluginClassLoader) {
-                if (rewriteClassLoader != null) {
-                    rewriteClassLoader.close();
-                }
-                rewriteClassLoader = new RewriteClassLoader(classpathUrls, pluginClassLoader);
-                rewriteClasspath = classpathUrls;
-            }
-
-            Class<?> gppClass = Class.forName("org.openrewrite.gradle.isolated.DefaultProjectParser", true, rewriteClassLoader);
-            assert (gppClass.getClassLoader() == rewriteClassLoader) : "DefaultProjectParser must be loaded from RewriteClassLoader to be sufficiently isolated from Gradle's classpath";
+            ClassLoader isolatedClassLoader = rewriteClassLoader(classpathUrls, getPluginClassLoader(project), this);
+            Class<?> gppClass = Class.forName("org.openrewrite.gradle.isolated.DefaultProjectParser", true, isolatedClassLoader);
+            assert (gppClass.getClassLoader() == isolatedClassLoader) : "DefaultProjectParser must be loaded from RewriteClassLoader to be sufficiently isolated from Gradle's classpath";
             gpp = (GradleProjectParser) gppClass.getDeclaredConstructor(Project.class, RewriteExtension.class)
                     .newInstance(project, extension);
 
@@ -70,6 +86,148 @@ public class DelegatingProjectParser implements GradleProjectParser {
         }
     }
 
+    /**
+     * List the available and active recipes and styles without the project, so that this can be done by a task that
+     * is restored from the configuration cache.
+     */
+    public static void discoverRecipes(RecipeEnvironmentModel model, Set<Path> classpath) {
+        runIsolated(classpath, "org.openrewrite.gradle.isolated.RecipeDiscovery",
+                new Class<?>[]{RecipeEnvironmentModel.class}, model);
+    }
+
+    /**
+     * Merge the reports and summaries of the shards of a dry run, see {@link RewriteMergeResultsTask}.
+     */
+    public static void mergeDryRunResults(List<Path> shardReportPaths, Path reportPath, Set<Path> classpath) {
+        runIsolated(classpath, "org.openrewrite.gradle.isolated.DryRunResultsMerger",
+                new Class<?>[]{List.class, Path.class}, shardReportPaths, reportPath);
+    }
+
+    /**
+     * Log the results of a dry run from its summary, for a dry run that was taken from the build cache.
+     */
+    public static void logDryRunSummary(Path reportPath, Set<Path> classpath) {
+        runIsolated(classpath, "org.openrewrite.gradle.isolated.DryRunSummaryLogger",
+                new Class<?>[]{Path.class}, reportPath);
+    }
+
+    /**
+     * Run the named {@link Runnable} of the isolated package, in the classloader for what runs without the project,
+     * for which the plugin's own classloader suffices.
+     */
+    private static void runIsolated(Set<Path> classpath, String className, Class<?>[] parameterTypes, Object... args) {
+        unwrapInvocationException(() -> {
+            List<URL> classpathUrls = toUrls(classpath);
+            @SuppressWarnings("ConstantConditions")
+            URL currentJar = jarContaining(DelegatingProjectParser.class
+                    .getResource("/org/openrewrite/gradle/isolated/DefaultProjectParser.class")
+                    .toString());
+            classpathUrls.add(currentJar);
+            RewriteClassLoader classLoader = rewriteClassLoader(classpathUrls, DelegatingProjectParser.class.getClassLoader(), null);
+            try {
+                Class<?> runnableClass = Class.forName(className, true, classLoader);
+                ((Runnable) runnableClass.getDeclaredConstructor(parameterTypes).newInstance(args)).run();
+            } finally {
+                release(classLoader);
+            }
+            return null;
+        });
+    }
+
+    private static List<URL> toUrls(Set<Path> classpath) {
+        return classpath.stream()
+                .map(Path::toUri)
+                .map(uri -> {
+                    try {
+                        return uri.toURL();
+                    } catch (MalformedURLException e) {
+                        throw new RuntimeException(e);
+                    }
+                })
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Reuse the classloader of the previous build as long as it is made of the same classpath, which spares loading
+     * and JIT-compiling rewrite all over again. Projects that apply the Android plugin need a classloader of their own,
+     * and their tasks may run in parallel with those of other projects, so a few are kept, one per plugin classloader.
+     *
+     * @param parser The parser that uses the classloader for as long as it is reachable, or {@code null} for a single
+     *               call that must {@link #release(RewriteClassLoader)} the classloader once it is done.
+     */
+    private static synchronized RewriteClassLoader rewriteClassLoader(List<URL> classpathUrls, ClassLoader pluginClassLoader,
+                                                                      @Nullable DelegatingProjectParser parser) {
+        closeRetiredClassLoaders();
+        if (!classpathUrls.equals(rewriteClasspath)) {
+            for (RewriteClassLoader classLoader : REWRITE_CLASS_LOADERS.values()) {
+                retire(classLoader);
+            }
+            REWRITE_CLASS_LOADERS.clear();
+            rewriteClasspath = classpathUrls;
+        }
+        RewriteClassLoader classLoader = REWRITE_CLASS_LOADERS.get(pluginClassLoader);
+        if (classLoader == null) {
+            classLoader = new RewriteClassLoader(classpathUrls, pluginClassLoader);
+            REWRITE_CLASS_LOADERS.put(pluginClassLoader, classLoader);
+        }
+        ClassLoaderUsers users = CLASS_LOADER_USERS.computeIfAbsent(classLoader, cl -> new ClassLoaderUsers());
+        if (parser == null) {
+            users.calls++;
+        } else {
+            users.parsers.add(new WeakReference<>(parser));
+        }
+        rewriteClassLoader = classLoader;
+        return classLoader;
+    }
+
+    private static synchronized void release(RewriteClassLoader classLoader) {
+        ClassLoaderUsers users = CLASS_LOADER_USERS.get(classLoader);
+        if (users != null) {
+            users.calls--;
+        }
+        closeRetiredClassLoaders();
+    }
+
+    /**
+     * Stop handing out the classloader, and close it as soon as nothing uses it anymore.
+     */
+    private static void retire(RewriteClassLoader classLoader) {
+        RETIRED_CLASS_LOADERS.add(classLoader);
+        closeRetiredClassLoaders();
+    }
+
+    private static void closeRetiredClassLoaders() {
+        for (Iterator<RewriteClassLoader> retired = RETIRED_CLASS_LOADERS.iterator(); retired.hasNext(); ) {
+            RewriteClassLoader classLoader = retired.next();
+            ClassLoaderUsers users = CLASS_LOADER_USERS.get(classLoader);
+            if (users != null && users.isInUse()) {
+                continue;
+            }
+            retired.remove();
+            CLASS_LOADER_USERS.remove(classLoader);
+            try {
+                classLoader.close();
+            } catch (IOException ignored) {
+                // Its jars are released when it is garbage collected instead
+            }
+        }
+    }
+
+    /**
+     * The parsers made with a classloader, which use it for as long as they are reachable, and the number of calls
+     * into it that are still in progress. The tasks holding on to parsers are released at the end of the build, so
+     * a retired classloader is closed by a later build at the latest.
+     */
+    private static final class ClassLoaderUsers {
+        private final List<WeakReference<DelegatingProjectParser>> parsers = new ArrayList<>();
+        private int calls;
+
+        boolean isInUse() {
+            parsers.removeIf(parser -> parser.get() == null);
+            return calls > 0 || !parsers.isEmpty();
+        }
+    }
+
     @Override
     public List<String> getActiveRecipes() {
         return unwrapInvocationException(gpp::getActiveRecipes);
@@ -98,6 +256,11 @@ public class DelegatingProjectParser implements GradleProjectParser {
         return unwrapInvocationException(gpp::listSources);
     }
 
+    @Override
+    public Collection<Path> listProjectSources() {
+        return unwrapInvocationException(gpp::listProjectSources);
+    }
+
     @Override
     public void run(Consumer<Throwable> onError) {
         unwrapInvocationException(() -> {
@@ -114,6 +277,35 @@ public class DelegatingProjectParser implements GradleProjectParser {
         });
     }
 
+    @Override
+    public @Nullable Path exportSources(Path dir, Consumer<Throwable> onError) {
+        return unwrapInvocationException(() -> gpp.exportSources(dir, onError));
+    }
+
+    @Override
+    public void exportProjectSources(Path dir, Consumer<Throwable> onError) {
+        unwrapInvocationException(() -> {
+            gpp.exportProjectSources(dir, onError);
+            return null;
+        });
+    }
+
+    @Override
+    public void useExportedSources(Collection<Path> dirs) {
+        unwrapInvocationException(() -> {
+            gpp.useExportedSources(dirs);
+            return null;
+        });
+    }
+
+    @Override
+    public void useShard(int index, int count) {
+        unwrapInvocationException(() -> {
+            gpp.useShard(index, count);
+            return null;
+        });
+    }
+
     @Override
     public void shutdownRewrite() {
         unwrapInvocationException(() -> {
@@ -123,6 +315,10 @@ public class DelegatingProjectParser implements GradleProjectParser {
     }
 
     protected URL jarContainingResource(String resourcePath) {
+        return jarContaining(resourcePath);
+    }
+
+    private static URL jarContaining(String resourcePath) {
         try {
             if (resourcePath.startsWith("jar:")) {
                 resourcePath = resourcePath.substring(4);
@@ -148,7 +344,7 @@ public class DelegatingProjectParser implements GradleProjectParser {
      * This highlights the actual cause of a problem, allowing Gradle's console to display something useful like
      * "Recipe validation errors detected ..." rather than only "InvocationTargetException ..."
      */
-    private <T> T unwrapInvocationException(Callable<T> supplier) {
+    private static <T> T unwrapInvocationException(Callable<T> supplier) {
         try {
             return supplier.call();
         } catch (InvocationTargetException e) {
@@ -0,0 +1,72 @@
+/*
+ * Licensed under the Moderne Source Available License.
+ * See https://docs.moderne.io/licensing/moderne-source-available-license
+ */
+package org.openrewrite.gradle;
+
+import org.jspecify.annotations.Nullable;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * One of several shards that a dry run is split into, so that each can run on a different machine. Shards are
+ * numbered from 1, as in "2/8" for the second of eight shards.
+ */
+final class DryRunShard {
+    private static final Pattern SPEC = Pattern.compile("(\\d+)/(\\d+)");
+    private static final Pattern DIR_NAME = Pattern.compile("shard-(\\d+)-of-(\\d+)");
+
+    private final int index;
+    private final int count;
+
+    private DryRunShard(int index, int count) {
+        if (count < 1 || index < 1 || index > count) {
+            throw new IllegalArgumentException("Shard " + index + "/" + count + " doesn't exist, expected a shard like 2/8 " +
+                                               "that is at least 1 and at most the number of shards");
+        }
+        this.index = index;
+        this.count = count;
+    }
+
+    static DryRunShard parse(String spec) {
+        Matcher matcher = SPEC.matcher(spec.trim());
+        if (!matcher.matches()) {
+            throw new IllegalArgumentException("Unable to parse shard \"" + spec + "\", expected a shard like 2/8");
+        }
+        return new DryRunShard(Integer.parseInt(matcher.group(1)), Integer.parseInt(matcher.group(2)));
+    }
+
+    /**
+     * @return The shard whose results are kept in the directory of the given name, or {@code null} if the directory
+     * isn't that of a shard.
+     */
+    static @Nullable DryRunShard fromDirName(String dirName) {
+        Matcher matcher = DIR_NAME.matcher(dirName);
+        if (!matcher.matches()) {
+            return null;
+        }
+        return new DryRunShard(Integer.parseInt(matcher.group(1)), Integer.parseInt(matcher.group(2)));
+    }
+
+    int getIndex() {
+        return index;
+    }
+
+    int getCount() {
+        return count;
+    }
+
+    /**
+     * The name of the directory that the results of this shard are kept in, next to where the results of an unsharded
+     * dry run would be.
+     */
+    String getDirName() {
+        return "shard-" + index + "-of-" + count;
+    }
+
+    @Override
+    public String toString() {
+        return index + "/" + count;
+    }
+}
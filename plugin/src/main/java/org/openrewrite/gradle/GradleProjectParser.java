@@ -5,6 +5,7 @@
 package org.openrewrite.gradle;
 
 import org.gradle.internal.service.ServiceRegistry;
+import org.jspecify.annotations.Nullable;
 
 import java.nio.file.Path;
 import java.util.Collection;
@@ -20,6 +21,12 @@ public interface GradleProjectParser {
 
     Collection<Path> listSources();
 
+    /**
+     * List only the sources of this project, leaving out those of its subprojects, which is what
+     * {@link #exportProjectSources(Path, Consumer)} parses.
+     */
+    Collection<Path> listProjectSources();
+
     void discoverRecipes(ServiceRegistry serviceRegistry);
 
     /**
@@ -34,5 +41,34 @@ public interface GradleProjectParser {
 
     void dryRun(Path reportPath, boolean dumpGcActivity, Consumer<Throwable> onError);
 
+    /**
+     * Parse every source file and write it to the given directory, so that the active recipes can be run against
+     * them in another process.
+     *
+     * @return The directory that the paths of the source files are relative to, or {@code null} if no recipes are
+     * active and so nothing was parsed.
+     */
+    @Nullable Path exportSources(Path dir, Consumer<Throwable> onError);
+
+    /**
+     * Parse only the sources of this project, leaving out those of its subprojects, and write them to the given
+     * directory. Each project can do this on its own, and {@link #useExportedSources(Collection)} brings them together.
+     */
+    void exportProjectSources(Path dir, Consumer<Throwable> onError);
+
+    /**
+     * Take the source files from directories written by {@link #exportProjectSources(Path, Consumer)} rather than
+     * parsing them.
+     */
+    void useExportedSources(Collection<Path> dirs);
+
+    /**
+     * Only parse the projects that fall into one of several shards, which are partitioned the same way every time.
+     *
+     * @param index The shard to parse the projects of, from 1 to the number of shards.
+     * @param count The number of shards.
+     */
+    void useShard(int index, int count);
+
     void shutdownRewrite();
 }
@@ -0,0 +1,98 @@
+/*
+ * Licensed under the Moderne Source Available License.
+ * See https://docs.moderne.io/licensing/moderne-source-available-license
+ */
+package org.openrewrite.gradle;
+
+import org.gradle.api.Project;
+import org.gradle.api.file.ConfigurableFileTree;
+import org.gradle.api.file.FileCollection;
+import org.gradle.api.file.FileTreeElement;
+import org.gradle.api.file.RelativePath;
+import org.jspecify.annotations.Nullable;
+
+import java.io.File;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.function.Supplier;
+import java.util.regex.Pattern;
+
+/**
+ * The files that {@link GradleProjectParser#listSources()} or {@link GradleProjectParser#listProjectSources()} lists,
+ * as seen from the root of the build. A listed directory stands for everything in it.
+ */
+class ListedSources {
+    private final Path rootDir;
+    private final Supplier<Collection<Path>> listSources;
+
+    @Nullable
+    private Set<String> listed;
+
+    /**
+     * Directories that contain listed files, which have to be walked to get to them.
+     */
+    @Nullable
+    private Set<String> parents;
+
+    @Nullable
+    private List<File> outsideRootDir;
+
+    private ListedSources(Path rootDir, Supplier<Collection<Path>> listSources) {
+        this.rootDir = rootDir;
+        this.listSources = listSources;
+    }
+
+    /**
+     * The listed files, which are only listed once the collection is first used. Those within the root of the build
+     * are in a file tree rooted there, so that they can be tracked relative to it.
+     */
+    static FileCollection files(Project project, Supplier<Collection<Path>> listSources) {
+        File rootDir = project.getRootDir();
+        ListedSources listed = new ListedSources(rootDir.toPath(), listSources);
+        ConfigurableFileTree withinRootDir = project.fileTree(rootDir);
+        withinRootDir.include(listed::isListed);
+        withinRootDir.exclude(element -> element.isDirectory() && !listed.isListed(element));
+        return project.files(withinRootDir, (Callable<List<File>>) listed::outsideRootDir);
+    }
+
+    private synchronized void list() {
+        if (listed != null) {
+            return;
+        }
+        listed = new HashSet<>();
+        parents = new HashSet<>();
+        outsideRootDir = new ArrayList<>();
+        for (Path source : listSources.get()) {
+            if (!source.startsWith(rootDir)) {
+                outsideRootDir.add(source.toFile());
+                continue;
+            }
+            String[] segments = rootDir.relativize(source).toString().split(Pattern.quote(File.separator));
+            listed.add(String.join("/", segments));
+            for (int i = 1; i < segments.length; i++) {
+                parents.add(String.join("/", Arrays.asList(segments).subList(0, i)));
+            }
+        }
+    }
+
+    private boolean isListed(FileTreeElement element) {
+        list();
+        assert listed != null && parents != null;
+        if (element.isDirectory() && parents.contains(element.getRelativePath().getPathString())) {
+            return true;
+        }
+        for (RelativePath path = element.getRelativePath(); path != null; path = path.getParent()) {
+            if (listed.contains(path.getPathString())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private List<File> outsideRootDir() {
+        list();
+        assert outsideRootDir != null;
+        return outsideRootDir;
+    }
+}
@@ -0,0 +1,125 @@
+/*
+ * Licensed under the Moderne Source Available License.
+ * See https://docs.moderne.io/licensing/moderne-source-available-license
+ */
+package org.openrewrite.gradle;
+
+import org.gradle.api.Project;
+import org.jspecify.annotations.Nullable;
+
+import java.io.File;
+import java.io.Serializable;
+import java.util.*;
+
+/**
+ * What it takes to set up the available and active recipes and styles, captured from the project while the build is
+ * configured. Unlike the project itself, it can be stored in Gradle's configuration cache, so that a task which only
+ * needs recipes and styles doesn't need the project when it runs.
+ * <p>
+ * It deliberately covers the recipe environment only. Parsing also needs the source sets and their compile
+ * classpaths, the Java and Kotlin compile options, the build scripts and their classpaths, the settings and the
+ * Android variants, none of which are captured here. That is why only {@link RewriteDiscoverTask} can be restored
+ * from the configuration cache, while {@link RewriteRunTask} and {@link RewriteDryRunTask} still need the project.
+ */
+public class RecipeEnvironmentModel implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private final List<String> activeRecipes;
+    private final List<String> activeStyles;
+    private final File configFile;
+    private final boolean configFileSetDeliberately;
+
+    /**
+     * The project properties that recipes and styles declared in YAML may refer to. Only properties with string
+     * values can be referred to, so only those are kept.
+     */
+    private final Map<String, String> properties;
+
+    /**
+     * Where the recipe catalog is kept, or {@code null} if it is not enabled.
+     */
+    @Nullable
+    private final File recipeCatalogDir;
+
+    public RecipeEnvironmentModel(List<String> activeRecipes,
+                                  List<String> activeStyles,
+                                  File configFile,
+                                  boolean configFileSetDeliberately,
+                                  Map<String, String> properties,
+                                  @Nullable File recipeCatalogDir) {
+        this.activeRecipes = new ArrayList<>(activeRecipes);
+        this.activeStyles = new ArrayList<>(activeStyles);
+        this.configFile = configFile;
+        this.configFileSetDeliberately = configFileSetDeliberately;
+        this.properties = new LinkedHashMap<>(properties);
+        this.recipeCatalogDir = recipeCatalogDir;
+    }
+
+    public static RecipeEnvironmentModel of(Project project, RewriteExtension extension) {
+        Map<String, String> properties = new LinkedHashMap<>();
+        for (Map.Entry<String, ?> entry : project.getProperties().entrySet()) {
+            if (entry.getKey() != null && entry.getValue() instanceof String) {
+                properties.put(entry.getKey(), (String) entry.getValue());
+            }
+        }
+        return new RecipeEnvironmentModel(
+                namesFromPropertyOr("activeRecipe", extension.getActiveRecipes()),
+                namesFromPropertyOr("activeStyle", extension.getActiveStyles()),
+                extension.getConfigFile(),
+                extension.getConfigFileSetDeliberately(),
+                properties,
+                extension.isEnableRecipeCatalog() ?
+                        new File(project.getGradle().getGradleUserHomeDir(), "caches/rewrite/recipe-catalog") :
+                        null);
+    }
+
+    private static List<String> namesFromPropertyOr(String property, List<String> names) {
+        String value = getPropertyWithVariantNames(property);
+        if (value == null) {
+            return names;
+        }
+        return Arrays.asList(value.split(","));
+    }
+
+    // By accident, we were inconsistent with the names of these properties between this and the maven plugin
+    // Check all variants of the name, preferring more-fully-qualified names
+    private static @Nullable String getPropertyWithVariantNames(String property) {
+        String maybeProp = System.getProperty("rewrite." + property + "s");
+        if (maybeProp == null) {
+            maybeProp = System.getProperty("rewrite." + property);
+        }
+        if (maybeProp == null) {
+            maybeProp = System.getProperty(property + "s");
+        }
+        if (maybeProp == null) {
+            maybeProp = System.getProperty(property);
+        }
+        return maybeProp;
+    }
+
+    public List<String> getActiveRecipes() {
+        return new ArrayList<>(activeRecipes);
+    }
+
+    public List<String> getActiveStyles() {
+        return new ArrayList<>(activeStyles);
+    }
+
+    public File getConfigFile() {
+        return configFile;
+    }
+
+    public boolean getConfigFileSetDeliberately() {
+        return configFileSetDeliberately;
+    }
+
+    public Properties getProperties() {
+        Properties result = new Properties();
+        result.putAll(properties);
+        return result;
+    }
+
+    public @Nullable File getRecipeCatalogDir() {
+        return recipeCatalogDir;
+    }
+}
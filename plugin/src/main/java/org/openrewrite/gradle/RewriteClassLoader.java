@@ -4,31 +4,72 @@
  */
 package org.openrewrite.gradle;
 
+import org.jspecify.annotations.Nullable;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
 import java.net.URL;
 import java.net.URLClassLoader;
-import java.util.Arrays;
-import java.util.Collection;
-import java.util.List;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.CodeSource;
+import java.util.*;
+import java.util.jar.Attributes;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.jar.Manifest;
+import java.util.stream.Stream;
 
 /**
  * Rewrite uses jackson for serialization/deserialization. So do lots of other build plugins.
  * Gradle plugins all share the same classpath at runtime.
  * <p>
  * This classloader exists to isolate rewrite's use of jackson from the rest of the build.
+ * <p>
+ * Classes are loaded concurrently by the threads that parse and run recipes, so this classloader is parallel capable.
+ * Which packages each of its artifacts contains is indexed when it is created, so that a class is read straight from
+ * the jar that contains it, and a class that none of them contain is handed to the parent without probing them all.
  */
 public class RewriteClassLoader extends URLClassLoader {
 
+    static {
+        ClassLoader.registerAsParallelCapable();
+    }
+
     private static final List<String> PARENT_LOADED_PACKAGES = Arrays.asList(
             "org.openrewrite.gradle.GradleProjectParser",
             "org.openrewrite.gradle.DefaultRewriteExtension",
             "org.openrewrite.gradle.RewriteExtension",
+            "org.openrewrite.gradle.RecipeEnvironmentModel",
             "org.slf4j",
             "org.gradle",
             "groovy",
             "org.codehaus.groovy");
     private static final List<String> PLUGIN_LOADED_PACKAGES = Arrays.asList("com.android");
+    private static final PrefixTrie PARENT_LOADED = new PrefixTrie(PARENT_LOADED_PACKAGES);
+    private static final PrefixTrie PLUGIN_LOADED = new PrefixTrie(PLUGIN_LOADED_PACKAGES);
+
     private final ClassLoader pluginClassLoader;
 
+    /**
+     * The jar at each position of the classpath, or {@code null} where classes must be found by the superclass, like
+     * for class directories and multi-release jars.
+     */
+    private final List<@Nullable JarFile> jars = new ArrayList<>();
+
+    /**
+     * The positions on the classpath of the artifacts that contain each package, in classpath order.
+     */
+    private final Map<String, int[]> packages = new HashMap<>();
+
+    /**
+     * Whether every artifact could be indexed, so that a package that isn't in the index isn't on the classpath.
+     */
+    private boolean indexComplete = true;
+
     public RewriteClassLoader(Collection<URL> artifacts) {
         this(artifacts, RewriteClassLoader.class.getClassLoader());
     }
@@ -37,6 +78,7 @@ public class RewriteClassLoader extends URLClassLoader {
         super(artifacts.toArray(new URL[0]), RewriteClassLoader.class.getClassLoader());
         this.pluginClassLoader = pluginClassLoader;
         setDefaultAssertionStatus(true);
+        index();
     }
 
     public ClassLoader getPluginClassLoader() {
@@ -50,40 +92,201 @@ public class RewriteClassLoader extends URLClassLoader {
      * of Android Gradle plugin classes, we use the ClassLoader of the plugin.
      */
     protected Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
-        Class<?> foundClass = findLoadedClass(name);
-        if (foundClass == null) {
-            try {
-                if (shouldBeParentLoaded(name)) {
+        synchronized (getClassLoadingLock(name)) {
+            Class<?> foundClass = findLoadedClass(name);
+            if (foundClass == null) {
+                try {
+                    if (shouldBeParentLoaded(name)) {
+                        foundClass = super.loadClass(name, resolve);
+                    } else if (shouldBePluginLoaded(name)) {
+                        foundClass = Class.forName(name, resolve, pluginClassLoader);
+                    } else {
+                        foundClass = findClass(name);
+                    }
+                } catch (ClassNotFoundException e) {
                     foundClass = super.loadClass(name, resolve);
-                } else if (shouldBePluginLoaded(name)) {
-                    foundClass = Class.forName(name, resolve, pluginClassLoader);
-                } else {
-                    foundClass = findClass(name);
                 }
-            } catch (ClassNotFoundException e) {
-                foundClass = super.loadClass(name, resolve);
             }
+            if (resolve) {
+                resolveClass(foundClass);
+            }
+            return foundClass;
         }
-        if (resolve) {
-            resolveClass(foundClass);
+    }
+
+    @Override
+    protected Class<?> findClass(String name) throws ClassNotFoundException {
+        int[] candidates = packages.get(packageOf(name));
+        if (candidates == null) {
+            if (indexComplete) {
+                throw new ClassNotFoundException(name);
+            }
+            return super.findClass(name);
         }
-        return foundClass;
+        String entryName = name.replace('.', '/') + ".class";
+        for (int candidate : candidates) {
+            JarFile jar = jars.get(candidate);
+            if (jar == null) {
+                return super.findClass(name);
+            }
+            JarEntry entry = jar.getJarEntry(entryName);
+            if (entry != null) {
+                return defineClass(name, getURLs()[candidate], jar, entry);
+            }
+        }
+        throw new ClassNotFoundException(name);
+    }
+
+    @Override
+    public void close() throws IOException {
+        for (JarFile jar : jars) {
+            if (jar != null) {
+                jar.close();
+            }
+        }
+        super.close();
     }
 
     protected boolean shouldBeParentLoaded(String name) {
-        return shouldBeLoaded(name, PARENT_LOADED_PACKAGES);
+        return PARENT_LOADED.matches(name);
     }
 
     protected boolean shouldBePluginLoaded(String name) {
-        return shouldBeLoaded(name, PLUGIN_LOADED_PACKAGES);
+        return PLUGIN_LOADED.matches(name);
+    }
+
+    private Class<?> defineClass(String name, URL url, JarFile jar, JarEntry entry) throws ClassNotFoundException {
+        String pkg = packageOf(name);
+        if (!pkg.isEmpty() && getPackage(pkg) == null) {
+            try {
+                Manifest manifest = jar.getManifest();
+                if (manifest == null) {
+                    definePackage(pkg, null, null, null, null, null, null, null);
+                } else {
+                    definePackage(pkg, manifest, url);
+                }
+            } catch (IllegalArgumentException ignored) {
+                // Another class of the same package was defined concurrently
+            } catch (IOException e) {
+                throw new ClassNotFoundException(name, e);
+            }
+        }
+        try (InputStream in = jar.getInputStream(entry)) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream((int) Math.max(entry.getSize(), 1024));
+            byte[] buf = new byte[8192];
+            int length;
+            while ((length = in.read(buf)) > 0) {
+                out.write(buf, 0, length);
+            }
+            byte[] bytes = out.toByteArray();
+            // The signers of an entry are only known once it has been read in full
+            return defineClass(name, bytes, 0, bytes.length, new CodeSource(url, entry.getCodeSigners()));
+        } catch (IOException e) {
+            throw new ClassNotFoundException(name, e);
+        }
+    }
+
+    private void index() {
+        Map<String, List<Integer>> index = new HashMap<>();
+        URL[] urls = getURLs();
+        for (int i = 0; i < urls.length; i++) {
+            JarFile jar = null;
+            try {
+                Path path = Paths.get(urls[i].toURI());
+                if (Files.isDirectory(path)) {
+                    indexDirectory(path, i, index);
+                } else if (Files.isRegularFile(path)) {
+                    jar = new JarFile(path.toFile());
+                    if (indexJar(jar, i, index)) {
+                        jar.close();
+                        jar = null;
+                    }
+                }
+            } catch (Exception e) {
+                indexComplete = false;
+            }
+            jars.add(jar);
+        }
+        for (Map.Entry<String, List<Integer>> entry : index.entrySet()) {
+            packages.put(entry.getKey(), entry.getValue().stream().mapToInt(Integer::intValue).toArray());
+        }
+    }
+
+    /**
+     * @return Whether this is a multi-release jar, whose classes are left to the superclass to find, as which version
+     * of an entry to use depends on the Java version.
+     */
+    private static boolean indexJar(JarFile jar, int position, Map<String, List<Integer>> index) throws IOException {
+        Manifest manifest = jar.getManifest();
+        boolean multiRelease = manifest != null &&
+                               "true".equalsIgnoreCase(manifest.getMainAttributes().getValue(new Attributes.Name("Multi-Release")));
+        Enumeration<JarEntry> entries = jar.entries();
+        while (entries.hasMoreElements()) {
+            String entryName = entries.nextElement().getName();
+            if (multiRelease && entryName.startsWith("META-INF/versions/")) {
+                int versionEnd = entryName.indexOf('/', "META-INF/versions/".length());
+                entryName = versionEnd < 0 ? "" : entryName.substring(versionEnd + 1);
+            }
+            if (entryName.endsWith(".class") && !entryName.startsWith("META-INF/")) {
+                addPackage(entryName, position, index);
+            }
+        }
+        return multiRelease;
+    }
+
+    private static void indexDirectory(Path dir, int position, Map<String, List<Integer>> index) throws IOException {
+        try (Stream<Path> files = Files.walk(dir)) {
+            files.filter(file -> file.getFileName().toString().endsWith(".class"))
+                    .forEach(file -> addPackage(dir.relativize(file).toString().replace(File.separatorChar, '/'),
+                            position, index));
+        }
+    }
+
+    private static void addPackage(String entryName, int position, Map<String, List<Integer>> index) {
+        int lastSlash = entryName.lastIndexOf('/');
+        String pkg = lastSlash < 0 ? "" : entryName.substring(0, lastSlash).replace('/', '.');
+        List<Integer> positions = index.computeIfAbsent(pkg, p -> new ArrayList<>(1));
+        if (positions.isEmpty() || positions.get(positions.size() - 1) != position) {
+            positions.add(position);
+        }
     }
 
-    private boolean shouldBeLoaded(String name, List<String> packagesToLoad) {
-        for (String pkg : packagesToLoad) {
-            if (name.startsWith(pkg)) {
-                return true;
+    private static String packageOf(String className) {
+        int lastDot = className.lastIndexOf('.');
+        return lastDot < 0 ? "" : className.substring(0, lastDot);
+    }
+
+    /**
+     * Matches names against a set of prefixes in a single pass over the name, however many prefixes there are.
+     */
+    private static class PrefixTrie {
+        private final Map<Character, PrefixTrie> children = new HashMap<>();
+        private boolean terminal;
+
+        private PrefixTrie() {
+        }
+
+        private PrefixTrie(Collection<String> prefixes) {
+            for (String prefix : prefixes) {
+                PrefixTrie node = this;
+                for (int i = 0; i < prefix.length(); i++) {
+                    node = node.children.computeIfAbsent(prefix.charAt(i), c -> new PrefixTrie());
+                }
+                node.terminal = true;
+            }
+        }
+
+        /**
+         * @return Whether the name starts with any of the prefixes.
+         */
+        private boolean matches(String name) {
+            PrefixTrie node = this;
+            for (int i = 0; !node.terminal; i++) {
+                if (i == name.length() || (node = node.children.get(name.charAt(i))) == null) {
+                    return false;
+                }
             }
+            return true;
         }
-        return false;
     }
 }
@@ -4,20 +4,66 @@
  */
 package org.openrewrite.gradle;
 
+import org.gradle.api.provider.Provider;
+import org.gradle.api.tasks.Input;
 import org.gradle.api.tasks.TaskAction;
 
 import javax.inject.Inject;
+import java.io.File;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
 
+/**
+ * Lists the available and active recipes and styles. As this doesn't parse the project, it only needs the
+ * {@link RecipeEnvironmentModel} captured while the build is configured, and so can be restored from the
+ * configuration cache.
+ */
 public class RewriteDiscoverTask extends AbstractRewriteTask {
+    private Provider<RecipeEnvironmentModel> recipeEnvironment;
 
     @Inject
     public RewriteDiscoverTask() {
+        super(true);
         setGroup("rewrite");
         setDescription("Lists all available recipes and their visitors");
     }
 
+    public RewriteDiscoverTask setRecipeEnvironment(Provider<RecipeEnvironmentModel> recipeEnvironment) {
+        this.recipeEnvironment = recipeEnvironment;
+        return this;
+    }
+
+    @Input
+    @Override
+    public List<String> getActiveRecipes() {
+        return recipeEnvironment == null ? super.getActiveRecipes() : recipeEnvironment.get().getActiveRecipes();
+    }
+
+    @Input
+    @Override
+    public List<String> getActiveStyles() {
+        return recipeEnvironment == null ? super.getActiveStyles() : recipeEnvironment.get().getActiveStyles();
+    }
+
     @TaskAction
     public void run() {
-        getProjectParser().discoverRecipes(getServices());
+        if (recipeEnvironment == null) {
+            getProjectParser().discoverRecipes(getServices());
+            return;
+        }
+        if (resolvedDependencies == null) {
+            throw new IllegalArgumentException("Must configure resolvedDependencies");
+        }
+        Set<File> deps = resolvedDependencies.getOrNull();
+        if (deps == null) {
+            deps = Collections.emptySet();
+        }
+        Set<Path> classpath = deps.stream()
+                .map(File::toPath)
+                .collect(Collectors.toSet());
+        DelegatingProjectParser.discoverRecipes(recipeEnvironment.get(), classpath);
     }
 }
@@ -4,40 +4,278 @@
  */
 package org.openrewrite.gradle;
 
+import org.gradle.api.Project;
+import org.gradle.api.file.FileCollection;
+import org.gradle.api.file.ProjectLayout;
 import org.gradle.api.logging.Logger;
 import org.gradle.api.logging.Logging;
-import org.gradle.api.specs.Specs;
+import org.gradle.api.plugins.JavaPluginConvention;
+import org.gradle.api.plugins.JavaPluginExtension;
+import org.gradle.api.tasks.CacheableTask;
+import org.gradle.api.tasks.Classpath;
+import org.gradle.api.tasks.Input;
+import org.gradle.api.tasks.InputFiles;
+import org.gradle.api.tasks.Optional;
+import org.gradle.api.tasks.OutputDirectory;
 import org.gradle.api.tasks.OutputFile;
+import org.gradle.api.tasks.PathSensitive;
+import org.gradle.api.tasks.PathSensitivity;
+import org.gradle.api.tasks.SourceSet;
 import org.gradle.api.tasks.TaskAction;
+import org.gradle.api.tasks.options.Option;
+import org.gradle.util.GradleVersion;
+import org.jspecify.annotations.Nullable;
 
 import javax.inject.Inject;
+import java.io.File;
 import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
 
+@CacheableTask
 public class RewriteDryRunTask extends AbstractRewriteTask {
 
     private static final Logger logger = Logging.getLogger(RewriteDryRunTask.class);
 
+    @Nullable
+    private FileCollection sources;
+
+    @Nullable
+    private DryRunShard shard;
+
+    @Option(description = "Only dry run the projects of one of several shards, like 2/8 for the second of eight. " +
+                          "Projects are partitioned the same way on every machine with the same sources. " +
+                          "Merge the results of all shards with rewriteMergeResults.",
+            option = "shard")
+    public void setShard(@Nullable String shard) {
+        this.shard = shard == null ? null : DryRunShard.parse(shard);
+    }
+
+    @Input
+    @Optional
+    public @Nullable String getShard() {
+        return shard == null ? null : shard.toString();
+    }
+
+    /**
+     * The report of a shard goes in a directory of its own, see {@link RewriteMergeResultsTask}.
+     */
     @OutputFile
     public Path getReportPath() {
-        return getProjectLayout()
+        Path reportsDir = getReportsDir(getProjectLayout());
+        if (shard != null) {
+            reportsDir = reportsDir.resolve(shard.getDirName());
+        }
+        return reportsDir.resolve("rewrite.patch");
+    }
+
+    static Path getReportsDir(ProjectLayout projectLayout) {
+        return projectLayout
                 .getBuildDirectory()
                 .get()
                 .getAsFile()
                 .toPath()
                 .resolve("reports")
-                .resolve("rewrite")
-                .resolve("rewrite.patch");
+                .resolve("rewrite");
+    }
+
+    /**
+     * Where the data tables are exported to, if they are.
+     */
+    @OutputDirectory
+    @Optional
+    public @Nullable Path getDatatablesDir() {
+        if (extension == null || !extension.isExportDatatables()) {
+            return null;
+        }
+        return getReportsDir(getProjectLayout()).resolve("datatables");
+    }
+
+    /**
+     * A summary in JSON of which files would change and which recipes would change them, written next to the report.
+     */
+    @OutputFile
+    public Path getSummaryPath() {
+        return getReportPath().resolveSibling("rewrite-summary.json");
+    }
+
+    /**
+     * The files that would be parsed, so that the dry run is up to date when none of them have changed. They are
+     * tracked relative to the root of the build, so that the dry run of the same sources checked out somewhere else can
+     * be taken from the build cache.
+     */
+    @InputFiles
+    @PathSensitive(PathSensitivity.RELATIVE)
+    public FileCollection getSources() {
+        if (sources == null) {
+            sources = ListedSources.files(getProject(), () -> getProjectParser().listSources());
+        }
+        return sources;
+    }
+
+    /**
+     * The rewrite configuration and the checkstyle configuration that styles may be loaded from.
+     */
+    @InputFiles
+    @PathSensitive(PathSensitivity.RELATIVE)
+    public FileCollection getRewriteConfigFiles() {
+        return rewriteConfigFiles(getProject(), extension);
+    }
+
+    static FileCollection rewriteConfigFiles(Project project, RewriteExtension extension) {
+        return project.files((Callable<List<File>>) () -> {
+            List<File> files = new ArrayList<>();
+            files.add(extension.getConfigFile());
+            File checkstyleConfigFile = extension.getCheckstyleConfigFile();
+            if (checkstyleConfigFile != null) {
+                files.add(checkstyleConfigFile);
+            }
+            return files;
+        });
+    }
+
+    /**
+     * The recipes and parsers, so that changing the version of rewrite or of a recipe module runs the dry run again.
+     */
+    @Classpath
+    public FileCollection getRewriteClasspath() {
+        return getProject().files((Callable<Object>) () -> resolvedDependencies == null ? null : resolvedDependencies.getOrNull());
+    }
+
+    /**
+     * The compile and runtime classpaths of the source sets that are parsed, as the types of the parsed sources are
+     * attributed from them. A changed dependency runs the dry run again even if no source has changed. Android variants
+     * are not covered, as they have no source sets.
+     */
+    @Classpath
+    public FileCollection getSourceSetClasspaths() {
+        // Like listSources(), the root project takes in the source sets of every subproject as well
+        return sourceSetClasspaths(getProject(), getProject() == getProject().getRootProject() ?
+                getProject().getAllprojects() :
+                Collections.singleton(getProject()));
+    }
+
+    static FileCollection sourceSetClasspaths(Project project, Collection<Project> projects) {
+        return project.files((Callable<List<File>>) () -> {
+            List<File> classpaths = new ArrayList<>();
+            for (Project parsed : projects) {
+                for (SourceSet sourceSet : findSourceSets(parsed)) {
+                    try {
+                        classpaths.addAll(sourceSet.getCompileClasspath().getFiles());
+                        classpaths.addAll(sourceSet.getRuntimeClasspath().getFiles());
+                    } catch (Exception e) {
+                        // Parsing carries on without the classpath as well
+                        logger.warn("Unable to resolve classpath for sourceSet {}:{}", parsed.getPath(), sourceSet.getName(), e);
+                    }
+                }
+            }
+            return classpaths;
+        });
+    }
+
+    private static Collection<SourceSet> findSourceSets(Project project) {
+        if (project.getGradle().getGradleVersion().compareTo("7.1") >= 0) {
+            JavaPluginExtension javaPluginExtension = project.getExtensions().findByType(JavaPluginExtension.class);
+            return javaPluginExtension == null ? Collections.emptyList() : javaPluginExtension.getSourceSets();
+        }
+        //Using the older javaConvention because we need to support older versions of gradle.
+        @SuppressWarnings("deprecation")
+        JavaPluginConvention javaConvention = project.getConvention().findPlugin(JavaPluginConvention.class);
+        return javaConvention == null ? Collections.emptyList() : javaConvention.getSourceSets();
+    }
+
+    /**
+     * The JDK that the sources are parsed with, which the types of the JDK are attributed from.
+     */
+    @Input
+    public String getJavaVersion() {
+        return System.getProperty("java.version");
+    }
+
+    /**
+     * The version of Gradle, which the Gradle build scripts are parsed against.
+     */
+    @Input
+    public String getGradleVersion() {
+        return GradleVersion.current().getVersion();
+    }
+
+    @Input
+    public List<String> getExclusions() {
+        return extension.getExclusions();
+    }
+
+    @Input
+    public List<String> getPlainTextMasks() {
+        return extension.getPlainTextMasks();
+    }
+
+    @Input
+    public int getSizeThresholdMb() {
+        return extension.getSizeThresholdMb();
+    }
+
+    /**
+     * Whether results fail the dry run, so that a dry run which would now fail isn't taken from the build cache.
+     */
+    @Input
+    public boolean getFailOnDryRunResults() {
+        return extension.getFailOnDryRunResults();
+    }
+
+    /**
+     * Whether exported data tables are gzipped, which changes the files written to {@link #getDatatablesDir()}.
+     */
+    @Input
+    public boolean getCompressDatatables() {
+        return extension.isCompressDatatables();
     }
 
     @Inject
     public RewriteDryRunTask() {
         setGroup("rewrite");
         setDescription("Run the active refactoring recipes, producing a patch file. No source files will be changed.");
-        getOutputs().upToDateWhen(Specs.SATISFIES_NONE);
+    }
+
+    /**
+     * A shard parses only its own projects, so it doesn't wait for every project to be parsed separately.
+     */
+    @Override
+    protected boolean isParsingEachProjectSeparately() {
+        return shard == null && super.isParsingEachProjectSeparately();
     }
 
     @TaskAction
     public void run() {
-        getProjectParser().dryRun(getReportPath(), dumpGcActivity, throwable -> logger.info("Error during rewrite dry run", throwable));
+        Consumer<Throwable> onError = throwable -> logger.info("Error during rewrite dry run", throwable);
+        if (shard != null) {
+            getProjectParser().useShard(shard.getIndex(), shard.getCount());
+        }
+        if (isRunInWorkerProcess()) {
+            if (dumpGcActivity) {
+                logger.warn("GC activity isn't dumped when recipes run in a worker process");
+            }
+            RewriteWorker.run(this, getWorkerExecutor(), getReportPath(), onError);
+        } else {
+            getProjectParser().dryRun(getReportPath(), dumpGcActivity, onError);
+        }
+    }
+
+    /**
+     * Log the results of the dry run from its summary. A dry run that is taken from the build cache doesn't run, so it
+     * doesn't log them itself.
+     */
+    void logCachedResults() {
+        Set<File> deps = resolvedDependencies == null ? null : resolvedDependencies.getOrNull();
+        Set<Path> classpath = deps == null ? Collections.emptySet() : deps.stream()
+                .map(File::toPath)
+                .collect(Collectors.toSet());
+        DelegatingProjectParser.logDryRunSummary(getReportPath(), classpath);
     }
 }
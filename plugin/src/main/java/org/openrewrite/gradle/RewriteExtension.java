@@ -38,11 +38,26 @@ public class RewriteExtension {
     private String metricsUri = magicalMetricsLogString;
     private boolean enableExperimentalGradleBuildScriptParsing = true;
     private boolean exportDatatables;
+    private boolean compressDatatables;
+    private boolean enableLstCache;
+    private boolean enableHeapAwareBatching;
+    private boolean skipUnchangedWrites = true;
+    private boolean compactResults;
+    private boolean enableRecipeCatalog;
+    private boolean runInWorkerProcess;
+    private boolean parseEachProjectSeparately;
+
+    @Nullable
+    private String workerMaxHeapSize;
+
+    private final List<String> workerJvmArgs = new ArrayList<>();
     private final List<String> exclusions = new ArrayList<>();
     private final List<String> plainTextMasks = new ArrayList<>();
 
     private int sizeThresholdMb = 10;
 
+    private int parallelism = 1;
+
     @Nullable
     private String rewriteVersion;
 
@@ -279,6 +294,138 @@ public class RewriteExtension {
         this.exportDatatables = exportDatatables;
     }
 
+    /**
+     * When enabled, exported data tables are gzipped and written as {@code .csv.gz} files rather than {@code .csv}.
+     */
+    public boolean isCompressDatatables() {
+        return compressDatatables;
+    }
+
+    public void setCompressDatatables(boolean compressDatatables) {
+        this.compressDatatables = compressDatatables;
+    }
+
+    /**
+     * When enabled, parsed source files are cached under build/rewrite/lst-cache and reused by later builds for any
+     * file whose content, classpath, Java version and charset are unchanged.
+     */
+    public boolean isEnableLstCache() {
+        return enableLstCache;
+    }
+
+    public void setEnableLstCache(boolean enableLstCache) {
+        this.enableLstCache = enableLstCache;
+    }
+
+    /**
+     * When enabled, the Java sources of each source set are parsed in batches sized to fit the heap that is free at
+     * the time, instead of all at once. Types declared in a different batch of the same source set are then attributed
+     * from the compiled classes on the source set's runtime classpath, so the source set should have been compiled.
+     */
+    public boolean isEnableHeapAwareBatching() {
+        return enableHeapAwareBatching;
+    }
+
+    public void setEnableHeapAwareBatching(boolean enableHeapAwareBatching) {
+        this.enableHeapAwareBatching = enableHeapAwareBatching;
+    }
+
+    /**
+     * When enabled, which it is by default, rewriteRun doesn't write files whose contents on disk are already exactly
+     * what it would write. Their modification times stay the same, so incremental compilation doesn't consider them
+     * changed.
+     */
+    public boolean isSkipUnchangedWrites() {
+        return skipUnchangedWrites;
+    }
+
+    public void setSkipUnchangedWrites(boolean skipUnchangedWrites) {
+        this.skipUnchangedWrites = skipUnchangedWrites;
+    }
+
+    /**
+     * When enabled, rewriteRun reduces each result of the recipe run to its paths, the recipes that made it, and its
+     * printed output, before any of them are applied. The LSTs from before and after the run can then be garbage
+     * collected early, which lets large changes fit in a smaller heap. A dry run isn't affected, as it already writes
+     * out each diff as soon as it is computed.
+     */
+    public boolean isCompactResults() {
+        return compactResults;
+    }
+
+    public void setCompactResults(boolean compactResults) {
+        this.compactResults = compactResults;
+    }
+
+    /**
+     * When enabled, the recipes and styles on the rewrite classpath are cataloged once per distinct classpath, in the
+     * Gradle user home. Later builds activate only the recipes and styles they need, loading just the YAML resources
+     * and classes those are made of, instead of scanning and instantiating everything on the classpath.
+     */
+    public boolean isEnableRecipeCatalog() {
+        return enableRecipeCatalog;
+    }
+
+    public void setEnableRecipeCatalog(boolean enableRecipeCatalog) {
+        this.enableRecipeCatalog = enableRecipeCatalog;
+    }
+
+    /**
+     * When enabled, rewriteRun and rewriteDryRun run the active recipes in a worker process rather than in the Gradle
+     * daemon. Source files are still parsed by the daemon, but each is written to disk as soon as it has been parsed,
+     * so the daemon's heap doesn't have to hold all of them, nor anything the recipes allocate. Gradle keeps the
+     * worker process around to be reused by later builds with the same settings. Requires Gradle 5.6 or later.
+     */
+    public boolean isRunInWorkerProcess() {
+        return runInWorkerProcess;
+    }
+
+    public void setRunInWorkerProcess(boolean runInWorkerProcess) {
+        this.runInWorkerProcess = runInWorkerProcess;
+    }
+
+    /**
+     * When enabled, each project's sources are parsed by a rewriteParse task of its own, and rewriteRun and
+     * rewriteDryRun run the active recipes against what all of those tasks parsed. Projects are then parsed
+     * concurrently when the build runs with --parallel, and only the projects whose sources or classpaths changed are
+     * parsed again, or taken from the build cache. Recipes still run once against every source file, as recipes which
+     * scan the sources before making changes need to see all of them.
+     */
+    public boolean isParseEachProjectSeparately() {
+        return parseEachProjectSeparately;
+    }
+
+    public void setParseEachProjectSeparately(boolean parseEachProjectSeparately) {
+        this.parseEachProjectSeparately = parseEachProjectSeparately;
+    }
+
+    /**
+     * The maximum heap size of the worker process that runs recipes, like "4g". When not set, the JVM's default applies.
+     */
+    @Nullable
+    public String getWorkerMaxHeapSize() {
+        return workerMaxHeapSize;
+    }
+
+    public void setWorkerMaxHeapSize(@Nullable String workerMaxHeapSize) {
+        this.workerMaxHeapSize = workerMaxHeapSize;
+    }
+
+    /**
+     * Additional JVM arguments of the worker process that runs recipes, like the garbage collector to use.
+     */
+    public List<String> getWorkerJvmArgs() {
+        return workerJvmArgs;
+    }
+
+    public void workerJvmArg(String... jvmArgs) {
+        this.workerJvmArgs.addAll(asList(jvmArgs));
+    }
+
+    public void workerJvmArg(Collection<String> jvmArgs) {
+        this.workerJvmArgs.addAll(jvmArgs);
+    }
+
     public List<String> getExclusions() {
         return exclusions;
     }
@@ -347,6 +494,19 @@ public class RewriteExtension {
         this.sizeThresholdMb = thresholdMb;
     }
 
+    /**
+     * The number of threads used to parse source sets, and to compute diffs and write files once recipes have run.
+     * Each language of each source set in each project is parsed as a separate unit of work. The default of 1 does
+     * everything on the thread running the rewrite task.
+     */
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    public void setParallelism(int parallelism) {
+        this.parallelism = parallelism;
+    }
+
     public String getJacksonModuleKotlinVersion() {
         return getVersionProps().getProperty("com.fasterxml.jackson.module:jackson-module-kotlin");
     }
@@ -0,0 +1,112 @@
+/*
+ * Licensed under the Moderne Source Available License.
+ * See https://docs.moderne.io/licensing/moderne-source-available-license
+ */
+package org.openrewrite.gradle;
+
+import org.gradle.api.DefaultTask;
+import org.gradle.api.file.ConfigurableFileCollection;
+import org.gradle.api.file.FileCollection;
+import org.gradle.api.file.ProjectLayout;
+import org.gradle.api.tasks.*;
+
+import javax.inject.Inject;
+import java.io.File;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.stream.Collectors;
+
+/**
+ * Merges the results of a dry run that was split into shards with {@code rewriteDryRun --shard=i/n} into the report
+ * and summary of an unsharded dry run. The results of every shard must have been copied into the build's reports
+ * directory first, each in the directory of its own shard.
+ * <p>
+ * Merging neither parses the project nor activates any recipes, so unlike the other rewrite tasks it only needs the
+ * rewrite classpath, and can be restored from the configuration cache.
+ */
+public class RewriteMergeResultsTask extends DefaultTask {
+
+    private final ConfigurableFileCollection rewriteClasspath;
+    private final FileCollection shardResults;
+
+    @Inject
+    public RewriteMergeResultsTask() {
+        setGroup("rewrite");
+        setDescription("Merges the results of the shards of a dry run into a single patch file and summary.");
+        rewriteClasspath = getProject().files();
+        shardResults = getProject().fileTree((Callable<File>) () -> getReportsDir().toFile(),
+                tree -> tree.include("shard-*-of-*/**"));
+    }
+
+    @Inject
+    public ProjectLayout getProjectLayout() {
+        throw new AssertionError("unexpected; getProjectLayout() should be overridden by Gradle");
+    }
+
+    /**
+     * The classpath that the results are merged with, which is the rewrite classpath of the dry run.
+     */
+    @Classpath
+    public ConfigurableFileCollection getRewriteClasspath() {
+        return rewriteClasspath;
+    }
+
+    @InputFiles
+    @PathSensitive(PathSensitivity.RELATIVE)
+    public FileCollection getShardResults() {
+        return shardResults;
+    }
+
+    @OutputFile
+    public Path getReportPath() {
+        return getReportsDir().resolve("rewrite.patch");
+    }
+
+    @OutputFile
+    public Path getSummaryPath() {
+        return getReportsDir().resolve("rewrite-summary.json");
+    }
+
+    private Path getReportsDir() {
+        return RewriteDryRunTask.getReportsDir(getProjectLayout());
+    }
+
+    @TaskAction
+    public void run() {
+        SortedMap<Integer, Path> shardReportPaths = new TreeMap<>();
+        int count = 0;
+        File[] dirs = getReportsDir().toFile().listFiles(File::isDirectory);
+        for (File dir : dirs == null ? new File[0] : dirs) {
+            DryRunShard shard = DryRunShard.fromDirName(dir.getName());
+            if (shard == null) {
+                continue;
+            }
+            if (count != 0 && count != shard.getCount()) {
+                throw new IllegalStateException("Found the results of shards of both " + count + " and " +
+                                                shard.getCount() + " shards, remove those of the dry run " +
+                                                "that is not to be merged");
+            }
+            count = shard.getCount();
+            shardReportPaths.put(shard.getIndex(), dir.toPath().resolve("rewrite.patch"));
+        }
+        if (count == 0) {
+            throw new IllegalStateException("Found no results of shards to merge, run rewriteDryRun --shard=i/n " +
+                                            "for each shard and copy its results into " + getReportsDir());
+        }
+        if (shardReportPaths.size() != count) {
+            List<Integer> missing = new ArrayList<>();
+            for (int i = 1; i <= count; i++) {
+                if (!shardReportPaths.containsKey(i)) {
+                    missing.add(i);
+                }
+            }
+            throw new IllegalStateException("Missing the results of shards " + missing + " of " + count);
+        }
+
+        Set<Path> classpath = rewriteClasspath.getFiles().stream()
+                .map(File::toPath)
+                .collect(Collectors.toSet());
+        DelegatingProjectParser.mergeDryRunResults(new ArrayList<>(shardReportPaths.values()), getReportPath(), classpath);
+    }
+}
@@ -0,0 +1,125 @@
+/*
+ * Licensed under the Moderne Source Available License.
+ * See https://docs.moderne.io/licensing/moderne-source-available-license
+ */
+package org.openrewrite.gradle;
+
+import org.gradle.api.file.FileCollection;
+import org.gradle.api.logging.Logger;
+import org.gradle.api.logging.Logging;
+import org.gradle.api.tasks.*;
+import org.gradle.util.GradleVersion;
+import org.jspecify.annotations.Nullable;
+
+import javax.inject.Inject;
+import java.io.File;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.function.Consumer;
+
+/**
+ * Parses the sources of one project, leaving out those of its subprojects, for rewriteRun and rewriteDryRun to run
+ * recipes against. See {@link RewriteExtension#isParseEachProjectSeparately()}.
+ * <p>
+ * The parsed sources are up to date, and can be taken from the build cache, as long as the sources of the project,
+ * their classpaths and the parsers are unchanged. So only the projects that changed are parsed again. The commit and
+ * build environment that the sources were parsed in are replaced by those of the current build when they are read.
+ */
+@CacheableTask
+public class RewriteParseTask extends AbstractRewriteTask {
+
+    private static final Logger logger = Logging.getLogger(RewriteParseTask.class);
+
+    @Nullable
+    private FileCollection sources;
+
+    @OutputDirectory
+    public File getSourcesDir() {
+        return getProjectLayout()
+                .getBuildDirectory()
+                .dir("rewrite/sources")
+                .get()
+                .getAsFile();
+    }
+
+    /**
+     * The files of this project that are parsed, tracked relative to the root of the build like those of
+     * {@link RewriteDryRunTask#getSources()}.
+     */
+    @InputFiles
+    @PathSensitive(PathSensitivity.RELATIVE)
+    public FileCollection getSources() {
+        if (sources == null) {
+            sources = ListedSources.files(getProject(), () -> getProjectParser().listProjectSources());
+        }
+        return sources;
+    }
+
+    /**
+     * The rewrite configuration and the checkstyle configuration, which the styles that sources are parsed with may
+     * be loaded from.
+     */
+    @InputFiles
+    @PathSensitive(PathSensitivity.RELATIVE)
+    public FileCollection getRewriteConfigFiles() {
+        return RewriteDryRunTask.rewriteConfigFiles(getProject(), extension);
+    }
+
+    /**
+     * The parsers, so that changing the version of rewrite parses the sources again.
+     */
+    @Classpath
+    public FileCollection getRewriteClasspath() {
+        return getProject().files((Callable<Object>) () -> resolvedDependencies == null ? null : resolvedDependencies.getOrNull());
+    }
+
+    /**
+     * The compile and runtime classpaths of the source sets of this project, which types are attributed from.
+     */
+    @Classpath
+    public FileCollection getSourceSetClasspaths() {
+        return RewriteDryRunTask.sourceSetClasspaths(getProject(), Collections.singleton(getProject()));
+    }
+
+    @Input
+    public String getJavaVersion() {
+        return System.getProperty("java.version");
+    }
+
+    @Input
+    public String getGradleVersion() {
+        return GradleVersion.current().getVersion();
+    }
+
+    @Input
+    public List<String> getExclusions() {
+        return extension.getExclusions();
+    }
+
+    @Input
+    public List<String> getPlainTextMasks() {
+        return extension.getPlainTextMasks();
+    }
+
+    @Input
+    public int getSizeThresholdMb() {
+        return extension.getSizeThresholdMb();
+    }
+
+    @Inject
+    public RewriteParseTask() {
+        setGroup("rewrite");
+        setDescription("Parse the sources of this project for rewriteRun and rewriteDryRun");
+    }
+
+    @TaskAction
+    public void run() {
+        Consumer<Throwable> onError = throwable -> logger.info("Error during rewrite parse", throwable);
+        File sourcesDir = getSourcesDir();
+        getProject().delete(sourcesDir);
+        //noinspection ResultOfMethodCallIgnored
+        sourcesDir.mkdirs();
+        getProjectParser().exportProjectSources(sourcesDir.toPath(), onError);
+    }
+}
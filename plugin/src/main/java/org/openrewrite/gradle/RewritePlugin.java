@@ -12,6 +12,7 @@ import org.gradle.api.artifacts.Dependency;
 import org.gradle.api.artifacts.dsl.DependencyHandler;
 import org.gradle.api.attributes.*;
 import org.gradle.api.attributes.java.TargetJvmEnvironment;
+import org.gradle.api.file.ConfigurableFileCollection;
 import org.gradle.api.model.ObjectFactory;
 import org.gradle.api.plugins.JavaBasePlugin;
 import org.gradle.api.plugins.JavaPluginConvention;
@@ -21,12 +22,15 @@ import org.gradle.api.plugins.quality.CheckstylePlugin;
 import org.gradle.api.provider.Provider;
 import org.gradle.api.tasks.SourceSetContainer;
 import org.gradle.api.tasks.TaskProvider;
+import org.gradle.util.GradleVersion;
 import org.jspecify.annotations.Nullable;
 
 import java.io.File;
+import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashSet;
 import java.util.Set;
+import java.util.concurrent.Callable;
 import java.util.stream.Stream;
 
 import static org.gradle.api.attributes.Bundling.BUNDLING_ATTRIBUTE;
@@ -62,32 +66,68 @@ public class RewritePlugin implements Plugin<Project> {
 
         Provider<Set<File>> resolvedDependenciesProvider = project.provider(() -> getResolvedDependencies(project, extension, rewriteConf));
 
+        // What the rewriteParse task of each project writes, when each project is parsed separately
+        ConfigurableFileCollection parsedSources = project.files();
+
         TaskProvider<RewriteRunTask> rewriteRun = project.getTasks().register("rewriteRun", RewriteRunTask.class, task -> {
             task.setExtension(extension);
             task.setResolvedDependencies(resolvedDependenciesProvider);
+            task.setParsedSources(parsedSources);
             task.dependsOn(rewriteConf);
+            task.dependsOn((Callable<Object>) () -> task.isParsingEachProjectSeparately() ? parsedSources : Collections.emptyList());
         });
 
         TaskProvider<RewriteDryRunTask> rewriteDryRun = project.getTasks().register("rewriteDryRun", RewriteDryRunTask.class, task -> {
             task.setExtension(extension);
             task.setResolvedDependencies(resolvedDependenciesProvider);
+            task.setParsedSources(parsedSources);
+            task.dependsOn(rewriteConf);
+            task.dependsOn((Callable<Object>) () -> task.isParsingEachProjectSeparately() ? parsedSources : Collections.emptyList());
+        });
+
+        // A dry run that is taken from the build cache doesn't run, so this logs its results instead
+        TaskProvider<Task> rewriteDryRunResults = project.getTasks().register("rewriteDryRunResults", task -> {
+            task.setDescription("Logs the results of a dry run that was taken from the build cache.");
+            task.onlyIf(unused -> "FROM-CACHE".equals(rewriteDryRun.get().getState().getSkipMessage()));
+            task.doLast(unused -> rewriteDryRun.get().logCachedResults());
+            if (GradleVersion.current().compareTo(GradleVersion.version("7.4")) >= 0) {
+                task.notCompatibleWithConfigurationCache("It reads the outcome of rewriteDryRun");
+            }
+        });
+        rewriteDryRun.configure(task -> task.finalizedBy(rewriteDryRunResults));
+
+        project.getTasks().register("rewriteMergeResults", RewriteMergeResultsTask.class, task -> {
+            task.getRewriteClasspath().from((Callable<Set<File>>) resolvedDependenciesProvider::getOrNull);
             task.dependsOn(rewriteConf);
         });
 
         TaskProvider<RewriteDiscoverTask> rewriteDiscover = project.getTasks().register("rewriteDiscover", RewriteDiscoverTask.class, task -> {
-            task.setExtension(extension);
+            task.setRecipeEnvironment(project.provider(() -> RecipeEnvironmentModel.of(project, extension)));
             task.setResolvedDependencies(resolvedDependenciesProvider);
             task.dependsOn(rewriteConf);
         });
 
         if (isRootProject) {
-            project.allprojects(subproject -> configureProject(subproject, extension, rewriteDryRun, rewriteRun));
+            project.allprojects(subproject -> configureProject(subproject, extension, rewriteConf, resolvedDependenciesProvider, parsedSources, rewriteDryRun, rewriteRun));
         } else {
-            configureProject(project, extension, rewriteDryRun, rewriteRun);
+            configureProject(project, extension, rewriteConf, resolvedDependenciesProvider, parsedSources, rewriteDryRun, rewriteRun);
         }
     }
 
-    private static void configureProject(Project project, RewriteExtension extension, TaskProvider<RewriteDryRunTask> rewriteDryRun, TaskProvider<RewriteRunTask> rewriteRun) {
+    private static void configureProject(Project project,
+                                         RewriteExtension extension,
+                                         Configuration rewriteConf,
+                                         Provider<Set<File>> resolvedDependenciesProvider,
+                                         ConfigurableFileCollection parsedSources,
+                                         TaskProvider<RewriteDryRunTask> rewriteDryRun,
+                                         TaskProvider<RewriteRunTask> rewriteRun) {
+        TaskProvider<RewriteParseTask> rewriteParse = project.getTasks().register("rewriteParse", RewriteParseTask.class, task -> {
+            task.setExtension(extension);
+            task.setResolvedDependencies(resolvedDependenciesProvider);
+            task.dependsOn(rewriteConf);
+        });
+        parsedSources.from((Callable<File>) () -> rewriteParse.get().getSourcesDir()).builtBy(rewriteParse);
+
         // DomainObjectCollection.all() accepts a function to be applied to both existing and subsequently added members of the collection
         // Do not replace all() with any form of collection iteration which does not share this important property
         project.getPlugins().all(plugin -> {
@@ -117,6 +157,7 @@ public class RewritePlugin implements Plugin<Project> {
                 TaskProvider<Task> compileTask = project.getTasks().named(sourceSet.getCompileJavaTaskName());
                 rewriteRun.configure(task -> task.dependsOn(compileTask));
                 rewriteDryRun.configure(task -> task.dependsOn(compileTask));
+                rewriteParse.configure(task -> task.dependsOn(compileTask));
             });
 
             // Detect SourceSets which overlap other sourceSets and disable the compilation task of the overlapping
@@ -9,6 +9,7 @@ import org.gradle.api.logging.Logging;
 import org.gradle.api.tasks.TaskAction;
 
 import javax.inject.Inject;
+import java.util.function.Consumer;
 
 public class RewriteRunTask extends AbstractRewriteTask {
 
@@ -22,7 +23,12 @@ public class RewriteRunTask extends AbstractRewriteTask {
 
     @TaskAction
     public void run() {
-        getProjectParser().run(throwable -> logger.info("Error during rewrite run", throwable));
+        Consumer<Throwable> onError = throwable -> logger.info("Error during rewrite run", throwable);
+        if (isRunInWorkerProcess()) {
+            RewriteWorker.run(this, getWorkerExecutor(), null, onError);
+        } else {
+            getProjectParser().run(onError);
+        }
     }
 
 }
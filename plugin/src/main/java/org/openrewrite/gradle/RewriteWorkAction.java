@@ -0,0 +1,19 @@
+/*
+ * Licensed under the Moderne Source Available License.
+ * See https://docs.moderne.io/licensing/moderne-source-available-license
+ */
+package org.openrewrite.gradle;
+
+import org.gradle.workers.WorkAction;
+import org.openrewrite.gradle.isolated.WorkerRecipeRun;
+
+/**
+ * Runs the active recipes in a worker process. The worker's classpath holds rewrite itself, so unlike in the build's
+ * own process, rewrite's classes can be used directly.
+ */
+public abstract class RewriteWorkAction implements WorkAction<RewriteWorkParameters> {
+    @Override
+    public void execute() {
+        new WorkerRecipeRun(getParameters()).run();
+    }
+}
@@ -0,0 +1,62 @@
+/*
+ * Licensed under the Moderne Source Available License.
+ * See https://docs.moderne.io/licensing/moderne-source-available-license
+ */
+package org.openrewrite.gradle;
+
+import org.gradle.api.file.DirectoryProperty;
+import org.gradle.api.file.RegularFileProperty;
+import org.gradle.api.provider.ListProperty;
+import org.gradle.api.provider.MapProperty;
+import org.gradle.api.provider.Property;
+import org.gradle.workers.WorkParameters;
+
+/**
+ * Everything a worker process needs to run the active recipes against source files that were parsed by the build.
+ */
+public interface RewriteWorkParameters extends WorkParameters {
+    /**
+     * Whether to apply the results, or only to report them with a patch at {@link #getReportPath()}.
+     */
+    Property<Boolean> getDryRun();
+
+    DirectoryProperty getSourcesDir();
+
+    /**
+     * The directory that the paths of the source files are relative to.
+     */
+    DirectoryProperty getBaseDir();
+
+    RegularFileProperty getReportPath();
+
+    ListProperty<String> getActiveRecipes();
+
+    RegularFileProperty getConfigFile();
+
+    /**
+     * The project properties that recipes declared in YAML may refer to.
+     */
+    MapProperty<String, String> getProperties();
+
+    /**
+     * Where to export data tables to, if they are to be exported.
+     */
+    DirectoryProperty getDatatablesDir();
+
+    Property<Boolean> getCompressDatatables();
+
+    /**
+     * Where recipe catalogs are kept, if recipes are to be activated from one.
+     */
+    DirectoryProperty getRecipeCatalogDir();
+
+    Property<Integer> getParallelism();
+
+    Property<Boolean> getSkipUnchangedWrites();
+
+    Property<Boolean> getCompactResults();
+
+    Property<Boolean> getFailOnInvalidActiveRecipes();
+
+    Property<Boolean> getFailOnDryRunResults();
+}
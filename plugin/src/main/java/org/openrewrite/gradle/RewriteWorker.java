@@ -0,0 +1,113 @@
+/*
+ * Licensed under the Moderne Source Available License.
+ * See https://docs.moderne.io/licensing/moderne-source-available-license
+ */
+package org.openrewrite.gradle;
+
+import org.gradle.api.Project;
+import org.gradle.api.file.Directory;
+import org.gradle.workers.WorkQueue;
+import org.gradle.workers.WorkerExecutor;
+import org.jspecify.annotations.Nullable;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/**
+ * Parses the project in the build's own process, and then hands the source files to a worker process to run the
+ * active recipes against. This uses the worker API introduced in Gradle 5.6, and so is kept apart from the tasks,
+ * which still load on older versions of Gradle.
+ */
+class RewriteWorker {
+    private RewriteWorker() {
+    }
+
+    /**
+     * @param reportPath Where to write the patch of a dry run, or {@code null} to apply the results instead.
+     */
+    static void run(AbstractRewriteTask task,
+                    WorkerExecutor workerExecutor,
+                    @Nullable Path reportPath,
+                    Consumer<Throwable> onError) {
+        RewriteExtension extension = task.extension;
+        Project project = task.getProject();
+        Path sourcesDir = task.getTemporaryDir().toPath().resolve("sources");
+        deleteRecursively(sourcesDir);
+        try {
+            Path baseDir = task.getProjectParser().exportSources(sourcesDir, onError);
+            if (baseDir == null) {
+                return;
+            }
+
+            WorkQueue queue = workerExecutor.processIsolation(spec -> {
+                spec.getClasspath().from(task.resolvedDependencies.get());
+                spec.forkOptions(fork -> {
+                    if (extension.getWorkerMaxHeapSize() != null) {
+                        fork.setMaxHeapSize(extension.getWorkerMaxHeapSize());
+                    }
+                    fork.jvmArgs(extension.getWorkerJvmArgs());
+                    // Like in the build's own process, assertions are enabled for rewrite's classes
+                    fork.setEnableAssertions(true);
+                });
+            });
+            Directory buildDirectory = project.getLayout().getBuildDirectory().get();
+            queue.submit(RewriteWorkAction.class, parameters -> {
+                parameters.getDryRun().set(reportPath != null);
+                parameters.getSourcesDir().set(sourcesDir.toFile());
+                parameters.getBaseDir().set(baseDir.toFile());
+                if (reportPath != null) {
+                    parameters.getReportPath().set(reportPath.toFile());
+                }
+                parameters.getActiveRecipes().set(task.getActiveRecipes());
+                parameters.getConfigFile().set(extension.getConfigFile());
+                parameters.getProperties().set(stringProperties(project));
+                if (extension.isExportDatatables()) {
+                    parameters.getDatatablesDir().set(buildDirectory.dir("reports/rewrite/datatables"));
+                }
+                parameters.getCompressDatatables().set(extension.isCompressDatatables());
+                if (extension.isEnableRecipeCatalog()) {
+                    parameters.getRecipeCatalogDir().set(new File(project.getGradle().getGradleUserHomeDir(), "caches/rewrite/recipe-catalog"));
+                }
+                parameters.getParallelism().set(extension.getParallelism());
+                parameters.getSkipUnchangedWrites().set(extension.isSkipUnchangedWrites());
+                parameters.getCompactResults().set(extension.isCompactResults());
+                parameters.getFailOnInvalidActiveRecipes().set(extension.getFailOnInvalidActiveRecipes());
+                parameters.getFailOnDryRunResults().set(extension.getFailOnDryRunResults());
+            });
+            queue.await();
+        } finally {
+            deleteRecursively(sourcesDir);
+        }
+    }
+
+    /**
+     * Only properties with string values can be referred to by recipes declared in YAML.
+     */
+    private static Map<String, String> stringProperties(Project project) {
+        Map<String, String> properties = new HashMap<>();
+        for (Map.Entry<String, ?> property : project.getProperties().entrySet()) {
+            if (property.getKey() != null && property.getValue() instanceof String) {
+                properties.put(property.getKey(), (String) property.getValue());
+            }
+        }
+        return properties;
+    }
+
+    private static void deleteRecursively(Path dir) {
+        if (!Files.exists(dir)) {
+            return;
+        }
+        try (Stream<Path> files = Files.walk(dir)) {
+            files.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+        } catch (IOException ignored) {
+            // Whatever is left behind is deleted before the task's next run
+        }
+    }
+}
@@ -28,12 +28,9 @@ import org.openrewrite.polyglot.SourceFileStream;
 import org.openrewrite.style.NamedStyles;
 import org.openrewrite.tree.ParsingExecutionContextView;
 
-import java.io.IOException;
-import java.io.UncheckedIOException;
 import java.nio.charset.Charset;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.nio.file.PathMatcher;
 import java.util.*;
 import java.util.function.Supplier;
 import java.util.stream.Collectors;
@@ -55,10 +52,13 @@ class AndroidProjectParser {
                                             ProgressBar progressBar,
                                             Path buildDir,
                                             Charset sourceCharset,
-                                            Set<Path> alreadyParsed,
-                                            Collection<PathMatcher> exclusions,
+                                            PathTrie alreadyParsed,
+                                            ExclusionMatcher exclusions,
                                             ExecutionContext ctx,
-                                            OmniParser omniParser) {
+                                            OmniParser omniParser,
+                                            ParallelExecutor executor,
+                                            RepositoryFileIndex fileIndex,
+                                            ParseFilter parseFilter) {
         SourceFileStream sourceFileStream = SourceFileStream.build(
                 project.getPath(),
                 projectName -> progressBar.intermediateResult(":" + projectName));
@@ -77,17 +77,8 @@ class AndroidProjectParser {
 
                 Set<Path> javaAndKotlinPaths = javaAndKotlinDirectories.stream()
                         .filter(Files::exists)
-                        .filter(dir -> !alreadyParsed.contains(dir))
-                        .flatMap(dir -> {
-                            try {
-                                return Files.walk(dir);
-                            } catch (IOException e) {
-                                throw new UncheckedIOException(e);
-                            }
-                        })
-                        .filter(Files::isRegularFile)
-                        .map(Path::toAbsolutePath)
-                        .map(Path::normalize)
+                        .filter(dir -> !alreadyParsed.isClaimed(dir))
+                        .flatMap(dir -> fileIndex.files(dir).stream())
                         .filter(path -> !alreadyParsed.contains(path))
                         .collect(Collectors.toSet());
 
@@ -98,8 +89,6 @@ class AndroidProjectParser {
                         .filter(path -> path.toString().endsWith(".kt"))
                         .collect(Collectors.toList());
 
-                JavaTypeCache javaTypeCache = new JavaTypeCache();
-
                 // The compilation classpath doesn't include the transitive dependencies
                 // The runtime classpath doesn't include compile only dependencies, e.g.: lombok, servlet-api
                 // So we use both together to get comprehensive type information.
@@ -117,6 +106,8 @@ class AndroidProjectParser {
                             e);
                 }
 
+                JavaTypeCache javaTypeCache = new SynchronizedJavaTypeCache();
+
                 if (!javaPaths.isEmpty()) {
                     alreadyParsed.addAll(javaPaths);
                     Stream<SourceFile> parsedJavaFiles = parseJavaFiles(javaPaths,
@@ -126,7 +117,9 @@ class AndroidProjectParser {
                             javaSourceCharset,
                             javaVersion,
                             dependencyPaths,
-                            javaTypeCache);
+                            javaTypeCache,
+                            executor,
+                            parseFilter);
                     sourceSetSourceFiles = Stream.concat(sourceSetSourceFiles, parsedJavaFiles);
                     sourceSetSize += javaPaths.size();
 
@@ -142,7 +135,9 @@ class AndroidProjectParser {
                             javaSourceCharset,
                             javaVersion,
                             dependencyPaths,
-                            javaTypeCache);
+                            javaTypeCache,
+                            executor,
+                            parseFilter);
                     sourceSetSourceFiles = Stream.concat(sourceSetSourceFiles, parsedKotlinFiles);
                     sourceSetSize += kotlinPaths.size();
 
@@ -153,6 +148,7 @@ class AndroidProjectParser {
                 }
 
                 for (Path resourcesDir : variant.getResourcesDirectories(sourceSetName)) {
+                    // Exact match only, so a resources directory nested in a claimed source directory is still parsed as resources
                     if (Files.exists(resourcesDir) && !alreadyParsed.contains(resourcesDir)) {
                         Set<Path> accepted =
                                 omniParser.acceptedPaths(baseDir, resourcesDir)
@@ -161,8 +157,8 @@ class AndroidProjectParser {
                                         .collect(Collectors.toSet());
                         sourceSetSourceFiles = Stream.concat(
                                 sourceSetSourceFiles,
-                                omniParser.parse(accepted, baseDir, new InMemoryExecutionContext())
-                                        .map(it -> it.withMarkers(it.getMarkers().add(javaVersion))));
+                                executor.submit(() -> omniParser.parse(accepted, baseDir, new InMemoryExecutionContext())
+                                        .map(it -> it.withMarkers(it.getMarkers().add(javaVersion)))));
                         alreadyParsed.addAll(accepted);
                         sourceSetSize += accepted.size();
                     }
@@ -255,48 +251,52 @@ class AndroidProjectParser {
     private Stream<SourceFile> parseJavaFiles(List<Path> javaPaths,
                                               ExecutionContext ctx,
                                               Path buildDir,
-                                              Collection<PathMatcher> exclusions,
+                                              ExclusionMatcher exclusions,
                                               Charset javaSourceCharset,
                                               JavaVersion javaVersion,
                                               Set<Path> dependencyPaths,
-                                              JavaTypeCache javaTypeCache) {
-        ParsingExecutionContextView.view(ctx).setCharset(javaSourceCharset);
+                                              JavaTypeCache javaTypeCache,
+                                              ParallelExecutor executor,
+                                              ParseFilter parseFilter) {
+        List<Path> acceptedPaths = parseFilter.filter(javaPaths, exclusions, buildDir);
+        if (acceptedPaths.isEmpty()) {
+            return Stream.empty();
+        }
+        ExecutionContext parseCtx = executor.fork(ctx);
+        ParsingExecutionContextView.view(parseCtx).setCharset(javaSourceCharset);
 
-        return Stream.of((Supplier<JavaParser>) () -> JavaParser.fromJavaVersion()
+        return executor.submit(() -> Stream.of((Supplier<JavaParser>) () -> JavaParser.fromJavaVersion()
                 .classpath(dependencyPaths)
                 .styles(styles)
                 .typeCache(javaTypeCache)
                 .logCompilationWarningsAndErrors(rewriteExtension.getLogCompilationWarningsAndErrors())
-                .build()).map(Supplier::get).flatMap(jp -> jp.parse(javaPaths, baseDir, ctx)).map(cu -> {
-            if (DefaultProjectParser.isExcluded(exclusions, cu.getSourcePath()) || cu.getSourcePath()
-                    .startsWith(buildDir)) {
-                return null;
-            }
-            return cu;
-        }).filter(Objects::nonNull).map(it -> it.withMarkers(it.getMarkers().add(javaVersion)));
+                .build()).map(Supplier::get).flatMap(jp -> jp.parse(acceptedPaths, baseDir, parseCtx))
+                .map(it -> it.withMarkers(it.getMarkers().add(javaVersion))));
     }
 
     private Stream<SourceFile> parseKotlinFiles(List<Path> kotlinPaths,
                                                 ExecutionContext ctx,
                                                 Path buildDir,
-                                                Collection<PathMatcher> exclusions,
+                                                ExclusionMatcher exclusions,
                                                 Charset javaSourceCharset,
                                                 JavaVersion javaVersion,
                                                 Set<Path> dependencyPaths,
-                                                JavaTypeCache javaTypeCache) {
-        ParsingExecutionContextView.view(ctx).setCharset(javaSourceCharset);
+                                                JavaTypeCache javaTypeCache,
+                                                ParallelExecutor executor,
+                                                ParseFilter parseFilter) {
+        List<Path> acceptedPaths = parseFilter.filter(kotlinPaths, exclusions, buildDir);
+        if (acceptedPaths.isEmpty()) {
+            return Stream.empty();
+        }
+        ExecutionContext parseCtx = executor.fork(ctx);
+        ParsingExecutionContextView.view(parseCtx).setCharset(javaSourceCharset);
 
-        return Stream.of((Supplier<KotlinParser>) () -> KotlinParser.builder()
+        return executor.submit(() -> Stream.of((Supplier<KotlinParser>) () -> KotlinParser.builder()
                 .classpath(dependencyPaths)
                 .styles(styles)
                 .typeCache(javaTypeCache)
                 .logCompilationWarningsAndErrors(rewriteExtension.getLogCompilationWarningsAndErrors())
-                .build()).map(Supplier::get).flatMap(kp -> kp.parse(kotlinPaths, baseDir, ctx)).map(cu -> {
-            if (DefaultProjectParser.isExcluded(exclusions, cu.getSourcePath()) || cu.getSourcePath()
-                    .startsWith(buildDir)) {
-                return null;
-            }
-            return cu;
-        }).filter(Objects::nonNull).map(it -> it.withMarkers(it.getMarkers().add(javaVersion)));
+                .build()).map(Supplier::get).flatMap(kp -> kp.parse(acceptedPaths, baseDir, parseCtx))
+                .map(it -> it.withMarkers(it.getMarkers().add(javaVersion))));
     }
 }
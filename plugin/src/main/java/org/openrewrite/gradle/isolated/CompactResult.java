@@ -0,0 +1,188 @@
+/*
+ * Licensed under the Moderne Source Available License.
+ * See https://docs.moderne.io/licensing/moderne-source-available-license
+ */
+package org.openrewrite.gradle.isolated;
+
+import org.jspecify.annotations.Nullable;
+import org.openrewrite.FileAttributes;
+import org.openrewrite.PrintOutputCapture;
+import org.openrewrite.Result;
+import org.openrewrite.SourceFile;
+import org.openrewrite.binary.Binary;
+import org.openrewrite.config.RecipeDescriptor;
+import org.openrewrite.gradle.SanitizedMarkerPrinter;
+import org.openrewrite.quark.Quark;
+import org.openrewrite.remote.Remote;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * What it takes to report a {@link Result} and to apply it. Either a view of the result itself, or, once compacted, a
+ * copy of just its paths, recipes and time savings along with its printed output. A compacted result no longer
+ * references the LSTs it was made from, and can be applied but not diffed.
+ */
+class CompactResult {
+    @Nullable
+    private final Result result;
+
+    @Nullable
+    private final Path beforePath;
+
+    @Nullable
+    private final Path afterPath;
+
+    private final List<RecipeDescriptor> recipeDescriptors;
+
+    @Nullable
+    private final Duration timeSavings;
+
+    private final boolean quark;
+    private final boolean diffable;
+
+    /**
+     * Source files which are not trees, and are therefore cheap to keep: {@link Quark} and {@link Remote}.
+     */
+    @Nullable
+    private final SourceFile contentless;
+
+    private final byte @Nullable [] printed;
+
+    @Nullable
+    private final FileAttributes fileAttributes;
+
+    /**
+     * A view of the result, which keeps on referencing it.
+     */
+    CompactResult(Result result) {
+        this.result = result;
+        this.beforePath = null;
+        this.afterPath = null;
+        this.recipeDescriptors = Collections.emptyList();
+        this.timeSavings = null;
+        this.quark = false;
+        this.diffable = false;
+        this.contentless = null;
+        this.printed = null;
+        this.fileAttributes = null;
+    }
+
+    private CompactResult(Result source,
+                          @Nullable SourceFile contentless,
+                          byte @Nullable [] printed) {
+        this.result = null;
+        this.beforePath = source.getBefore() == null ? null : source.getBefore().getSourcePath();
+        this.afterPath = source.getAfter() == null ? null : source.getAfter().getSourcePath();
+        this.recipeDescriptors = source.getRecipeDescriptorsThatMadeChanges();
+        this.timeSavings = source.getTimeSavings();
+        this.quark = source.getAfter() instanceof Quark;
+        this.diffable = isDiffable(source.getAfter());
+        this.contentless = contentless;
+        this.printed = printed;
+        this.fileAttributes = source.getAfter() == null ? null : source.getAfter().getFileAttributes();
+    }
+
+    /**
+     * @throws UncheckedIOException When the result contains characters that its charset cannot encode, as it could
+     *                              then not be written as printed.
+     */
+    static CompactResult compact(Result result) {
+        SourceFile after = result.getAfter();
+        if (after == null || after instanceof Quark || after instanceof Remote) {
+            return new CompactResult(result, after, null);
+        }
+        byte[] printed;
+        if (after instanceof Binary) {
+            printed = ((Binary) after).getBytes();
+        } else {
+            Charset charset = after.getCharset() == null ? StandardCharsets.UTF_8 : after.getCharset();
+            try {
+                printed = ResultWriter.encode(after.printAll(new PrintOutputCapture<>(0, new SanitizedMarkerPrinter())), charset);
+            } catch (CharacterCodingException e) {
+                throw new UncheckedIOException(new IOException("Unable to compact the result for " +
+                                                               after.getSourcePath() + ", which contains characters that " +
+                                                               charset + " cannot encode", e));
+            }
+        }
+        return new CompactResult(result, null, printed);
+    }
+
+    private static boolean isDiffable(@Nullable SourceFile after) {
+        // cannot meaningfully display diffs of these things. Console output notes that they were touched by a recipe.
+        return !(after instanceof Binary) && !(after instanceof Quark);
+    }
+
+    @Nullable
+    Path getBeforePath() {
+        if (result != null) {
+            return result.getBefore() == null ? null : result.getBefore().getSourcePath();
+        }
+        return beforePath;
+    }
+
+    @Nullable
+    Path getAfterPath() {
+        if (result != null) {
+            return result.getAfter() == null ? null : result.getAfter().getSourcePath();
+        }
+        return afterPath;
+    }
+
+    List<RecipeDescriptor> getRecipeDescriptorsThatMadeChanges() {
+        return result != null ? result.getRecipeDescriptorsThatMadeChanges() : recipeDescriptors;
+    }
+
+    @Nullable
+    Duration getTimeSavings() {
+        return result != null ? result.getTimeSavings() : timeSavings;
+    }
+
+    /**
+     * @return Whether the result is a {@link Quark}, whose contents are unknown and so can only be moved.
+     */
+    boolean isQuark() {
+        return result != null ? result.getAfter() instanceof Quark : quark;
+    }
+
+    /**
+     * @return Whether the result can be shown as a diff, which isn't the case for binary files.
+     */
+    boolean isDiffable() {
+        return result != null ? isDiffable(result.getAfter()) : diffable;
+    }
+
+    String diff() {
+        if (result == null) {
+            throw new IllegalStateException("The diff of " + (afterPath == null ? beforePath : afterPath) +
+                                            " was not kept");
+        }
+        return result.diff();
+    }
+
+    /**
+     * Queue the after state of the result to be written, relative to the given root.
+     */
+    void write(ResultWriter writer, Path root) {
+        Path afterPath = getAfterPath();
+        assert afterPath != null;
+        Path target = root.resolve(afterPath);
+        if (result != null) {
+            assert result.getAfter() != null;
+            writer.write(target, result.getAfter());
+        } else if (contentless != null) {
+            writer.write(target, contentless);
+        } else if (printed != null) {
+            writer.write(target, printed, fileAttributes);
+        } else {
+            throw new IllegalStateException("The printed output of " + afterPath + " was not kept");
+        }
+    }
+}
@@ -5,6 +5,7 @@
 package org.openrewrite.gradle.isolated;
 
 import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
 import io.micrometer.core.instrument.binder.jvm.JvmHeapPressureMetrics;
 import io.micrometer.core.instrument.binder.jvm.JvmMemoryMetrics;
 import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
@@ -12,6 +13,7 @@ import org.gradle.api.NamedDomainObjectContainer;
 import org.gradle.api.Project;
 import org.gradle.api.artifacts.Configuration;
 import org.gradle.api.file.SourceDirectorySet;
+import org.gradle.api.initialization.IncludedBuild;
 import org.gradle.api.initialization.Settings;
 import org.gradle.api.logging.Logger;
 import org.gradle.api.logging.Logging;
@@ -27,14 +29,13 @@ import org.gradle.util.GradleVersion;
 import org.jetbrains.kotlin.gradle.plugin.KotlinSourceSet;
 import org.jspecify.annotations.Nullable;
 import org.openrewrite.*;
-import org.openrewrite.binary.Binary;
 import org.openrewrite.config.Environment;
 import org.openrewrite.config.RecipeDescriptor;
 import org.openrewrite.config.YamlResourceLoader;
 import org.openrewrite.gradle.GradleParser;
 import org.openrewrite.gradle.GradleProjectParser;
+import org.openrewrite.gradle.RecipeEnvironmentModel;
 import org.openrewrite.gradle.RewriteExtension;
-import org.openrewrite.gradle.SanitizedMarkerPrinter;
 import org.openrewrite.gradle.marker.GradleProject;
 import org.openrewrite.gradle.marker.GradleProjectBuilder;
 import org.openrewrite.gradle.marker.GradleSettings;
@@ -56,9 +57,7 @@ import org.openrewrite.marker.*;
 import org.openrewrite.marker.ci.BuildEnvironment;
 import org.openrewrite.polyglot.*;
 import org.openrewrite.properties.PropertiesParser;
-import org.openrewrite.quark.Quark;
 import org.openrewrite.quark.QuarkParser;
-import org.openrewrite.remote.Remote;
 import org.openrewrite.style.NamedStyles;
 import org.openrewrite.text.PlainTextParser;
 import org.openrewrite.tree.ParsingEventListener;
@@ -67,15 +66,15 @@ import org.openrewrite.xml.tree.Xml;
 
 import java.io.*;
 import java.nio.charset.Charset;
-import java.nio.charset.StandardCharsets;
 import java.nio.file.*;
-import java.nio.file.attribute.BasicFileAttributes;
-import java.time.Duration;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Predicate;
 import java.util.function.Supplier;
 import java.util.function.UnaryOperator;
 import java.util.stream.Collectors;
@@ -88,8 +87,6 @@ import static org.openrewrite.Tree.randomId;
 import static org.openrewrite.tree.ParsingExecutionContextView.view;
 
 public class DefaultProjectParser implements GradleProjectParser {
-    private static final String LOG_INDENT_INCREMENT = "    ";
-
     private static final Logger logger = Logging.getLogger(DefaultProjectParser.class);
     private final AtomicBoolean firstWarningLogged = new AtomicBoolean(false);
     protected final Path baseDir;
@@ -103,9 +100,68 @@ public class DefaultProjectParser implements GradleProjectParser {
     @Nullable
     private Environment environment;
 
+    @Nullable
+    private RecipeCatalog recipeCatalog;
+
+    @Nullable
+    private YamlResourceLoader rewriteConfig;
+
+    private boolean rewriteConfigLoaded;
+
+    @Nullable
+    private RecipeEnvironmentModel model;
+
+    /**
+     * Directories of source files that were already parsed by each project, see {@link #useExportedSources(Collection)}.
+     */
+    @Nullable
+    private List<Path> exportedSources;
+
+    /**
+     * Which of how many shards to parse the projects of, see {@link #useShard(int, int)}. No projects are left out
+     * when the count is 0.
+     */
+    private int shardIndex;
+    private int shardCount;
+
     @Nullable
     private AndroidProjectParser androidProjectParser;
 
+    @Nullable
+    private LstCache lstCache;
+
+    @Nullable
+    private HeapAwareBatcher javaBatcher;
+
+    /**
+     * Heap pressure, which {@link HeapAwareBatcher} sizes its batches by and a dry run may log as it parses.
+     */
+    @Nullable
+    private SimpleMeterRegistry meterRegistry;
+
+    @Nullable
+    private JvmHeapPressureMetrics heapPressureMetrics;
+
+
+    @Nullable
+    private RepositoryFileIndex fileIndex;
+
+    @Nullable
+    private ParseFilter parseFilter;
+
+    private final Map<List<String>, ExclusionMatcher> exclusionMatchers = new ConcurrentHashMap<>();
+
+    /**
+     * Build scripts are parsed against the same buildscript and settings classpaths in every project of a build, so
+     * those are only resolved once per build. Each project's scripts still get a parser of their own, see
+     * {@link #gradleParser()}.
+     */
+    @Nullable
+    private List<Path> buildscriptClasspath;
+
+    @Nullable
+    private List<Path> settingsClasspath;
+
     public DefaultProjectParser(Project project, RewriteExtension extension) {
         this.baseDir = repositoryRoot(project);
         this.extension = extension;
@@ -138,7 +194,7 @@ public class DefaultProjectParser implements GradleProjectParser {
         return maybeBaseDir;
     }
 
-    private static final Map<Path, GitProvenance> REPO_ROOT_TO_PROVENANCE = new HashMap<>();
+    private static final Map<Path, GitProvenance> REPO_ROOT_TO_PROVENANCE = new ConcurrentHashMap<>();
 
     private @Nullable GitProvenance gitProvenance(Path baseDir, @Nullable BuildEnvironment buildEnvironment) {
         try {
@@ -152,22 +208,6 @@ public class DefaultProjectParser implements GradleProjectParser {
         return null;
     }
 
-    // By accident, we were inconsistent with the names of these properties between this and the maven plugin
-    // Check all variants of the name, preferring more-fully-qualified names
-    private @Nullable String getPropertyWithVariantNames(String property) {
-        String maybeProp = System.getProperty("rewrite." + property + "s");
-        if (maybeProp == null) {
-            maybeProp = System.getProperty("rewrite." + property);
-        }
-        if (maybeProp == null) {
-            maybeProp = System.getProperty(property + "s");
-        }
-        if (maybeProp == null) {
-            maybeProp = System.getProperty(property);
-        }
-        return maybeProp;
-    }
-
     private static boolean isAndroidProject(Project project) {
         return project.hasProperty("android");
     }
@@ -181,84 +221,51 @@ public class DefaultProjectParser implements GradleProjectParser {
 
     @Override
     public List<String> getActiveRecipes() {
-        String activeRecipe = getPropertyWithVariantNames("activeRecipe");
-        if (activeRecipe == null) {
-            return new ArrayList<>(extension.getActiveRecipes());
-        }
-        return Arrays.asList(activeRecipe.split(","));
+        return model().getActiveRecipes();
     }
 
     @Override
     public List<String> getActiveStyles() {
-        String activeStyle = getPropertyWithVariantNames("activeStyle");
-        if (activeStyle == null) {
-            return new ArrayList<>(extension.getActiveStyles());
-        }
-        return Arrays.asList(activeStyle.split(","));
+        return model().getActiveStyles();
     }
 
     @Override
     public List<String> getAvailableStyles() {
-        return environment().listStyles().stream().map(NamedStyles::getName).collect(toList());
+        return new RecipeDiscovery(model()).listStyleNames();
     }
 
     @Override
     public void discoverRecipes(ServiceRegistry serviceRegistry) {
-        Collection<RecipeDescriptor> availableRecipeDescriptors = this.listRecipeDescriptors();
-
-        List<String> activeRecipes = getActiveRecipes();
-        List<String> availableStyles = getAvailableStyles();
-        List<String> activeStyles = getActiveStyles();
-
-        logger.quiet("Available Recipes:");
-        for (RecipeDescriptor recipe : availableRecipeDescriptors) {
-            logger.quiet(indent(1, recipe.getName()));
-        }
-
-        logger.quiet(indent(0, ""));
-        logger.quiet("Available Styles:");
-        for (String style : availableStyles) {
-            logger.quiet(indent(1, style));
-        }
-
-        logger.quiet(indent(0, ""));
-        logger.quiet("Active Styles:");
-        for (String style : activeStyles) {
-            logger.quiet(indent(1, style));
-        }
-
-        logger.quiet(indent(0, ""));
-        logger.quiet("Active Recipes:");
-        for (String activeRecipe : activeRecipes) {
-            logger.quiet(indent(1, activeRecipe));
-        }
-
-        logger.quiet(indent(0, ""));
-        logger.quiet("Found " + availableRecipeDescriptors.size() + " available recipes and " + availableStyles.size() + " available styles.");
-        logger.quiet("Configured with " + activeRecipes.size() + " active recipes and " + activeStyles.size() + " active styles.");
+        new RecipeDiscovery(model()).run();
     }
 
     public Collection<RecipeDescriptor> listRecipeDescriptors() {
         return environment().listRecipeDescriptors();
     }
 
-    private static String indent(int indent, CharSequence content) {
-        StringBuilder prefix = repeat(indent);
-        return prefix.append(content).toString();
-    }
-
-    private static StringBuilder repeat(int repeat) {
-        StringBuilder buffer = new StringBuilder(repeat * LOG_INDENT_INCREMENT.length());
-        for (int i = 0; i < repeat; i++) {
-            buffer.append(LOG_INDENT_INCREMENT);
+    @Override
+    public Collection<Path> listSources() {
+        // Use a sorted collection so that gradle input detection isn't thrown off by ordering
+        Set<Path> result = new TreeSet<>();
+        // Like parse(), the root project takes in the sources of every subproject as well
+        if (project == project.getRootProject()) {
+            for (Project subproject : project.getSubprojects()) {
+                listSources(subproject, result);
+            }
         }
-        return buffer;
+        listSources(project, result);
+        return result;
     }
 
     @Override
-    public Collection<Path> listSources() {
-        // Use a sorted collection so that gradle input detection isn't thrown off by ordering
-        Set<Path> result = new TreeSet<>(omniParser(emptySet(), project).acceptedPaths(
+    public Collection<Path> listProjectSources() {
+        Set<Path> result = new TreeSet<>();
+        listSources(project, result);
+        return result;
+    }
+
+    private void listSources(Project project, Set<Path> result) {
+        result.addAll(omniParser(emptySet(), project).acceptedPaths(
                 baseDir,
                 project.getProjectDir().toPath()));
         if (isAndroidProject(project)) {
@@ -278,27 +285,26 @@ public class DefaultProjectParser implements GradleProjectParser {
                         .forEach(result::add);
             }
         }
-        return result;
     }
 
     @Override
     public void dryRun(Path reportPath, boolean dumpGcActivity, Consumer<Throwable> onError) {
         ParsingExecutionContextView ctx = view(new InMemoryExecutionContext(onError));
         if (dumpGcActivity) {
-            SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
-            try (JvmHeapPressureMetrics heapMetrics = new JvmHeapPressureMetrics()) {
-                heapMetrics.bindTo(meterRegistry);
-                new JvmMemoryMetrics().bindTo(meterRegistry);
-
-                File rewriteBuildDir = project.getLayout().getBuildDirectory().dir("rewrite").get().getAsFile();
-                if (rewriteBuildDir.exists() || rewriteBuildDir.mkdirs()) {
-                    File rewriteGcLog = new File(rewriteBuildDir, "rewrite-gc.csv");
-                    try (FileOutputStream fos = new FileOutputStream(rewriteGcLog, false);
-                         BufferedWriter logWriter = new BufferedWriter(new PrintWriter(fos))) {
-                        logWriter.write("file,jvm.gc.overhead,g1.old.gen.size\n");
-                        ctx.setParsingListener(new ParsingEventListener() {
-                            @Override
-                            public void parsed(Parser.Input input, SourceFile sourceFile) {
+            MeterRegistry meterRegistry = meterRegistry();
+            new JvmMemoryMetrics().bindTo(meterRegistry);
+
+            File rewriteBuildDir = project.getLayout().getBuildDirectory().dir("rewrite").get().getAsFile();
+            if (rewriteBuildDir.exists() || rewriteBuildDir.mkdirs()) {
+                File rewriteGcLog = new File(rewriteBuildDir, "rewrite-gc.csv");
+                try (FileOutputStream fos = new FileOutputStream(rewriteGcLog, false);
+                     BufferedWriter logWriter = new BufferedWriter(new PrintWriter(fos))) {
+                    logWriter.write("file,jvm.gc.overhead,g1.old.gen.size\n");
+                    ctx.setParsingListener(new ParsingEventListener() {
+                        @Override
+                        public void parsed(Parser.Input input, SourceFile sourceFile) {
+                            // Source sets may be parsed concurrently, see RewriteExtension#getParallelism()
+                            synchronized (logWriter) {
                                 try {
                                     logWriter.write(input.getPath() + ",");
                                     logWriter.write(meterRegistry.get("jvm.gc.overhead").gauge().value() + ",");
@@ -309,14 +315,14 @@ public class DefaultProjectParser implements GradleProjectParser {
                                     throw new UncheckedIOException(e);
                                 }
                             }
-                        });
-                        dryRun(reportPath, listResults(ctx));
-                        logWriter.flush();
-                        logger.lifecycle("Wrote rewrite GC log: {}", rewriteGcLog.getAbsolutePath());
-                    } catch (IOException e) {
-                        logger.error("Unable to write rewrite GC log", e);
-                        throw new UncheckedIOException(e);
-                    }
+                        }
+                    });
+                    dryRun(reportPath, listResults(ctx));
+                    logWriter.flush();
+                    logger.lifecycle("Wrote rewrite GC log: {}", rewriteGcLog.getAbsolutePath());
+                } catch (IOException e) {
+                    logger.error("Unable to write rewrite GC log", e);
+                    throw new UncheckedIOException(e);
                 }
             }
         } else {
@@ -326,303 +332,288 @@ public class DefaultProjectParser implements GradleProjectParser {
 
     public void dryRun(Path reportPath, ResultsContainer results) {
         try {
-            RuntimeException firstException = results.getFirstException();
-            if (firstException != null) {
-                logger.error("The recipe produced an error. Please report this to the recipe author.");
-                throw firstException;
-            }
-
-            if (results.isNotEmpty()) {
-                Duration estimateTimeSaved = Duration.ZERO;
-                for (Result result : results.generated) {
-                    assert result.getAfter() != null;
-                    logger.warn("These recipes would generate new file {}:", result.getAfter().getSourcePath());
-                    logRecipesThatMadeChanges(result);
-                    estimateTimeSaved = estimateTimeSavedSum(result, estimateTimeSaved);
-                }
-                for (Result result : results.deleted) {
-                    assert result.getBefore() != null;
-                    logger.warn("These recipes would delete file {}:", result.getBefore().getSourcePath());
-                    logRecipesThatMadeChanges(result);
-                    estimateTimeSaved = estimateTimeSavedSum(result, estimateTimeSaved);
-                }
-                for (Result result : results.moved) {
-                    assert result.getBefore() != null;
-                    assert result.getAfter() != null;
-                    logger.warn("These recipes would move file from {} to {}:", result.getBefore().getSourcePath(), result.getAfter().getSourcePath());
-                    logRecipesThatMadeChanges(result);
-                    estimateTimeSaved = estimateTimeSavedSum(result, estimateTimeSaved);
-                }
-                for (Result result : results.refactoredInPlace) {
-                    assert result.getBefore() != null;
-                    logger.warn("These recipes would make changes to {}:", result.getBefore().getSourcePath());
-                    logRecipesThatMadeChanges(result);
-                    estimateTimeSaved = estimateTimeSavedSum(result, estimateTimeSaved);
-                }
+            resultsApplier().dryRun(reportPath, results);
+        } finally {
+            shutdownRewrite();
+        }
+    }
 
-                //noinspection ResultOfMethodCallIgnored
-                reportPath.getParent().toFile().mkdirs();
-                try (BufferedWriter writer = Files.newBufferedWriter(reportPath)) {
-                    Stream.concat(
-                                    Stream.concat(results.generated.stream(), results.deleted.stream()),
-                                    Stream.concat(results.moved.stream(), results.refactoredInPlace.stream()))
-                            // cannot meaningfully display diffs of these things. Console output notes that they were touched by a recipe.
-                            .filter(it -> !(it.getAfter() instanceof Binary) && !(it.getAfter() instanceof Quark))
-                            .map(Result::diff)
-                            .forEach(diff -> {
-                                try {
-                                    writer.write(diff + "\n");
-                                } catch (IOException e) {
-                                    throw new RuntimeException(e);
-                                }
-                            });
-                } catch (Exception e) {
-                    throw new RuntimeException("Unable to generate rewrite result file.", e);
-                }
-                logger.warn("Report available:");
-                logger.warn("    {}", reportPath.normalize());
-                logger.warn("Estimate time saved: {}", formatDuration(estimateTimeSaved));
-                logger.warn("Run 'gradle rewriteRun' to apply the recipes.");
+    @Override
+    public void run(Consumer<Throwable> onError) {
+        ExecutionContext ctx = new InMemoryExecutionContext(onError);
+        run(compact(listResults(ctx)), ctx);
+    }
 
-                if (project.getExtensions().getByType(RewriteExtension.class).getFailOnDryRunResults()) {
-                    throw new RuntimeException("Applying recipes would make changes. See logs for more details.");
-                }
-            } else {
-                logger.lifecycle("Applying recipes would make no changes. No report generated.");
+    @Override
+    public @Nullable Path exportSources(Path dir, Consumer<Throwable> onError) {
+        try {
+            if (getActiveRecipes().isEmpty()) {
+                logger.warn("No recipes were activated. Activate a recipe with rewrite.activeRecipe(\"com.fully.qualified.RecipeClassName\") in your build file, or on the command line with -DactiveRecipe=com.fully.qualified.RecipeClassName");
+                return null;
             }
+            int count = new LstDirectory(dir).write(parse(new InMemoryExecutionContext(onError)));
+            logger.lifecycle("All sources parsed, running active recipes in a worker process: {} ({} source files)",
+                    String.join(", ", getActiveRecipes()), count);
+            return baseDir;
         } finally {
             shutdownRewrite();
         }
     }
 
-    private static String formatDuration(Duration duration) {
-        return duration.toString()
-                .substring(2)
-                .replaceAll("(\\d[HMS])(?!$)", "$1 ")
-                .toLowerCase()
-                .trim();
+    @Override
+    public void exportProjectSources(Path dir, Consumer<Throwable> onError) {
+        try {
+            if (getActiveRecipes().isEmpty()) {
+                return;
+            }
+            // Only this project's directory is indexed, the directories of other projects are left to their own tasks
+            int count = new LstDirectory(dir).write(parse(singletonList(project), new InMemoryExecutionContext(onError)));
+            logger.lifecycle("Parsed {} source files in project {}", count, project.getPath());
+        } finally {
+            shutdownRewrite();
+        }
     }
 
     @Override
-    public void run(Consumer<Throwable> onError) {
-        ExecutionContext ctx = new InMemoryExecutionContext(onError);
-        run(listResults(ctx), ctx);
+    public void useExportedSources(Collection<Path> dirs) {
+        this.exportedSources = new ArrayList<>(dirs);
+    }
+
+    /**
+     * Release the LSTs behind the results before they are applied, when {@link RewriteExtension#isCompactResults()}
+     * is set.
+     */
+    private ResultsContainer compact(ResultsContainer results) {
+        if (extension.isCompactResults()) {
+            try (ParallelExecutor executor = new ParallelExecutor(extension.getParallelism())) {
+                results.compact(executor);
+            }
+        }
+        return results;
     }
 
     public void run(ResultsContainer results, ExecutionContext ctx) {
         try {
-            if (results.isNotEmpty()) {
-                Duration estimateTimeSaved = Duration.ZERO;
-                RuntimeException firstException = results.getFirstException();
-                if (firstException != null) {
-                    logger.error("The recipe produced an error. Please report this to the recipe author.");
-                    throw firstException;
-                }
-
-                for (Result result : results.generated) {
-                    assert result.getAfter() != null;
-                    logger.lifecycle("Generated new file " +
-                                     result.getAfter().getSourcePath() +
-                                     " by:");
-                    logRecipesThatMadeChanges(result);
-                    estimateTimeSaved = estimateTimeSavedSum(result, estimateTimeSaved);
-                }
-                for (Result result : results.deleted) {
-                    assert result.getBefore() != null;
-                    logger.lifecycle("Deleted file " +
-                                     result.getBefore().getSourcePath() +
-                                     " by:");
-                    logRecipesThatMadeChanges(result);
-                    estimateTimeSaved = estimateTimeSavedSum(result, estimateTimeSaved);
-                }
-                for (Result result : results.moved) {
-                    assert result.getAfter() != null;
-                    assert result.getBefore() != null;
-                    logger.lifecycle("File has been moved from " +
-                                     result.getBefore().getSourcePath() + " to " +
-                                     result.getAfter().getSourcePath() + " by:");
-                    logRecipesThatMadeChanges(result);
-                    estimateTimeSaved = estimateTimeSavedSum(result, estimateTimeSaved);
-                }
-                for (Result result : results.refactoredInPlace) {
-                    assert result.getBefore() != null;
-                    logger.lifecycle("Changes have been made to " +
-                                     result.getBefore().getSourcePath() +
-                                     " by:");
-                    logRecipesThatMadeChanges(result);
-                    estimateTimeSaved = estimateTimeSavedSum(result, estimateTimeSaved);
-                }
+            resultsApplier().run(results, ctx);
+        } finally {
+            shutdownRewrite();
+        }
+    }
 
-                logger.lifecycle("Please review and commit the results.");
+    private ResultsApplier resultsApplier() {
+        return new ResultsApplier(
+                extension.getParallelism(),
+                extension.isSkipUnchangedWrites(),
+                extension.getFailOnDryRunResults(),
+                this::logRecipesThatMadeChanges);
+    }
 
-                logger.lifecycle("Estimate time saved: {}", formatDuration(estimateTimeSaved));
+    protected Environment environment() {
+        if (environment == null) {
+            Environment.Builder env = Environment.builder();
+            env.scanClassLoader(getClass().getClassLoader());
+            environment = withRewriteConfig(env).build();
+        }
+        return environment;
+    }
 
-                try {
-                    for (Result result : results.generated) {
-                        writeAfter(results.getProjectRoot(), result, ctx);
-                    }
-                    for (Result result : results.deleted) {
-                        assert result.getBefore() != null;
-                        Path originalLocation = results.getProjectRoot().resolve(result.getBefore().getSourcePath());
-                        boolean deleteSucceeded = originalLocation.toFile().delete();
-                        if (!deleteSucceeded) {
-                            throw new IOException("Unable to delete file " + originalLocation.toAbsolutePath());
-                        }
-                    }
-                    for (Result result : results.moved) {
-                        // Should we try to use git to move the file first, and only if that fails fall back to this?
-                        assert result.getBefore() != null;
-                        Path originalLocation = results.getProjectRoot().resolve(result.getBefore().getSourcePath());
-                        File originalParentDir = originalLocation.toFile().getParentFile();
-
-                        assert result.getAfter() != null;
-                        // Ensure directories exist in case something was moved into a hitherto nonexistent package
-                        Path afterLocation = results.getProjectRoot().resolve(result.getAfter().getSourcePath());
-                        File afterParentDir = afterLocation.toFile().getParentFile();
-                        // Rename the directory if its name case has been changed, e.g. camel case to lower case.
-                        if (afterParentDir.exists() &&
-                            afterParentDir.getAbsolutePath().equalsIgnoreCase((originalParentDir.getAbsolutePath())) &&
-                            !afterParentDir.getAbsolutePath().equals(originalParentDir.getAbsolutePath())) {
-                            if (!originalParentDir.renameTo(afterParentDir)) {
-                                throw new RuntimeException("Unable to rename directory from " + originalParentDir.getAbsolutePath() + " To: " + afterParentDir.getAbsolutePath());
-                            }
-                        } else if (!afterParentDir.exists() && !afterParentDir.mkdirs()) {
-                            throw new RuntimeException("Unable to create directory " + afterParentDir.getAbsolutePath());
-                        }
-                        if (result.getAfter() instanceof Quark) {
-                            // We don't know the contents of a Quark, but we can move it
-                            Files.move(originalLocation, results.getProjectRoot().resolve(result.getAfter().getSourcePath()));
-                        } else {
-                            // On Mac this can return "false" even when the file was deleted, so skip the check
-                            //noinspection ResultOfMethodCallIgnored
-                            originalLocation.toFile().delete();
-                            writeAfter(results.getProjectRoot(), result, ctx);
-                        }
-                    }
+    private Environment.Builder withRewriteConfig(Environment.Builder env) {
+        YamlResourceLoader config = rewriteConfig();
+        if (config != null) {
+            env.load(config);
+        }
+        return env;
+    }
 
-                    for (Result result : results.refactoredInPlace) {
-                        writeAfter(results.getProjectRoot(), result, ctx);
-                    }
-                    List<Path> emptyDirectories = results.newlyEmptyDirectories();
-                    if (!emptyDirectories.isEmpty()) {
-                        logger.quiet("Removing {} newly empty directories:",
-                                emptyDirectories.size());
-                        for (Path emptyDirectory : emptyDirectories) {
-                            logger.quiet("  {}", emptyDirectory);
-                            Files.delete(emptyDirectory);
-                        }
-                    }
-                } catch (IOException e) {
-                    throw new UncheckedIOException("Unable to rewrite source files", e);
-                }
-            }
-        } finally {
-            shutdownRewrite();
+    private @Nullable YamlResourceLoader rewriteConfig() {
+        if (!rewriteConfigLoaded) {
+            rewriteConfig = loadRewriteConfig(model(), getClass().getClassLoader());
+            rewriteConfigLoaded = true;
         }
+        return rewriteConfig;
     }
 
-    private static Duration estimateTimeSavedSum(Result result, Duration timeSaving) {
-        if (null != result.getTimeSavings()) {
-            return timeSaving.plus(result.getTimeSavings());
+    private @Nullable RecipeCatalog recipeCatalog() {
+        if (recipeCatalog == null) {
+            recipeCatalog = loadRecipeCatalog(model(), getClass().getClassLoader());
         }
-        return timeSaving;
+        return recipeCatalog;
     }
 
-    private static void writeAfter(Path root, Result result, ExecutionContext ctx) {
-        assert result.getAfter() != null;
-        Path targetPath = root.resolve(result.getAfter().getSourcePath());
-        File targetFile = targetPath.toFile();
-        if (!targetFile.getParentFile().exists()) {
-            //noinspection ResultOfMethodCallIgnored
-            targetFile.getParentFile().mkdirs();
+    private RecipeEnvironmentModel model() {
+        if (model == null) {
+            model = RecipeEnvironmentModel.of(project, extension);
         }
-        if (result.getAfter() instanceof Binary) {
-            try (FileOutputStream sourceFileWriter = new FileOutputStream(targetFile)) {
-                sourceFileWriter.write(((Binary) result.getAfter()).getBytes());
-            } catch (IOException e) {
-                throw new UncheckedIOException("Unable to rewrite source files", e);
-            }
-        } else if (result.getAfter() instanceof Remote) {
-            Remote remote = (Remote) result.getAfter();
-            try (FileOutputStream sourceFileWriter = new FileOutputStream(targetFile)) {
-                InputStream source = remote.getInputStream(ctx);
-                byte[] buf = new byte[4096];
-                int length;
-                while ((length = source.read(buf)) > 0) {
-                    sourceFileWriter.write(buf, 0, length);
-                }
+        return model;
+    }
+
+    static @Nullable YamlResourceLoader loadRewriteConfig(RecipeEnvironmentModel model, ClassLoader classLoader) {
+        File rewriteConfigFile = model.getConfigFile();
+        if (rewriteConfigFile.exists()) {
+            try (FileInputStream is = new FileInputStream(rewriteConfigFile)) {
+                return new YamlResourceLoader(is, rewriteConfigFile.toURI(), model.getProperties(), classLoader);
             } catch (IOException e) {
-                throw new UncheckedIOException("Unable to rewrite source files", e);
-            }
-        } else //noinspection StatementWithEmptyBody
-            if (result.getAfter() instanceof Quark) {
-                // Don't attempt to write to a Quark; it has already been logged as change that has been made
-            } else {
-                Charset charset = result.getAfter().getCharset() == null ? StandardCharsets.UTF_8 : result.getAfter().getCharset();
-                try (BufferedWriter sourceFileWriter = Files.newBufferedWriter(targetPath, charset)) {
-                    sourceFileWriter.write(result.getAfter().printAll(new PrintOutputCapture<>(0, new SanitizedMarkerPrinter())));
-                } catch (IOException e) {
-                    throw new UncheckedIOException("Unable to rewrite source files", e);
-                }
+                throw new RuntimeException("Unable to load rewrite configuration", e);
             }
-        if (result.getAfter().getFileAttributes() != null) {
-            FileAttributes fileAttributes = result.getAfter().getFileAttributes();
-            if (targetFile.canRead() != fileAttributes.isReadable()) {
-                //noinspection ResultOfMethodCallIgnored
-                targetFile.setReadable(fileAttributes.isReadable());
-            }
-            if (targetFile.canWrite() != fileAttributes.isWritable()) {
-                //noinspection ResultOfMethodCallIgnored
-                targetFile.setWritable(fileAttributes.isWritable());
-            }
-            if (targetFile.canExecute() != fileAttributes.isExecutable()) {
-                //noinspection ResultOfMethodCallIgnored
-                targetFile.setExecutable(fileAttributes.isExecutable());
+        } else if (model.getConfigFileSetDeliberately()) {
+            logger.warn("Rewrite configuration file {} does not exist.", rewriteConfigFile);
+        }
+        return null;
+    }
+
+    static @Nullable RecipeCatalog loadRecipeCatalog(RecipeEnvironmentModel model, ClassLoader classLoader) {
+        File recipeCatalogDir = model.getRecipeCatalogDir();
+        if (recipeCatalogDir == null) {
+            return null;
+        }
+        return RecipeCatalog.load(recipeCatalogDir.toPath(), classLoader, model.getProperties());
+    }
+
+    /**
+     * Activate the recipes from the catalog where possible, which spares scanning the classpath, and otherwise from
+     * the environment.
+     */
+    private Recipe activateRecipes(List<String> activeRecipes) {
+        RecipeCatalog catalog = recipeCatalog();
+        if (environment == null && catalog != null) {
+            Recipe recipe = catalog.activateRecipes(activeRecipes, withRewriteConfig(Environment.builder()));
+            if (recipe != null) {
+                return recipe;
             }
+            logger.info("Not all active recipes are in the recipe catalog, scanning the classpath for them");
         }
+        return environment().activateRecipes(activeRecipes);
     }
 
-    protected Environment environment() {
-        if (environment == null) {
-            Map<Object, Object> gradleProps = project.getProperties().entrySet().stream()
-                    .filter(entry -> entry.getKey() != null && entry.getValue() != null)
-                    .collect(toMap(Map.Entry::getKey, Map.Entry::getValue));
+    public Stream<SourceFile> parse(ExecutionContext ctx) {
+        if (exportedSources != null) {
+            logger.lifecycle("Reading sources parsed by each project from {} directories", exportedSources.size());
+            return exportedSources.stream()
+                    .flatMap(dir -> new LstDirectory(dir).read())
+                    .map(this::withCurrentProvenance);
+        }
+        List<Project> projects = new ArrayList<>();
+        if (project == project.getRootProject()) {
+            projects.addAll(project.getSubprojects());
+        }
+        projects.add(project);
+        if (shardCount > 0) {
+            warnOfScanningRecipes();
+            projects = shard(projects);
+        }
+        return parse(projects, ctx);
+    }
 
-            Properties properties = new Properties();
-            properties.putAll(gradleProps);
+    /**
+     * A scanning recipe only sees the sources of the projects in the current shard, so it may make other changes, or
+     * none at all, than it would if it saw every project.
+     */
+    private void warnOfScanningRecipes() {
+        Set<String> scanning = new TreeSet<>();
+        collectScanningRecipes(activateRecipes(getActiveRecipes()), scanning);
+        if (!scanning.isEmpty()) {
+            logger.warn("Shard {} of {} runs recipes that scan the sources before making changes, but only sees the " +
+                        "projects of this shard. Their results may differ from those of a dry run without shards: {}",
+                    shardIndex, shardCount, String.join(", ", scanning));
+        }
+    }
 
-            Environment.Builder env = Environment.builder();
-            env.scanClassLoader(getClass().getClassLoader());
+    private static void collectScanningRecipes(Recipe recipe, Set<String> scanning) {
+        if (recipe instanceof ScanningRecipe) {
+            scanning.add(recipe.getName());
+        }
+        for (Recipe child : recipe.getRecipeList()) {
+            collectScanningRecipes(child, scanning);
+        }
+    }
 
-            File rewriteConfig = extension.getConfigFile();
-            if (rewriteConfig.exists()) {
-                try (FileInputStream is = new FileInputStream(rewriteConfig)) {
-                    YamlResourceLoader resourceLoader = new YamlResourceLoader(is, rewriteConfig.toURI(), properties, getClass().getClassLoader());
-                    env.load(resourceLoader);
-                } catch (IOException e) {
-                    throw new RuntimeException("Unable to load rewrite configuration", e);
+    /**
+     * Sources that a project parsed in an earlier build, which are reused while its inputs are unchanged, carry the
+     * commit and build environment of that build. They get those of this build instead, like freshly parsed sources.
+     */
+    private SourceFile withCurrentProvenance(SourceFile sourceFile) {
+        List<Marker> markers = sourceFile.getMarkers().getMarkers().stream()
+                .filter(marker -> !(marker instanceof BuildEnvironment || marker instanceof GitProvenance ||
+                                    marker instanceof OperatingSystemProvenance || marker instanceof BuildTool))
+                .collect(toList());
+        markers.addAll(sharedProvenance);
+        return sourceFile.withMarkers(sourceFile.getMarkers().withMarkers(markers));
+    }
+
+    /**
+     * Partition the projects into {@link #shardCount} shards of about the same number of source files, and keep those
+     * of the current shard. Each machine that runs a shard comes to the same partition, as long as it has the same
+     * sources. The heaviest projects are placed first, each on the shard with the fewest source files so far.
+     */
+    private List<Project> shard(List<Project> projects) {
+        Map<Project, Integer> weights = new HashMap<>();
+        for (Project candidate : projects) {
+            Set<Path> sources = new HashSet<>();
+            listSources(candidate, sources);
+            // Projects without sources still take some time, if only to find that out
+            weights.put(candidate, sources.size() + 1);
+        }
+        List<Project> heaviestFirst = new ArrayList<>(projects);
+        heaviestFirst.sort(Comparator.<Project>comparingInt(weights::get).reversed()
+                .thenComparing(Project::getPath));
+
+        long[] shardWeights = new long[shardCount];
+        Set<Project> inShard = new HashSet<>();
+        for (Project candidate : heaviestFirst) {
+            int lightest = 0;
+            for (int i = 1; i < shardCount; i++) {
+                if (shardWeights[i] < shardWeights[lightest]) {
+                    lightest = i;
                 }
-            } else if (extension.getConfigFileSetDeliberately()) {
-                logger.warn("Rewrite configuration file {} does not exist.", rewriteConfig);
             }
-
-            environment = env.build();
+            shardWeights[lightest] += weights.get(candidate);
+            if (lightest == shardIndex - 1) {
+                inShard.add(candidate);
+            }
         }
-        return environment;
+
+        List<Project> sharded = projects.stream().filter(inShard::contains).collect(toList());
+        logger.lifecycle("Shard {} of {} takes {} of {} projects, with {} of {} source files",
+                shardIndex, shardCount, sharded.size(), projects.size(), shardWeights[shardIndex - 1] - sharded.size(),
+                weights.values().stream().mapToLong(w -> w - 1).sum());
+        return sharded;
     }
 
-    public Stream<SourceFile> parse(ExecutionContext ctx) {
+    @Override
+    public void useShard(int index, int count) {
+        this.shardIndex = index;
+        this.shardCount = count;
+    }
+
+    private Stream<SourceFile> parse(List<Project> projects, ExecutionContext ctx) {
         Stream<SourceFile> builder = Stream.of();
-        Set<Path> alreadyParsed = new HashSet<>();
-        if (project == project.getRootProject()) {
-            for (Project subProject : project.getSubprojects()) {
-                builder = Stream.concat(builder, parse(subProject, alreadyParsed, ctx));
+        PathTrie alreadyParsed = new PathTrie();
+        index(projects);
+        parseFilter = null;
+        clearScriptClasspaths();
+        // Units of work are scheduled while the stream is being assembled, which happens on this thread and in a
+        // fixed order. So alreadyParsed is filled in the same way regardless of how many threads do the parsing.
+        try (ParallelExecutor executor = new ParallelExecutor(extension.getParallelism())) {
+            for (Project toParse : projects) {
+                builder = Stream.concat(builder, parse(toParse, alreadyParsed, executor, ctx));
             }
+            builder = builder.map(this::logParseErrors);
+            if (parseFilter != null && parseFilter.getSkippedFiles() > 0) {
+                logger.info("Skipped parsing {} excluded or build directory sources ({} bytes)",
+                        parseFilter.getSkippedFiles(), parseFilter.getSkippedBytes());
+            }
+            return builder;
         }
-        return Stream.concat(builder, parse(project, alreadyParsed, ctx)).map(this::logParseErrors);
     }
 
-    public Stream<SourceFile> parse(Project subproject, Set<Path> alreadyParsed, ExecutionContext ctx) {
+    public Stream<SourceFile> parse(Project subproject, Set<Path> alreadyParsedPaths, ExecutionContext ctx) {
+        index(singletonList(subproject));
+        try (ParallelExecutor executor = new ParallelExecutor(1)) {
+            return parse(subproject, PathTrie.of(alreadyParsedPaths), executor, ctx);
+        }
+    }
+
+    private Stream<SourceFile> parse(Project subproject, PathTrie alreadyParsed, ParallelExecutor executor, ExecutionContext ctx) {
         String cliPort = System.getenv("MODERNE_CLI_PORT");
         try (ProgressBar progressBar = StringUtils.isBlank(cliPort) ? new NoopProgressBar() :
                 new RemoteProgressBarSender(Integer.parseInt(cliPort))) {
@@ -630,10 +621,8 @@ public class DefaultProjectParser implements GradleProjectParser {
                     subproject.getPath(),
                     projectName -> progressBar.intermediateResult(":" + projectName));
 
-            Collection<PathMatcher> exclusions = extension.getExclusions().stream()
-                    .map(pattern -> subproject.getProjectDir().toPath().getFileSystem().getPathMatcher("glob:" + pattern))
-                    .collect(toList());
-            if (isExcluded(exclusions, baseDir.relativize(subproject.getProjectDir().toPath()))) {
+            ExclusionMatcher exclusions = exclusionMatcher(extension.getExclusions());
+            if (exclusions.isExcludedDirectory(baseDir.relativize(subproject.getProjectDir().toPath()))) {
                 logger.lifecycle("Skipping project {} because it is excluded", subproject.getPath());
                 return Stream.empty();
             }
@@ -653,6 +642,7 @@ public class DefaultProjectParser implements GradleProjectParser {
                         subproject,
                         exclusions,
                         alreadyParsed,
+                        executor,
                         ctx));
             }
 
@@ -673,6 +663,7 @@ public class DefaultProjectParser implements GradleProjectParser {
                         sourceCharset,
                         alreadyParsed,
                         exclusions,
+                        executor,
                         ctx);
             } else {
                 projectSourceFileStream = parseGradleProjectSourceSets(
@@ -682,6 +673,7 @@ public class DefaultProjectParser implements GradleProjectParser {
                         sourceCharset,
                         alreadyParsed,
                         exclusions,
+                        executor,
                         ctx);
             }
             sourceFileStream = sourceFileStream.concat(projectSourceFileStream, projectSourceFileStream.size());
@@ -719,8 +711,9 @@ public class DefaultProjectParser implements GradleProjectParser {
                                                           ProgressBar progressBar,
                                                           Path buildDir,
                                                           Charset sourceCharset,
-                                                          Set<Path> alreadyParsed,
-                                                          Collection<PathMatcher> exclusions,
+                                                          PathTrie alreadyParsed,
+                                                          ExclusionMatcher exclusions,
+                                                          ParallelExecutor executor,
                                                           ExecutionContext ctx) {
         SourceFileStream sourceFileStream = SourceFileStream.build(
                 subproject.getPath(),
@@ -730,7 +723,6 @@ public class DefaultProjectParser implements GradleProjectParser {
             Stream<SourceFile> sourceSetSourceFiles = Stream.of();
             int sourceSetSize = 0;
 
-            JavaTypeCache javaTypeCache = new JavaTypeCache();
             JavaCompile javaCompileTask = (JavaCompile) subproject.getTasks()
                     .getByName(sourceSet.getCompileJavaTaskName());
             JavaVersion javaVersion = getJavaVersion(javaCompileTask);
@@ -740,20 +732,11 @@ public class DefaultProjectParser implements GradleProjectParser {
             List<Path> unparsedSources = sourceSet.getAllSource()
                     .getSourceDirectories()
                     .filter(File::exists)
-                    .filter(dir -> !alreadyParsed.contains(dir.toPath()))
+                    .filter(dir -> !alreadyParsed.isClaimed(dir.toPath()))
                     .getFiles()
                     .stream()
                     .map(File::toPath)
-                    .flatMap(dirPath -> {
-                        try {
-                            return Files.walk(dirPath);
-                        } catch (IOException e) {
-                            throw new UncheckedIOException(e);
-                        }
-                    })
-                    .filter(Files::isRegularFile)
-                    .map(Path::toAbsolutePath)
-                    .map(Path::normalize)
+                    .flatMap(dirPath -> fileIndex().files(dirPath).stream())
                     .distinct()
                     .collect(Collectors.toList());
 
@@ -782,6 +765,8 @@ public class DefaultProjectParser implements GradleProjectParser {
                         e);
             }
 
+            JavaTypeCache javaTypeCache = new SynchronizedJavaTypeCache();
+
             if (!javaPaths.isEmpty()) {
                 alreadyParsed.addAll(javaPaths);
                 Stream<SourceFile> parsedJavaFiles = parseJavaFiles(
@@ -792,7 +777,8 @@ public class DefaultProjectParser implements GradleProjectParser {
                         javaSourceCharset,
                         javaVersion,
                         dependencyPaths,
-                        javaTypeCache);
+                        javaTypeCache,
+                        executor);
                 sourceSetSourceFiles = Stream.concat(sourceSetSourceFiles, parsedJavaFiles);
                 sourceSetSize += javaPaths.size();
                 logger.info(
@@ -819,7 +805,8 @@ public class DefaultProjectParser implements GradleProjectParser {
                             javaSourceCharset,
                             javaVersion,
                             dependencyPaths,
-                            javaTypeCache);
+                            javaTypeCache,
+                            executor);
                     sourceSetSourceFiles = Stream.concat(sourceSetSourceFiles, parsedKotlinFiles);
                     sourceSetSize += kotlinPaths.size();
                     logger.info(
@@ -843,17 +830,22 @@ public class DefaultProjectParser implements GradleProjectParser {
                             .collect(toList());
 
                     alreadyParsed.addAll(groovyPaths);
+                    List<Path> acceptedGroovyPaths = parseFilter().filter(groovyPaths, exclusions, buildDir);
 
-                    Stream<SourceFile> cus = Stream.of((Supplier<GroovyParser>) () -> GroovyParser.builder()
-                            .classpath(dependenciesWithBuildDirs)
-                            .typeCache(javaTypeCache)
-                            .logCompilationWarningsAndErrors(false)
-                            .build()).map(Supplier::get).flatMap(gp -> gp.parse(groovyPaths, baseDir, ctx)).map(cu -> {
-                        if (isExcluded(exclusions, cu.getSourcePath()) || cu.getSourcePath().startsWith(buildDir)) {
-                            return null;
-                        }
-                        return cu;
-                    }).filter(Objects::nonNull).map(it -> it.withMarkers(it.getMarkers().add(javaVersion)));
+                    ExecutionContext groovyCtx = executor.fork(ctx);
+                    if (executor.isParallel()) {
+                        view(groovyCtx).setCharset(javaSourceCharset);
+                    }
+                    Stream<SourceFile> cus = executor.submit(() -> parseCached(
+                            acceptedGroovyPaths,
+                            cache -> cache.fingerprint(dependenciesWithBuildDirs, "groovy", javaSourceCharset),
+                            javaTypeCache,
+                            paths -> Stream.of((Supplier<GroovyParser>) () -> GroovyParser.builder()
+                                    .classpath(dependenciesWithBuildDirs)
+                                    .typeCache(javaTypeCache)
+                                    .logCompilationWarningsAndErrors(false)
+                                    .build()).map(Supplier::get).flatMap(gp -> gp.parse(paths, baseDir, groovyCtx)))
+                            .map(it -> it.withMarkers(it.getMarkers().add(javaVersion))));
                     sourceSetSourceFiles = Stream.concat(sourceSetSourceFiles, cus);
                     sourceSetSize += groovyPaths.size();
                     logger.info(
@@ -865,13 +857,19 @@ public class DefaultProjectParser implements GradleProjectParser {
             }
 
             for (File resourcesDir : sourceSet.getResources().getSourceDirectories()) {
+                // Exact match only, so a resources directory nested in a claimed source directory is still parsed as resources
                 if (resourcesDir.exists() && !alreadyParsed.contains(resourcesDir.toPath())) {
                     OmniParser omniParser = omniParser(alreadyParsed, subproject);
                     List<Path> accepted = omniParser.acceptedPaths(baseDir, resourcesDir.toPath());
                     sourceSetSourceFiles = Stream.concat(
                             sourceSetSourceFiles,
-                            omniParser.parse(accepted, baseDir, new InMemoryExecutionContext())
-                                    .map(it -> it.withMarkers(it.getMarkers().add(javaVersion))));
+                            executor.submit(() -> parseCached(
+                                    accepted,
+                                    cache -> cache.fingerprint(emptyList(), "resources",
+                                            extension.getPlainTextMasks(), extension.getSizeThresholdMb()),
+                                    null,
+                                    paths -> omniParser.parse(paths, baseDir, new InMemoryExecutionContext()))
+                                    .map(it -> it.withMarkers(it.getMarkers().add(javaVersion)))));
                     alreadyParsed.addAll(accepted);
                     sourceSetSize += accepted.size();
                 }
@@ -884,7 +882,7 @@ public class DefaultProjectParser implements GradleProjectParser {
             // Some source sets get misconfigured to have the same directories as other source sets
             // Prevent files which appear in multiple source sets from being parsed more than once
             for (File file : sourceSet.getAllSource().getSourceDirectories().getFiles()) {
-                alreadyParsed.add(file.toPath());
+                alreadyParsed.claimDirectory(file.toPath());
             }
         }
         return sourceFileStream;
@@ -895,8 +893,9 @@ public class DefaultProjectParser implements GradleProjectParser {
             ProgressBar progressBar,
             Path buildDir,
             Charset sourceCharset,
-            Set<Path> alreadyParsed,
-            Collection<PathMatcher> exclusions,
+            PathTrie alreadyParsed,
+            ExclusionMatcher exclusions,
+            ParallelExecutor executor,
             ExecutionContext ctx) {
         return getAndroidProjectParser().parseProjectSourceSets(
                 subproject,
@@ -906,57 +905,172 @@ public class DefaultProjectParser implements GradleProjectParser {
                 alreadyParsed,
                 exclusions,
                 ctx,
-                omniParser(alreadyParsed, subproject));
+                omniParser(alreadyParsed, subproject),
+                executor,
+                fileIndex(),
+                parseFilter());
     }
 
     private Stream<SourceFile> parseJavaFiles(
             List<Path> javaPaths,
             ExecutionContext ctx,
             Path buildDir,
-            Collection<PathMatcher> exclusions,
+            ExclusionMatcher exclusions,
             Charset javaSourceCharset,
             JavaVersion javaVersion,
             Set<Path> dependencyPaths,
-            JavaTypeCache javaTypeCache) {
-        view(ctx).setCharset(javaSourceCharset);
-
-        return Stream.of((Supplier<JavaParser>) () -> JavaParser.fromJavaVersion()
-                        .classpath(dependencyPaths)
-                        .typeCache(javaTypeCache)
-                        .logCompilationWarningsAndErrors(extension.getLogCompilationWarningsAndErrors())
-                        .build())
-                .map(Supplier::get).flatMap(jp -> jp.parse(javaPaths, baseDir, ctx)).map(cu -> {
-                    if (isExcluded(exclusions, cu.getSourcePath()) || cu.getSourcePath().startsWith(buildDir)) {
-                        return null;
-                    }
-                    return cu;
-                }).filter(Objects::nonNull).map(it -> it.withMarkers(it.getMarkers().add(javaVersion)));
+            JavaTypeCache javaTypeCache,
+            ParallelExecutor executor) {
+        List<Path> acceptedPaths = parseFilter().filter(javaPaths, exclusions, buildDir);
+        if (acceptedPaths.isEmpty()) {
+            return Stream.empty();
+        }
+        ExecutionContext parseCtx = executor.fork(ctx);
+        view(parseCtx).setCharset(javaSourceCharset);
+
+        return executor.submit(() -> parseCached(
+                acceptedPaths,
+                cache -> cache.fingerprint(dependencyPaths, "java", javaSourceCharset,
+                        javaVersion.getSourceCompatibility(), javaVersion.getTargetCompatibility()),
+                javaTypeCache,
+                paths -> Stream.of((Supplier<JavaParser>) () -> JavaParser.fromJavaVersion()
+                                .classpath(dependencyPaths)
+                                .typeCache(javaTypeCache)
+                                .logCompilationWarningsAndErrors(extension.getLogCompilationWarningsAndErrors())
+                                .build())
+                        .map(Supplier::get).flatMap(jp -> extension.isEnableHeapAwareBatching() ?
+                                javaBatcher().parse(jp, paths, baseDir, parseCtx) :
+                                jp.parse(paths, baseDir, parseCtx)))
+                .map(it -> it.withMarkers(it.getMarkers().add(javaVersion))));
     }
 
     private Stream<SourceFile> parseKotlinFiles(List<Path> kotlinPaths,
                                                 ExecutionContext ctx,
                                                 Path buildDir,
-                                                Collection<PathMatcher> exclusions,
+                                                ExclusionMatcher exclusions,
                                                 Charset javaSourceCharset,
                                                 JavaVersion javaVersion,
                                                 Set<Path> dependencyPaths,
-                                                JavaTypeCache javaTypeCache) {
-        view(ctx).setCharset(javaSourceCharset);
-
-        return Stream.of((Supplier<KotlinParser>) () -> KotlinParser.builder()
-                .classpath(dependencyPaths)
-                .typeCache(javaTypeCache)
-                .logCompilationWarningsAndErrors(extension.getLogCompilationWarningsAndErrors())
-                .build()).map(Supplier::get).flatMap(kp -> kp.parse(kotlinPaths, baseDir, ctx)).map(cu -> {
-            if (isExcluded(exclusions, cu.getSourcePath()) || cu.getSourcePath().startsWith(buildDir)) {
-                return null;
+                                                JavaTypeCache javaTypeCache,
+                                                ParallelExecutor executor) {
+        List<Path> acceptedPaths = parseFilter().filter(kotlinPaths, exclusions, buildDir);
+        if (acceptedPaths.isEmpty()) {
+            return Stream.empty();
+        }
+        ExecutionContext parseCtx = executor.fork(ctx);
+        view(parseCtx).setCharset(javaSourceCharset);
+
+        return executor.submit(() -> parseCached(
+                acceptedPaths,
+                cache -> cache.fingerprint(dependencyPaths, "kotlin", javaSourceCharset,
+                        javaVersion.getSourceCompatibility(), javaVersion.getTargetCompatibility()),
+                javaTypeCache,
+                paths -> Stream.of((Supplier<KotlinParser>) () -> KotlinParser.builder()
+                        .classpath(dependencyPaths)
+                        .typeCache(javaTypeCache)
+                        .logCompilationWarningsAndErrors(extension.getLogCompilationWarningsAndErrors())
+                        .build()).map(Supplier::get).flatMap(kp -> kp.parse(paths, baseDir, parseCtx)))
+                .map(it -> it.withMarkers(it.getMarkers().add(javaVersion))));
+    }
+
+    /**
+     * Parse the given paths, going through the LST cache when {@link RewriteExtension#isEnableLstCache()} is set.
+     *
+     * @param typeCache The type cache the parser attributes types with, or {@code null} for source files without types.
+     */
+    private Stream<SourceFile> parseCached(List<Path> paths,
+                                           Function<LstCache, String> fingerprint,
+                                           @Nullable JavaTypeCache typeCache,
+                                           Function<List<Path>, Stream<SourceFile>> parser) {
+        if (paths.isEmpty()) {
+            return Stream.empty();
+        }
+        if (!extension.isEnableLstCache()) {
+            return parser.apply(paths);
+        }
+        LstCache cache = lstCache();
+        return cache.parse(paths, fingerprint.apply(cache), typeCache, parser);
+    }
+
+    private synchronized LstCache lstCache() {
+        if (lstCache == null) {
+            lstCache = new LstCache(
+                    baseDir,
+                    project.getLayout().getBuildDirectory().dir("rewrite/lst-cache").get().getAsFile().toPath(),
+                    extension.getRewriteVersion());
+        }
+        return lstCache;
+    }
+
+    private synchronized HeapAwareBatcher javaBatcher() {
+        if (javaBatcher == null) {
+            javaBatcher = new HeapAwareBatcher(meterRegistry(), path -> fileIndex().size(path));
+        }
+        return javaBatcher;
+    }
+
+    private synchronized MeterRegistry meterRegistry() {
+        if (meterRegistry == null) {
+            meterRegistry = new SimpleMeterRegistry();
+            heapPressureMetrics = new JvmHeapPressureMetrics();
+            heapPressureMetrics.bindTo(meterRegistry);
+        }
+        return meterRegistry;
+    }
+
+    /**
+     * The files of the projects parsed so far. The index is kept for as long as this parser, so a project is only
+     * walked the first time it is parsed, and the directories of projects that aren't parsed are never walked.
+     */
+    private synchronized RepositoryFileIndex fileIndex() {
+        if (fileIndex == null) {
+            List<Path> skipped = new ArrayList<>();
+            List<Path> projectDirs = new ArrayList<>();
+            for (Project p : project.getRootProject().getAllprojects()) {
+                skipped.add(p.getLayout().getBuildDirectory().get().getAsFile().toPath());
+                projectDirs.add(p.getProjectDir().toPath());
             }
-            return cu;
-        }).filter(Objects::nonNull).map(it -> it.withMarkers(it.getMarkers().add(javaVersion)));
+            for (IncludedBuild includedBuild : project.getGradle().getIncludedBuilds()) {
+                skipped.add(includedBuild.getProjectDir().toPath());
+            }
+            fileIndex = new RepositoryFileIndex(baseDir, skipped, projectDirs, exclusionMatcher(extension.getExclusions()));
+        }
+        return fileIndex;
     }
 
-    private GradleParser gradleParser() {
-        List<Path> settingsClasspath;
+    private void index(List<Project> projects) {
+        fileIndex().index(projects.stream()
+                .map(p -> p.getProjectDir().toPath())
+                .collect(toList()), extension.getParallelism());
+    }
+
+    private synchronized ParseFilter parseFilter() {
+        if (parseFilter == null) {
+            parseFilter = new ParseFilter(baseDir, fileIndex());
+        }
+        return parseFilter;
+    }
+
+    /**
+     * A parser for the build scripts of one project. Every script compiles to a class named after its file, so the
+     * {@code build.gradle} of each project is a class named {@code build}. Parsers and their type caches are therefore
+     * never shared between projects, or the scripts of one project would be attributed with the types of another's.
+     */
+    private synchronized GradleParser gradleParser() {
+        resolveScriptClasspaths();
+        return GradleParser.builder()
+                .groovyParser(GroovyParser.builder()
+                        .typeCache(new JavaTypeCache())
+                        .logCompilationWarningsAndErrors(false))
+                .buildscriptClasspath(buildscriptClasspath)
+                .settingsClasspath(settingsClasspath)
+                .build();
+    }
+
+    private void resolveScriptClasspaths() {
+        if (buildscriptClasspath != null && settingsClasspath != null) {
+            return;
+        }
         if (GradleVersion.current().compareTo(GradleVersion.version("4.4")) >= 0) {
             try {
                 Settings settings = ((DefaultGradle) project.getGradle()).getSettings();
@@ -973,47 +1087,46 @@ public class DefaultProjectParser implements GradleProjectParser {
         } else {
             settingsClasspath = emptyList();
         }
-        List<Path> buildscriptClasspath = project.getBuildscript()
+        buildscriptClasspath = project.getBuildscript()
                 .getConfigurations()
                 .getByName("classpath")
                 .resolve()
                 .stream()
                 .map(File::toPath)
                 .collect(toList());
+    }
 
-        return GradleParser.builder()
-                .groovyParser(GroovyParser.builder()
-                        .typeCache(new JavaTypeCache())
-                        .logCompilationWarningsAndErrors(false))
-                .buildscriptClasspath(buildscriptClasspath)
-                .settingsClasspath(settingsClasspath)
-                .build();
+    private synchronized void clearScriptClasspaths() {
+        buildscriptClasspath = null;
+        settingsClasspath = null;
     }
 
     private SourceFileStream parseGradleFiles(
             Project subproject,
-            Collection<PathMatcher> exclusions,
-            Set<Path> alreadyParsed,
+            ExclusionMatcher exclusions,
+            PathTrie alreadyParsed,
             ExecutionContext ctx) {
         Stream<SourceFile> sourceFiles = Stream.empty();
         int gradleFileCount = 0;
+        // Consecutive Groovy scripts are parsed together, without changing the order of the source files
+        List<Path> gradleScripts = new ArrayList<>();
+        Path settingsScript = null;
+        GradleSettings gradleSettings = null;
 
         // build.gradle
-        GradleParser gradleParser = null;
         GradleProject gradleProject = GradleProjectBuilder.gradleProject(subproject);
         File buildGradleFile = subproject.getBuildscript().getSourceFile();
         if (buildGradleFile != null) {
             Path buildScriptPath = baseDir.relativize(buildGradleFile.toPath());
-            if (!isExcluded(exclusions, buildScriptPath) && buildGradleFile.exists()) {
+            if (!exclusions.isExcluded(buildScriptPath) && buildGradleFile.exists()) {
                 if (buildScriptPath.toString().endsWith(".gradle")) {
-                    gradleParser = gradleParser();
-                    sourceFiles = gradleParser.parse(singleton(buildGradleFile.toPath()), baseDir, ctx);
+                    gradleScripts.add(buildGradleFile.toPath());
                 } else {
                     sourceFiles = PlainTextParser.builder().build()
-                            .parse(singleton(buildGradleFile.toPath()), baseDir, ctx);
+                            .parse(singleton(buildGradleFile.toPath()), baseDir, ctx)
+                            .map(sourceFile -> sourceFile.withMarkers(sourceFile.getMarkers().add(gradleProject)));
                 }
                 gradleFileCount++;
-                sourceFiles = sourceFiles.map(sourceFile -> sourceFile.withMarkers(sourceFile.getMarkers().add(gradleProject)));
                 alreadyParsed.add(buildGradleFile.toPath());
             }
         }
@@ -1029,26 +1142,20 @@ public class DefaultProjectParser implements GradleProjectParser {
             GradleSettings finalGs = gs;
             if (settingsGradleFile.exists()) {
                 Path settingsPath = baseDir.relativize(settingsGradleFile.toPath());
-                if (!isExcluded(exclusions, settingsPath)) {
-                    if (gradleParser == null) {
-                        gradleParser = gradleParser();
-                    }
-                    sourceFiles = Stream.concat(
-                            sourceFiles,
-                            gradleParser
-                                    .parse(singleton(settingsGradleFile.toPath()), baseDir, ctx)
-                                    .map(sourceFile -> {
-                                        if (finalGs == null) {
-                                            return sourceFile;
-                                        }
-                                        return sourceFile.withMarkers(sourceFile.getMarkers().add(finalGs));
-                                    }));
+                if (!exclusions.isExcluded(settingsPath)) {
+                    gradleScripts.add(settingsGradleFile.toPath());
+                    settingsScript = settingsPath;
+                    gradleSettings = gs;
                     gradleFileCount++;
                 }
                 alreadyParsed.add(settingsGradleFile.toPath());
             } else if (settingsGradleKtsFile.exists()) {
                 Path settingsPath = baseDir.relativize(settingsGradleKtsFile.toPath());
-                if (!isExcluded(exclusions, settingsPath)) {
+                if (!exclusions.isExcluded(settingsPath)) {
+                    sourceFiles = Stream.concat(
+                            sourceFiles,
+                            parseGradleScripts(gradleScripts, null, null, gradleProject, ctx));
+                    gradleScripts = new ArrayList<>();
                     sourceFiles = Stream.concat(
                             sourceFiles,
                             PlainTextParser.builder().build()
@@ -1064,12 +1171,15 @@ public class DefaultProjectParser implements GradleProjectParser {
                 alreadyParsed.add(settingsGradleKtsFile.toPath());
             }
         }
+        sourceFiles = Stream.concat(
+                sourceFiles,
+                parseGradleScripts(gradleScripts, settingsScript, gradleSettings, gradleProject, ctx));
 
         // gradle.properties
         File gradlePropertiesFile = subproject.file("gradle.properties");
         if (gradlePropertiesFile.exists()) {
             Path gradlePropertiesPath = baseDir.relativize(gradlePropertiesFile.toPath());
-            if (!isExcluded(exclusions, gradlePropertiesPath)) {
+            if (!exclusions.isExcluded(gradlePropertiesPath)) {
                 final GradleProject finalGradleProject = gradleProject;
                 sourceFiles = Stream.concat(
                         sourceFiles,
@@ -1083,47 +1193,42 @@ public class DefaultProjectParser implements GradleProjectParser {
 
         // Freestanding scripts
         try {
+            Path projectDir = subproject.getProjectDir().toPath().toAbsolutePath().normalize();
+            Map<Path, Boolean> skippedDirs = new HashMap<>();
+            Predicate<Path> skipDir = dir -> skippedDirs.computeIfAbsent(dir, d -> {
+                String name = baseDir.relativize(d).toString();
+                return subproject.getLayout().getBuildDirectory().getAsFile().get().toPath().equals(d) ||
+                       name.startsWith(".") // Skip .gradle, .idea, .moderne, etc.
+                       || name.equals("out") // IntelliJ standard output directory
+                       || subproject.getSubprojects().stream()
+                               .anyMatch(sp -> d.equals(sp.getProjectDir().toPath())) ||
+                       subproject.getGradle().getIncludedBuilds().stream()
+                               .anyMatch(ib -> d.equals(ib.getProjectDir().toPath())) ||
+                       exclusions.isExcludedDirectory(baseDir.relativize(d));
+            });
             List<Path> freeStandingScripts = new ArrayList<>();
-            Files.walkFileTree(subproject.getProjectDir().toPath(), new SimpleFileVisitor<Path>() {
-                @Override
-                public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
-                    Path dirFromRoot = baseDir.relativize(dir);
-                    String name = dirFromRoot.toString();
-                    if (subproject.getLayout().getBuildDirectory().getAsFile().get().toPath().equals(dir) ||
-                        name.startsWith(".") // Skip .gradle, .idea, .moderne, etc.
-                        || name.equals("out") // IntelliJ standard output directory
-                        || subproject.getSubprojects().stream()
-                                .anyMatch(sp -> dir.equals(sp.getProjectDir().toPath())) ||
-                        subproject.getGradle().getIncludedBuilds().stream()
-                                .anyMatch(ib -> dir.equals(ib.getProjectDir().toPath())) ||
-                        isExcluded(exclusions, baseDir.relativize(dir))) {
-                        return FileVisitResult.SKIP_SUBTREE;
-                    }
-
-                    return FileVisitResult.CONTINUE;
+            for (Path file : fileIndex().files(projectDir, ".gradle")) {
+                if (alreadyParsed.contains(file) || exclusions.isExcluded(baseDir.relativize(file))) {
+                    continue;
                 }
-
-                @Override
-                public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
-                    if (file.toString().endsWith(".gradle") && !alreadyParsed.contains(file) && !isExcluded(exclusions, baseDir.relativize(file))) {
-                        freeStandingScripts.add(file);
+                // Any directory from the project directory down to the script may have been skipped
+                boolean skipped = false;
+                for (Path dir = file.getParent(); dir != null && dir.startsWith(projectDir); dir = dir.getParent()) {
+                    if (skipDir.test(dir)) {
+                        skipped = true;
+                        break;
                     }
-                    return FileVisitResult.CONTINUE;
                 }
-            });
-            if (!freeStandingScripts.isEmpty()) {
-                if (gradleParser == null) {
-                    gradleParser = gradleParser();
+                if (!skipped) {
+                    freeStandingScripts.add(file);
                 }
-                sourceFiles = Stream.concat(
-                        sourceFiles,
-                        gradleParser.parse(freeStandingScripts, baseDir, ctx)
-                                .map(sourceFile -> sourceFile.withMarkers(sourceFile.getMarkers().add(gradleProject)))
-                );
-                alreadyParsed.addAll(freeStandingScripts);
-                gradleFileCount += freeStandingScripts.size();
             }
-        } catch (IOException e) {
+            sourceFiles = Stream.concat(
+                    sourceFiles,
+                    parseGradleScripts(freeStandingScripts, null, null, gradleProject, ctx));
+            alreadyParsed.addAll(freeStandingScripts);
+            gradleFileCount += freeStandingScripts.size();
+        } catch (UncheckedIOException e) {
             logger.warn("Unable to walk file tree for project {}", subproject.getPath(), e);
         }
 
@@ -1131,10 +1236,34 @@ public class DefaultProjectParser implements GradleProjectParser {
         }).concat(sourceFiles, gradleFileCount);
     }
 
+    /**
+     * Parse Groovy build scripts in one batch, marking the settings script with the settings and every other script
+     * with the project.
+     */
+    private Stream<SourceFile> parseGradleScripts(List<Path> scripts,
+                                                  @Nullable Path settingsScript,
+                                                  @Nullable GradleSettings gradleSettings,
+                                                  GradleProject gradleProject,
+                                                  ExecutionContext ctx) {
+        if (scripts.isEmpty()) {
+            return Stream.empty();
+        }
+        return gradleParser().parse(scripts, baseDir, ctx)
+                .map(sourceFile -> {
+                    if (!sourceFile.getSourcePath().equals(settingsScript)) {
+                        return sourceFile.withMarkers(sourceFile.getMarkers().add(gradleProject));
+                    }
+                    if (gradleSettings == null) {
+                        return sourceFile;
+                    }
+                    return sourceFile.withMarkers(sourceFile.getMarkers().add(gradleSettings));
+                });
+    }
+
     /**
      * Parse Gradle wrapper files separately from other resource files, as Moderne CLI skips `parseNonProjectResources`.
      */
-    private SourceFileStream parseGradleWrapperFiles(Collection<PathMatcher> exclusions, Set<Path> alreadyParsed, ExecutionContext ctx) {
+    private SourceFileStream parseGradleWrapperFiles(ExclusionMatcher exclusions, Set<Path> alreadyParsed, ExecutionContext ctx) {
         Stream<SourceFile> sourceFiles = Stream.empty();
         int fileCount = 0;
         if (project == project.getRootProject()) {
@@ -1147,7 +1276,7 @@ public class DefaultProjectParser implements GradleProjectParser {
                     .map(project::file)
                     .filter(File::exists)
                     .map(File::toPath)
-                    .filter(it -> !isExcluded(exclusions, it))
+                    .filter(it -> !exclusions.isExcluded(it))
                     .filter(omniParser::accept)
                     .collect(toList());
             sourceFiles = omniParser.parse(gradleWrapperFiles, baseDir, ctx);
@@ -1173,7 +1302,7 @@ public class DefaultProjectParser implements GradleProjectParser {
                                 .build(),
                         QuarkParser.builder().build()
                 )
-                .exclusionMatchers(pathMatchers(baseDir, mergeExclusions(project, baseDir, extension)))
+                .exclusionMatchers(singletonList(exclusionMatcher(mergeExclusions(project, baseDir, extension))))
                 .exclusions(alreadyParsed)
                 .sizeThresholdMb(extension.getSizeThresholdMb())
                 .build();
@@ -1186,13 +1315,15 @@ public class DefaultProjectParser implements GradleProjectParser {
                 extension.getExclusions().stream()).collect(toList());
     }
 
-    private Collection<PathMatcher> pathMatchers(Path basePath, Collection<String> pathExpressions) {
-        return pathExpressions.stream()
-                .map(o -> basePath.getFileSystem().getPathMatcher("glob:" + o))
-                .collect(toList());
+    /**
+     * Exclusions are checked for every file in the repository, so each distinct set of globs is only compiled once.
+     */
+    private ExclusionMatcher exclusionMatcher(Collection<String> globs) {
+        return exclusionMatchers.computeIfAbsent(new ArrayList<>(globs), ExclusionMatcher::new);
     }
 
-    private SourceFileStream parseMultiplatformKotlinProject(Project subproject, Collection<PathMatcher> exclusions, Set<Path> alreadyParsed, ExecutionContext ctx) {
+    private SourceFileStream parseMultiplatformKotlinProject(Project subproject, ExclusionMatcher exclusions, PathTrie alreadyParsed,
+                                                             ParallelExecutor executor, ExecutionContext ctx) {
         Object kotlinExtension = subproject.getExtensions().getByName("kotlin");
         NamedDomainObjectContainer<KotlinSourceSet> sourceSets;
         try {
@@ -1271,22 +1402,18 @@ public class DefaultProjectParser implements GradleProjectParser {
                         .collect(toList());
 
                 if (!kotlinPaths.isEmpty()) {
-                    JavaTypeCache javaTypeCache = new JavaTypeCache();
+                    JavaTypeCache javaTypeCache = new SynchronizedJavaTypeCache();
                     KotlinParser kp = KotlinParser.builder()
                             .classpath(dependencyPaths)
                             .typeCache(javaTypeCache)
                             .logCompilationWarningsAndErrors(extension.getLogCompilationWarningsAndErrors())
                             .build();
 
-                    Stream<SourceFile> cus = kp.parse(kotlinPaths, baseDir, ctx);
+                    List<Path> acceptedPaths = parseFilter().filter(kotlinPaths, exclusions, buildDirPath);
+                    ExecutionContext parseCtx = executor.fork(ctx);
+                    Stream<SourceFile> cus = acceptedPaths.isEmpty() ? Stream.empty() :
+                            executor.submit(() -> kp.parse(acceptedPaths, baseDir, parseCtx));
                     alreadyParsed.addAll(kotlinPaths);
-                    cus = cus.map(cu -> {
-                        if (isExcluded(exclusions, cu.getSourcePath()) ||
-                            cu.getSourcePath().startsWith(buildDirPath)) {
-                            return null;
-                        }
-                        return cu;
-                    }).filter(Objects::nonNull);
                     JavaSourceSet sourceSetProvenance = JavaSourceSet.build(sourceSetName, dependencyPaths);
 
                     sourceFileStream = sourceFileStream.concat(cus.map(addProvenance(sourceSetProvenance)), kotlinPaths.size());
@@ -1312,23 +1439,15 @@ public class DefaultProjectParser implements GradleProjectParser {
         return source;
     }
 
-    static boolean isExcluded(Collection<PathMatcher> exclusions, Path path) {
-        for (PathMatcher excluded : exclusions) {
-            if (excluded.matches(path)) {
-                return true;
-            }
-        }
-        // PathMather will not evaluate the path "build.gradle" to be matched by the pattern "**/build.gradle"
-        // This is counter-intuitive for most users and would otherwise require separate exclusions for files at the root and files in subdirectories
-        if (!path.isAbsolute() && !path.startsWith(File.separator)) {
-            return isExcluded(exclusions, Paths.get("/" + path));
-        }
-        return false;
-    }
-
     private List<NamedStyles> getStyles() {
         if (styles == null) {
-            styles = environment().activateStyles(getActiveStyles());
+            RecipeCatalog catalog = recipeCatalog();
+            if (environment == null && catalog != null) {
+                styles = catalog.activateStyles(getActiveStyles(), withRewriteConfig(Environment.builder()));
+            }
+            if (styles == null) {
+                styles = environment().activateStyles(getActiveStyles());
+            }
             File checkstyleConfig = extension.getCheckstyleConfigFile();
             if (checkstyleConfig != null && checkstyleConfig.exists()) {
                 try {
@@ -1342,29 +1461,48 @@ public class DefaultProjectParser implements GradleProjectParser {
     }
 
     protected ResultsContainer listResults(ExecutionContext ctx) {
-        Environment env = environment();
-        Recipe recipe = env.activateRecipes(getActiveRecipes());
+        Recipe recipe = activateRecipes(getActiveRecipes());
         if (recipe.getName().equals("org.openrewrite.Recipe$Noop")) {
             logger.warn("No recipes were activated. Activate a recipe with rewrite.activeRecipe(\"com.fully.qualified.RecipeClassName\") in your build file, or on the command line with -DactiveRecipe=com.fully.qualified.RecipeClassName");
             return new ResultsContainer(baseDir, null);
         }
+        validate(recipe, extension.getFailOnInvalidActiveRecipes(), ctx);
+
+        List<SourceFile> sourceFiles = withAutodetectedStyles(parse(ctx));
+        clearScriptClasspaths();
+
+        logger.lifecycle("All sources parsed, running active recipes: {}", String.join(", ", getActiveRecipes()));
+        Path datatableDirectoryPath = null;
+        if (extension.isExportDatatables()) {
+            datatableDirectoryPath = project.getLayout().getBuildDirectory().dir("reports/rewrite/datatables").get().getAsFile().toPath();
+        }
+        return new ResultsContainer(baseDir, run(recipe, new InMemoryLargeSourceSet(sourceFiles), datatableDirectoryPath,
+                extension.isCompressDatatables(), ctx));
+    }
+
+    static void validate(Recipe recipe, boolean failOnInvalidActiveRecipes, ExecutionContext ctx) {
         logger.lifecycle("Validating active recipes");
         Collection<Validated<Object>> validated = recipe.validateAll(ctx, new ArrayList<>());
         List<Validated.Invalid<Object>> failedValidations = validated.stream().map(Validated::failures)
                 .flatMap(Collection::stream).collect(toList());
         if (!failedValidations.isEmpty()) {
             failedValidations.forEach(failedValidation -> logger.error("Recipe validation error in {}: {}", failedValidation.getProperty(), failedValidation.getMessage(), failedValidation.getException()));
-            if (extension.getFailOnInvalidActiveRecipes()) {
+            if (failOnInvalidActiveRecipes) {
                 throw new RuntimeException("Recipe validation errors detected as part of one or more activeRecipe(s). Please check error logs.");
             } else {
                 logger.error("Recipe validation errors detected as part of one or more activeRecipe(s). Execution will continue regardless.");
             }
         }
+    }
 
+    /**
+     * Collect the source files, marking each with the styles autodetected from all the source files of its language.
+     */
+    static List<SourceFile> withAutodetectedStyles(Stream<SourceFile> sources) {
         org.openrewrite.java.style.Autodetect.Detector javaDetector = org.openrewrite.java.style.Autodetect.detector();
         org.openrewrite.kotlin.style.Autodetect.Detector kotlinDetector = org.openrewrite.kotlin.style.Autodetect.detector();
         org.openrewrite.xml.style.Autodetect.Detector xmlDetector = org.openrewrite.xml.style.Autodetect.detector();
-        List<SourceFile> sourceFiles = parse(ctx)
+        List<SourceFile> sourceFiles = sources
                 .peek(s -> {
                     if (s instanceof K.CompilationUnit) {
                         kotlinDetector.sample(s);
@@ -1378,28 +1516,68 @@ public class DefaultProjectParser implements GradleProjectParser {
         stylesByType.put(J.CompilationUnit.class, javaDetector.build());
         stylesByType.put(K.CompilationUnit.class, kotlinDetector.build());
         stylesByType.put(Xml.Document.class, xmlDetector.build());
-        sourceFiles = ListUtils.map(sourceFiles, applyAutodetected(stylesByType));
-
-        logger.lifecycle("All sources parsed, running active recipes: {}", String.join(", ", getActiveRecipes()));
-        RecipeRun recipeRun = recipe.run(new InMemoryLargeSourceSet(sourceFiles), ctx);
+        return ListUtils.map(sourceFiles, applyAutodetected(stylesByType));
+    }
 
-        if (extension.isExportDatatables()) {
+    /**
+     * @param datatablesDir      Where to export data tables to, in a new directory named after the current time, or
+     *                           {@code null} to not export them.
+     * @param compressDatatables Whether to gzip the exported data tables.
+     */
+    static RecipeRun run(Recipe recipe,
+                         LargeSourceSet sourceSet,
+                         @Nullable Path datatablesDir,
+                         boolean compressDatatables,
+                         ExecutionContext ctx) {
+        StreamingDataTables dataTables = null;
+        Path datatableDirectoryPath = null;
+        if (datatablesDir != null) {
             String timestamp = LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyy-MM-dd_HH-mm-ss-SSS"));
-            Path datatableDirectoryPath = project.getLayout().getBuildDirectory().dir("reports/rewrite/datatables/" + timestamp).get().getAsFile().toPath();
+            datatableDirectoryPath = datatablesDir.resolve(timestamp);
             logger.info(String.format("Printing available datatables to: %s", datatableDirectoryPath));
-            recipeRun.exportDatatablesToCsv(datatableDirectoryPath, ctx);
+            // Rows are written out as recipes insert them, rather than being held on heap until the run is over
+            dataTables = new StreamingDataTables(datatableDirectoryPath, compressDatatables, ctx);
+            ctx.putMessage(ExecutionContext.DATA_TABLES, dataTables.getTables());
         }
 
-        return new ResultsContainer(baseDir, recipeRun);
+        RecipeRun recipeRun;
+        try {
+            recipeRun = recipe.run(sourceSet, ctx);
+        } finally {
+            if (dataTables != null) {
+                dataTables.close();
+            }
+        }
+
+        if (dataTables != null && dataTables.getRowCount() == 0 &&
+            recipeRun.getDataTables().values().stream().anyMatch(rows -> !rows.isEmpty())) {
+            // The rows were collected somewhere other than the streaming tables, so export them the usual way
+            recipeRun.exportDatatablesToCsv(datatableDirectoryPath, ctx);
+        }
+        return recipeRun;
     }
 
     @Override
     public void shutdownRewrite() {
         REPO_ROOT_TO_PROVENANCE.clear();
+        clearScriptClasspaths();
+        synchronized (this) {
+            fileIndex = null;
+            parseFilter = null;
+            javaBatcher = null;
+            if (heapPressureMetrics != null) {
+                heapPressureMetrics.close();
+                heapPressureMetrics = null;
+            }
+            if (meterRegistry != null) {
+                meterRegistry.close();
+                meterRegistry = null;
+            }
+        }
         GradleProjectBuilder.clearCaches();
     }
 
-    private UnaryOperator<SourceFile> applyAutodetected(
+    private static UnaryOperator<SourceFile> applyAutodetected(
             Map<Class<? extends SourceFile>, NamedStyles> stylesByType) {
         return before -> {
             for (Map.Entry<Class<? extends SourceFile>, NamedStyles> styleTypeEntry : stylesByType.entrySet()) {
@@ -1434,32 +1612,11 @@ public class DefaultProjectParser implements GradleProjectParser {
 
 
     protected void logRecipesThatMadeChanges(Result result) {
-        String indent = "    ";
-        String prefix = "    ";
-        for (RecipeDescriptor recipeDescriptor : result.getRecipeDescriptorsThatMadeChanges()) {
-            logRecipe(recipeDescriptor, prefix);
-            prefix = prefix + indent;
-        }
+        logRecipesThatMadeChanges(result.getRecipeDescriptorsThatMadeChanges());
     }
 
-    private void logRecipe(RecipeDescriptor rd, String prefix) {
-        StringBuilder recipeString = new StringBuilder(prefix + rd.getName());
-        if (!rd.getOptions().isEmpty()) {
-            String opts = rd.getOptions().stream().map(option -> {
-                        if (option.getValue() != null) {
-                            return option.getName() + "=" + option.getValue();
-                        }
-                        return null;
-                    }
-            ).filter(Objects::nonNull).collect(joining(", "));
-            if (!opts.isEmpty()) {
-                recipeString.append(": {").append(opts).append("}");
-            }
-        }
-        logger.warn("{}", recipeString);
-        for (RecipeDescriptor rChild : rd.getRecipeList()) {
-            logRecipe(rChild, prefix + "    ");
-        }
+    protected void logRecipesThatMadeChanges(List<RecipeDescriptor> recipeDescriptors) {
+        ResultsApplier.logRecipesThatMadeChanges(recipeDescriptors);
     }
 
     private List<SourceSet> findGradleSourceSets(Project project) {
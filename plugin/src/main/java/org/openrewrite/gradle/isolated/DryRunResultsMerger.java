@@ -0,0 +1,101 @@
+/*
+ * Licensed under the Moderne Source Available License.
+ * See https://docs.moderne.io/licensing/moderne-source-available-license
+ */
+package org.openrewrite.gradle.isolated;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.gradle.api.logging.Logger;
+import org.gradle.api.logging.Logging;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+
+/**
+ * Merges the reports and summaries of the shards of a dry run into the report and summary of the dry run as a whole.
+ * Shards are made of different projects, so each file shows up in the report of at most one of them, and the reports
+ * are put one after the other.
+ */
+public class DryRunResultsMerger implements Runnable {
+    private static final Logger logger = Logging.getLogger(DryRunResultsMerger.class);
+
+    private static final List<String> PATH_LISTS = Arrays.asList("generated", "deleted", "moved", "changed");
+
+    private final List<Path> shardReportPaths;
+    private final Path reportPath;
+
+    /**
+     * @param shardReportPaths Where each shard's report would be, in the order of the shards. A shard without changes
+     *                         has no report, but it always has a summary next to where its report would be.
+     * @param reportPath       Where to write the merged report, next to which the merged summary goes.
+     */
+    public DryRunResultsMerger(List<Path> shardReportPaths, Path reportPath) {
+        this.shardReportPaths = shardReportPaths;
+        this.reportPath = reportPath;
+    }
+
+    @Override
+    public void run() {
+        ObjectMapper mapper = new ObjectMapper();
+        long estimatedTimeSavedSeconds = 0;
+        Map<String, Integer> recipes = new TreeMap<>();
+        Map<String, List<Object>> paths = new LinkedHashMap<>();
+        for (String pathList : PATH_LISTS) {
+            paths.put(pathList, new ArrayList<>());
+        }
+
+        int reports = 0;
+        try {
+            Files.deleteIfExists(reportPath);
+            for (Path shardReportPath : shardReportPaths) {
+                Path shardSummaryPath = ResultsApplier.summaryPath(shardReportPath);
+                if (!Files.exists(shardSummaryPath)) {
+                    throw new IllegalStateException("The summary " + shardSummaryPath + " is missing, so its shard " +
+                                                    "either didn't run or didn't finish");
+                }
+                Map<String, Object> summary = mapper.readValue(shardSummaryPath.toFile(),
+                        new TypeReference<Map<String, Object>>() {
+                        });
+                estimatedTimeSavedSeconds += ((Number) summary.getOrDefault("estimatedTimeSavedSeconds", 0)).longValue();
+                //noinspection unchecked
+                ((Map<String, Number>) summary.getOrDefault("recipes", Collections.emptyMap()))
+                        .forEach((recipe, count) -> recipes.merge(recipe, count.intValue(), Integer::sum));
+                for (String pathList : PATH_LISTS) {
+                    //noinspection unchecked
+                    paths.get(pathList).addAll((List<Object>) summary.getOrDefault(pathList, Collections.emptyList()));
+                }
+
+                if (Files.exists(shardReportPath)) {
+                    Files.createDirectories(reportPath.getParent());
+                    try (OutputStream out = Files.newOutputStream(reportPath, StandardOpenOption.CREATE,
+                            StandardOpenOption.APPEND)) {
+                        Files.copy(shardReportPath, out);
+                    }
+                    reports++;
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to merge the results of " + shardReportPaths.size() + " shards", e);
+        }
+
+        Map<String, Object> summary = new LinkedHashMap<>();
+        summary.put("estimatedTimeSavedSeconds", estimatedTimeSavedSeconds);
+        summary.put("recipes", recipes);
+        summary.putAll(paths);
+        ResultsApplier.writeSummary(ResultsApplier.summaryPath(reportPath), summary);
+
+        if (reports == 0) {
+            logger.lifecycle("Applying recipes would make no changes in any of {} shards. No report generated.",
+                    shardReportPaths.size());
+        } else {
+            logger.warn("Merged the reports of {} of {} shards:", reports, shardReportPaths.size());
+            logger.warn("    {}", reportPath.normalize());
+        }
+    }
+}
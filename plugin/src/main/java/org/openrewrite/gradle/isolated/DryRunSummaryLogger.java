@@ -0,0 +1,88 @@
+/*
+ * Licensed under the Moderne Source Available License.
+ * See https://docs.moderne.io/licensing/moderne-source-available-license
+ */
+package org.openrewrite.gradle.isolated;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.gradle.api.logging.Logger;
+import org.gradle.api.logging.Logging;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Logs the results of a dry run that was taken from the build cache, which doesn't run and so logs nothing itself.
+ * They are read from the summary that was restored along with the report. The summary doesn't say which recipes changed
+ * which file, so the recipes are listed once for all files, with the number of files each of them changed.
+ */
+public class DryRunSummaryLogger implements Runnable {
+    private static final Logger logger = Logging.getLogger(DryRunSummaryLogger.class);
+
+    private final Path reportPath;
+
+    /**
+     * @param reportPath Where the report of the dry run is, next to which its summary is.
+     */
+    public DryRunSummaryLogger(Path reportPath) {
+        this.reportPath = reportPath;
+    }
+
+    @Override
+    public void run() {
+        Path summaryPath = ResultsApplier.summaryPath(reportPath);
+        if (!Files.exists(summaryPath)) {
+            logger.warn("The dry run was taken from the build cache without its summary {}, so its results can't be shown",
+                    summaryPath);
+            return;
+        }
+        Map<String, Object> summary;
+        try {
+            summary = new ObjectMapper().readValue(summaryPath.toFile(), new TypeReference<Map<String, Object>>() {
+            });
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to read rewrite summary " + summaryPath, e);
+        }
+
+        //noinspection unchecked
+        Map<String, Number> recipes = (Map<String, Number>) summary.getOrDefault("recipes", Collections.emptyMap());
+        if (recipes.isEmpty()) {
+            logger.lifecycle("Applying recipes would make no changes. No report generated.");
+            return;
+        }
+
+        logger.warn("The results of the dry run were taken from the build cache.");
+        for (Object path : list(summary, "generated")) {
+            logger.warn("Recipes would generate new file {}", path);
+        }
+        for (Object path : list(summary, "deleted")) {
+            logger.warn("Recipes would delete file {}", path);
+        }
+        for (Object move : list(summary, "moved")) {
+            Map<?, ?> paths = (Map<?, ?>) move;
+            logger.warn("Recipes would move file from {} to {}", paths.get("from"), paths.get("to"));
+        }
+        for (Object path : list(summary, "changed")) {
+            logger.warn("Recipes would make changes to {}", path);
+        }
+        logger.warn("These recipes would make changes:");
+        recipes.forEach((recipe, files) -> logger.warn("    {} ({} files)", recipe, files));
+
+        logger.warn("Report available:");
+        logger.warn("    {}", reportPath.normalize());
+        Number seconds = (Number) summary.getOrDefault("estimatedTimeSavedSeconds", 0);
+        logger.warn("Estimate time saved: {}", ResultsApplier.formatDuration(Duration.ofSeconds(seconds.longValue())));
+        logger.warn("Run 'gradle rewriteRun' to apply the recipes.");
+    }
+
+    private static List<?> list(Map<String, Object> summary, String key) {
+        return (List<?>) summary.getOrDefault(key, Collections.emptyList());
+    }
+}
@@ -0,0 +1,74 @@
+/*
+ * Licensed under the Moderne Source Available License.
+ * See https://docs.moderne.io/licensing/moderne-source-available-license
+ */
+package org.openrewrite.gradle.isolated;
+
+import java.io.File;
+import java.nio.file.FileSystem;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Matches paths against a set of exclusion globs, each compiled once by {@link FileSystem#getPathMatcher(String)}.
+ * <p>
+ * Whether a directory is excluded is remembered, since directories are asked about once for every file beneath them
+ * and the repository walk prunes excluded directories instead of listing them.
+ */
+class ExclusionMatcher implements PathMatcher {
+    private final List<PathMatcher> matchers;
+    private final Map<Path, Boolean> excludedDirectories = new ConcurrentHashMap<>();
+
+    ExclusionMatcher(Collection<String> globs) {
+        FileSystem fileSystem = FileSystems.getDefault();
+        this.matchers = new ArrayList<>(globs.size());
+        for (String glob : globs) {
+            matchers.add(fileSystem.getPathMatcher("glob:" + glob));
+        }
+    }
+
+    /**
+     * Match the path as given, exactly like a {@link PathMatcher} for any one of the globs would.
+     */
+    @Override
+    public boolean matches(Path path) {
+        for (PathMatcher matcher : matchers) {
+            if (matcher.matches(path)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Like {@link #matches(Path)}, except that a relative path is also tried as if it were rooted.
+     */
+    boolean isExcluded(Path path) {
+        if (matchers.isEmpty()) {
+            return false;
+        }
+        if (matches(path)) {
+            return true;
+        }
+        // PathMather will not evaluate the path "build.gradle" to be matched by the pattern "**/build.gradle"
+        // This is counter-intuitive for most users and would otherwise require separate exclusions for files at the root and files in subdirectories
+        return !path.isAbsolute() && !path.startsWith(File.separator) && matches(Paths.get("/" + path));
+    }
+
+    /**
+     * {@link #isExcluded(Path)} for a directory, remembering the verdict.
+     */
+    boolean isExcludedDirectory(Path dir) {
+        if (matchers.isEmpty()) {
+            return false;
+        }
+        return excludedDirectories.computeIfAbsent(dir, this::isExcluded);
+    }
+}
@@ -0,0 +1,106 @@
+/*
+ * Licensed under the Moderne Source Available License.
+ * See https://docs.moderne.io/licensing/moderne-source-available-license
+ */
+package org.openrewrite.gradle.isolated;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.jvm.JvmHeapPressureMetrics;
+import org.openrewrite.ExecutionContext;
+import org.openrewrite.SourceFile;
+import org.openrewrite.java.JavaParser;
+
+import java.nio.file.Path;
+import java.util.*;
+import java.util.function.ToLongFunction;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Splits the sources of a source set into batches which are handed to the same {@link JavaParser} one after another,
+ * resetting the parser in between. Without this, javac holds the trees and symbols of every source in the source set
+ * until the last one has been attributed.
+ * <p>
+ * Each batch is sized when it is about to be parsed, from how much of the heap was still free after the most recent
+ * collection of the long-lived pool as reported by {@link JvmHeapPressureMetrics}. Types are still only attributed
+ * once, as every batch shares the parser's type cache.
+ */
+class HeapAwareBatcher {
+    /**
+     * An estimate of the heap needed to parse and attribute one byte of source, not a measurement. javac keeps the
+     * whole file as chars, then its tokens, trees and symbols, and the LST made from those keeps every name, literal
+     * and bit of whitespace once more, so the total is a large multiple of the file's size. The estimate errs high,
+     * which costs a few more batches than needed, rather than low, which lets a batch run out of heap.
+     */
+    static final long HEAP_BYTES_PER_SOURCE_BYTE = 40;
+
+    /**
+     * Below this, the cost of loading the classpath's symbols again for every batch outweighs the memory saved.
+     */
+    static final int MIN_BATCH_FILES = 100;
+
+    private final MeterRegistry meterRegistry;
+    private final ToLongFunction<Path> fileSize;
+
+    /**
+     * @param meterRegistry A registry to which {@link JvmHeapPressureMetrics} are bound.
+     * @param fileSize      The size in bytes of a source file.
+     */
+    HeapAwareBatcher(MeterRegistry meterRegistry, ToLongFunction<Path> fileSize) {
+        this.meterRegistry = meterRegistry;
+        this.fileSize = fileSize;
+    }
+
+    Stream<SourceFile> parse(JavaParser parser, List<Path> paths, Path relativeTo, ExecutionContext ctx) {
+        Iterator<List<Path>> batches = new Iterator<List<Path>>() {
+            int next;
+
+            @Override
+            public boolean hasNext() {
+                return next < paths.size();
+            }
+
+            @Override
+            public List<Path> next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                int from = next;
+                next = batchEnd(paths, from);
+                return paths.subList(from, next);
+            }
+        };
+        // Each batch is closed, and with that the parser reset, once its source files have been consumed
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(batches, Spliterator.ORDERED), false)
+                .flatMap(batch -> parser.parse(batch, relativeTo, ctx).onClose(parser::reset));
+    }
+
+    int batchEnd(List<Path> paths, int from) {
+        long budget = headroom() / HEAP_BYTES_PER_SOURCE_BYTE;
+        int end = from;
+        while (end < paths.size() && (end - from < MIN_BATCH_FILES || budget > 0)) {
+            budget -= fileSize.applyAsLong(paths.get(end++));
+        }
+        return end;
+    }
+
+    /**
+     * @return The number of bytes of heap which are expected to be free for parsing the next batch.
+     */
+    private long headroom() {
+        Runtime runtime = Runtime.getRuntime();
+        double usage = Double.NaN;
+        Gauge usageAfterGc = meterRegistry.find("jvm.memory.usage.after.gc")
+                .tag("pool", "long-lived")
+                .gauge();
+        if (usageAfterGc != null) {
+            usage = usageAfterGc.value();
+        }
+        if (Double.isNaN(usage) || usage <= 0) {
+            // Until the long-lived pool has been collected at least once, count everything on the heap as live
+            usage = (double) (runtime.totalMemory() - runtime.freeMemory()) / runtime.maxMemory();
+        }
+        return (long) (Math.max(0, 1 - usage) * runtime.maxMemory());
+    }
+}
@@ -0,0 +1,340 @@
+/*
+ * Licensed under the Moderne Source Available License.
+ * See https://docs.moderne.io/licensing/moderne-source-available-license
+ */
+package org.openrewrite.gradle.isolated;
+
+import com.fasterxml.jackson.annotation.JsonAutoDetect;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import org.gradle.api.logging.Logger;
+import org.gradle.api.logging.Logging;
+import org.jspecify.annotations.Nullable;
+import org.openrewrite.ParseExceptionResult;
+import org.openrewrite.SourceFile;
+import org.openrewrite.Tree;
+import org.openrewrite.groovy.GroovyIsoVisitor;
+import org.openrewrite.groovy.tree.G;
+import org.openrewrite.java.JavaIsoVisitor;
+import org.openrewrite.java.JavaVisitor;
+import org.openrewrite.java.internal.DefaultJavaTypeSignatureBuilder;
+import org.openrewrite.java.internal.JavaTypeCache;
+import org.openrewrite.java.tree.J;
+import org.openrewrite.java.tree.JavaType;
+import org.openrewrite.kotlin.KotlinIsoVisitor;
+import org.openrewrite.kotlin.tree.K;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * An on-disk cache of parsed source files. Entries are keyed by the content of a source file together with a
+ * fingerprint of everything else that influences how it is parsed, like the classpath, the Java version and the
+ * charset. Source files that haven't changed since a previous build are deserialized instead of being parsed again.
+ * <p>
+ * Every entry is serialized together with the types it refers to. When read back, those types are interned through
+ * the type cache of the source set, so that source files loaded from the cache share their types with each other and
+ * with the source files that are parsed, just like source files that are parsed together do.
+ * <p>
+ * The cache is strictly best-effort. An entry that can't be read for any reason is treated as a miss and replaced.
+ */
+class LstCache {
+    private static final Logger logger = Logging.getLogger(LstCache.class);
+
+    private final Path baseDir;
+    private final Path cacheDir;
+    private final String rewriteVersion;
+    private final ObjectMapper mapper;
+
+    /**
+     * The digest of each class directory that has been fingerprinted, by directory. A cache lives for one parse, during
+     * which class directories don't change, so every source set and language that has the same class directory on its
+     * classpath reads it only once.
+     */
+    private final Map<Path, byte[]> classDirectoryDigests = new ConcurrentHashMap<>();
+
+    LstCache(Path baseDir, Path cacheDir, String rewriteVersion) {
+        this.baseDir = baseDir;
+        this.cacheDir = cacheDir;
+        this.rewriteVersion = rewriteVersion;
+        this.mapper = objectMapper();
+    }
+
+    /**
+     * @return A mapper that serializes source files field by field, so that they are deserialized exactly as they were.
+     */
+    static ObjectMapper objectMapper() {
+        ObjectMapper mapper = new ObjectMapper()
+                .disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES)
+                .disable(SerializationFeature.FAIL_ON_EMPTY_BEANS)
+                .setSerializationInclusion(JsonInclude.Include.NON_NULL);
+        mapper.setVisibility(mapper.getSerializationConfig().getDefaultVisibilityChecker()
+                .withFieldVisibility(JsonAutoDetect.Visibility.ANY)
+                .withGetterVisibility(JsonAutoDetect.Visibility.NONE)
+                .withIsGetterVisibility(JsonAutoDetect.Visibility.NONE)
+                .withSetterVisibility(JsonAutoDetect.Visibility.NONE)
+                .withCreatorVisibility(JsonAutoDetect.Visibility.ANY));
+        return mapper;
+    }
+
+    /**
+     * Fingerprint the inputs, other than the source file itself, that determine the LST produced by a parser.
+     * Jars are identified by their path, size and modification time so that a jar that is rebuilt in place
+     * invalidates the entries that were attributed against it. Class directories are identified by the files they
+     * contain, so that a change anywhere inside one does the same. Each class directory is read once per cache.
+     */
+    String fingerprint(Collection<Path> classpath, @Nullable Object... settings) {
+        MessageDigest digest = sha256();
+        update(digest, rewriteVersion);
+        update(digest, System.getProperty("java.specification.version"));
+        for (Object setting : settings) {
+            update(digest, String.valueOf(setting));
+        }
+        List<Path> sortedClasspath = new ArrayList<>(classpath);
+        Collections.sort(sortedClasspath);
+        for (Path entry : sortedClasspath) {
+            if (Files.isDirectory(entry)) {
+                digest.update(classDirectoryDigests.computeIfAbsent(entry, dir -> {
+                    MessageDigest dirDigest = sha256();
+                    updateWithContents(dirDigest, dir);
+                    return dirDigest.digest();
+                }));
+            } else {
+                File file = entry.toFile();
+                update(digest, entry + ":" + file.length() + ":" + file.lastModified());
+            }
+        }
+        return hex(digest.digest());
+    }
+
+    /**
+     * Update the digest with the relative path and the bytes of every file in a directory, in a stable order.
+     */
+    static void updateWithContents(MessageDigest digest, Path dir) {
+        update(digest, dir.toString());
+        try (Stream<Path> files = Files.walk(dir)) {
+            Iterator<Path> sortedFiles = files.filter(Files::isRegularFile).sorted().iterator();
+            while (sortedFiles.hasNext()) {
+                Path file = sortedFiles.next();
+                update(digest, dir.relativize(file).toString());
+                digest.update(Files.readAllBytes(file));
+            }
+        } catch (IOException | UncheckedIOException e) {
+            // A directory that can't be read never matches a previous fingerprint
+            update(digest, UUID.randomUUID().toString());
+        }
+    }
+
+    /**
+     * Load the source files at the given paths from the cache where possible, handing the remaining paths to the
+     * parser. Whatever the parser produces is written to the cache, unless it failed to parse.
+     * <p>
+     * Source files are returned in the order of the given paths, whichever of them were found in the cache.
+     *
+     * @param typeCache The type cache the parser attributes types with, to intern the types of cached source files
+     *                  through, or {@code null} for source files without types.
+     */
+    Stream<SourceFile> parse(List<Path> paths, String fingerprint, @Nullable JavaTypeCache typeCache,
+                             Function<List<Path>, Stream<SourceFile>> parser) {
+        Map<Path, SourceFile> hits = new HashMap<>();
+        List<Path> misses = new ArrayList<>();
+        Map<Path, String> missKeys = new HashMap<>();
+        for (Path path : paths) {
+            Path relativePath = baseDir.relativize(path);
+            String key = key(path, relativePath, fingerprint);
+            SourceFile cached = key == null ? null : load(key, relativePath, typeCache);
+            if (cached == null) {
+                misses.add(path);
+                if (key != null) {
+                    missKeys.put(relativePath, key);
+                }
+            } else {
+                hits.put(path, cached);
+            }
+        }
+        logger.debug("Loaded {} of {} source files from the LST cache", hits.size(), paths.size());
+        if (misses.isEmpty()) {
+            return paths.stream().map(hits::remove);
+        }
+
+        Iterator<SourceFile> parsed = parser.apply(misses).peek(sourceFile -> {
+            String key = missKeys.get(sourceFile.getSourcePath());
+            if (key != null && !sourceFile.getMarkers().findFirst(ParseExceptionResult.class).isPresent()) {
+                store(key, sourceFile);
+            }
+        }).iterator();
+        // Parsers produce source files in the order of their inputs. They are still matched up by path, holding on to
+        // any that come early, so that a parser which skips or reorders inputs doesn't misplace the others.
+        Map<Path, SourceFile> parsedAhead = new LinkedHashMap<>();
+        return Stream.concat(
+                paths.stream()
+                        .map(path -> {
+                            SourceFile hit = hits.remove(path);
+                            return hit != null ? hit : nextParsed(baseDir.relativize(path), parsed, parsedAhead);
+                        })
+                        .filter(Objects::nonNull),
+                // Anything the parser produced for a path it wasn't given
+                Stream.of(parsedAhead).flatMap(ahead -> Stream.concat(
+                        new ArrayList<>(ahead.values()).stream(),
+                        StreamSupport.stream(Spliterators.spliteratorUnknownSize(parsed, Spliterator.ORDERED), false))));
+    }
+
+    private static @Nullable SourceFile nextParsed(Path relativePath, Iterator<SourceFile> parsed,
+                                                   Map<Path, SourceFile> parsedAhead) {
+        SourceFile ahead = parsedAhead.remove(relativePath);
+        if (ahead != null) {
+            return ahead;
+        }
+        while (parsed.hasNext()) {
+            SourceFile next = parsed.next();
+            if (relativePath.equals(next.getSourcePath())) {
+                return next;
+            }
+            parsedAhead.put(next.getSourcePath(), next);
+        }
+        return null;
+    }
+
+    private @Nullable String key(Path path, Path relativePath, String fingerprint) {
+        try {
+            MessageDigest digest = sha256();
+            update(digest, fingerprint);
+            update(digest, relativePath.toString());
+            update(digest, Boolean.toString(Files.isExecutable(path)));
+            digest.update(Files.readAllBytes(path));
+            return hex(digest.digest());
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private Path entry(String key) {
+        return cacheDir.resolve(key.substring(0, 2)).resolve(key + ".json.gz");
+    }
+
+    private @Nullable SourceFile load(String key, Path relativePath, @Nullable JavaTypeCache typeCache) {
+        Path entry = entry(key);
+        if (!Files.exists(entry)) {
+            return null;
+        }
+        try (InputStream in = new GZIPInputStream(new BufferedInputStream(Files.newInputStream(entry)))) {
+            SourceFile sourceFile = mapper.readValue(in, SourceFile.class);
+            if (sourceFile != null && relativePath.equals(sourceFile.getSourcePath())) {
+                return typeCache == null ? sourceFile : internTypes(sourceFile, typeCache);
+            }
+        } catch (Exception e) {
+            logger.debug("Discarding unreadable LST cache entry {}", entry, e);
+        }
+        try {
+            Files.deleteIfExists(entry);
+        } catch (IOException ignored) {
+        }
+        return null;
+    }
+
+    private void store(String key, SourceFile sourceFile) {
+        Path entry = entry(key);
+        Path temp = null;
+        try {
+            Files.createDirectories(entry.getParent());
+            // Source sets may be parsed concurrently, so write somewhere private first and then move into place
+            temp = Files.createTempFile(entry.getParent(), key, ".tmp");
+            try (OutputStream out = new GZIPOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+                mapper.writeValue(out, sourceFile);
+            }
+            Files.move(temp, entry, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (Exception e) {
+            logger.debug("Unable to write LST cache entry for {}", sourceFile.getSourcePath(), e);
+            if (temp != null) {
+                try {
+                    Files.deleteIfExists(temp);
+                } catch (IOException ignored) {
+                }
+            }
+        }
+    }
+
+    /**
+     * Replace each type in the source file with the equal type already in the type cache, or add it to the cache if
+     * there is none yet.
+     */
+    static SourceFile internTypes(SourceFile sourceFile, JavaTypeCache typeCache) {
+        JavaVisitor<Integer> interner;
+        if (sourceFile instanceof K.CompilationUnit) {
+            interner = new KotlinIsoVisitor<Integer>() {
+                @Override
+                public @Nullable JavaType visitType(@Nullable JavaType javaType, Integer p) {
+                    return intern(javaType, typeCache);
+                }
+            };
+        } else if (sourceFile instanceof G.CompilationUnit) {
+            interner = new GroovyIsoVisitor<Integer>() {
+                @Override
+                public @Nullable JavaType visitType(@Nullable JavaType javaType, Integer p) {
+                    return intern(javaType, typeCache);
+                }
+            };
+        } else if (sourceFile instanceof J.CompilationUnit) {
+            interner = new JavaIsoVisitor<Integer>() {
+                @Override
+                public @Nullable JavaType visitType(@Nullable JavaType javaType, Integer p) {
+                    return intern(javaType, typeCache);
+                }
+            };
+        } else {
+            return sourceFile;
+        }
+        Tree interned = interner.visit(sourceFile, 0);
+        return interned instanceof SourceFile ? (SourceFile) interned : sourceFile;
+    }
+
+    private static @Nullable JavaType intern(@Nullable JavaType javaType, JavaTypeCache typeCache) {
+        if (javaType == null || javaType instanceof JavaType.Unknown) {
+            return javaType;
+        }
+        String signature = new DefaultJavaTypeSignatureBuilder().signature(javaType);
+        Object existing = typeCache.get(signature);
+        if (existing != null && existing.getClass() == javaType.getClass()) {
+            return (JavaType) existing;
+        }
+        if (existing == null) {
+            typeCache.put(signature, javaType);
+        }
+        return javaType;
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void update(MessageDigest digest, String value) {
+        digest.update(value.getBytes(StandardCharsets.UTF_8));
+        digest.update((byte) 0);
+    }
+
+    private static String hex(byte[] bytes) {
+        StringBuilder sb = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            sb.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return sb.toString();
+    }
+}
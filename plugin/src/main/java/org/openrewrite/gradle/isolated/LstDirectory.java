@@ -0,0 +1,93 @@
+/*
+ * Licensed under the Moderne Source Available License.
+ * See https://docs.moderne.io/licensing/moderne-source-available-license
+ */
+package org.openrewrite.gradle.isolated;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openrewrite.SourceFile;
+import org.openrewrite.java.internal.JavaTypeCache;
+import org.openrewrite.java.marker.JavaSourceSet;
+import org.openrewrite.marker.Marker;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import static java.util.stream.Collectors.toList;
+
+/**
+ * A directory of serialized source files, which hands them from the process that parses them to the process that
+ * runs recipes against them. Each source file is written as soon as it has been parsed, so neither process holds on
+ * to more of them than it has to.
+ */
+class LstDirectory {
+    private static final String SUFFIX = ".json.gz";
+
+    /**
+     * Stands in for the source set of source files which aren't in one, like build scripts.
+     */
+    private static final UUID NO_SOURCE_SET = new UUID(0, 0);
+
+    private final Path dir;
+    private final ObjectMapper mapper = LstCache.objectMapper();
+
+    LstDirectory(Path dir) {
+        this.dir = dir;
+    }
+
+    /**
+     * @return The number of source files written.
+     */
+    int write(Stream<SourceFile> sourceFiles) {
+        try {
+            Files.createDirectories(dir);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        int count = 0;
+        for (Iterator<SourceFile> it = sourceFiles.iterator(); it.hasNext(); count++) {
+            SourceFile sourceFile = it.next();
+            // Numbered so that the source files are read back in the order they were parsed in
+            Path file = dir.resolve(String.format("%08d", count) + SUFFIX);
+            try (OutputStream out = new GZIPOutputStream(new BufferedOutputStream(Files.newOutputStream(file)))) {
+                mapper.writeValue(out, sourceFile);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Unable to write " + sourceFile.getSourcePath(), e);
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Read the source files back lazily, in the order they were written in. Each source file is deserialized with
+     * types of its own, so the types of every source file are interned into a type cache shared by the source files of
+     * the same source set as it is read, which keeps a single copy of each type like parsing does.
+     */
+    Stream<SourceFile> read() {
+        List<Path> files;
+        try (Stream<Path> list = Files.list(dir)) {
+            files = list.filter(file -> file.getFileName().toString().endsWith(SUFFIX)).sorted().collect(toList());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        Map<UUID, JavaTypeCache> typeCaches = new ConcurrentHashMap<>();
+        return files.stream().map(file -> {
+            SourceFile sourceFile;
+            try (InputStream in = new GZIPInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+                sourceFile = mapper.readValue(in, SourceFile.class);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Unable to read " + file, e);
+            }
+            UUID sourceSet = sourceFile.getMarkers().findFirst(JavaSourceSet.class)
+                    .map(Marker::getId)
+                    .orElse(NO_SOURCE_SET);
+            return LstCache.internTypes(sourceFile, typeCaches.computeIfAbsent(sourceSet, id -> new JavaTypeCache()));
+        });
+    }
+}
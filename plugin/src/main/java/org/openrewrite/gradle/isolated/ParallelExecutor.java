@@ -0,0 +1,126 @@
+/*
+ * Licensed under the Moderne Source Available License.
+ * See https://docs.moderne.io/licensing/moderne-source-available-license
+ */
+package org.openrewrite.gradle.isolated;
+
+import org.jspecify.annotations.Nullable;
+import org.openrewrite.ExecutionContext;
+import org.openrewrite.InMemoryExecutionContext;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+import static java.util.stream.Collectors.toList;
+
+/**
+ * Runs independent units of work, such as parsing a source set, on a bounded fork-join pool. Results are always
+ * handed back in the order in which the units were submitted, so the resulting stream of source files is the same no
+ * matter how many threads are used.
+ * <p>
+ * With a parallelism of 1 no pool is created and each unit is evaluated lazily on the thread consuming its results,
+ * exactly as if it had never been submitted.
+ */
+class ParallelExecutor implements AutoCloseable {
+    @Nullable
+    private final ForkJoinPool pool;
+
+    ParallelExecutor(int parallelism) {
+        if (parallelism > 1) {
+            ClassLoader rewriteClassLoader = ParallelExecutor.class.getClassLoader();
+            this.pool = new ForkJoinPool(parallelism, p -> {
+                ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(p);
+                thread.setName("rewrite-worker-" + thread.getPoolIndex());
+                // Compilers embedded in the parsers look up some of their classes through the context class loader
+                thread.setContextClassLoader(rewriteClassLoader);
+                return thread;
+            }, null, false);
+        } else {
+            this.pool = null;
+        }
+    }
+
+    boolean isParallel() {
+        return pool != null;
+    }
+
+    /**
+     * Schedule a unit of work, returning a stream over its results. When running in parallel the unit begins
+     * executing immediately and consuming the returned stream blocks until it has completed.
+     */
+    <T> Stream<T> submit(Supplier<Stream<T>> unit) {
+        if (pool == null) {
+            return Stream.of(unit).flatMap(Supplier::get);
+        }
+        ForkJoinTask<List<T>> task = pool.submit(() -> {
+            try (Stream<T> results = unit.get()) {
+                return results.collect(toList());
+            }
+        });
+        return Stream.of(task).flatMap(t -> t.join().stream());
+    }
+
+    /**
+     * Apply the mapper to each element concurrently, handing the results to the consumer one at a time and in the
+     * order of the elements. Only a small window of results ahead of the consumer is computed and held at any time.
+     */
+    <T, R> void mapOrdered(Stream<T> elements, Function<T, R> mapper, Consumer<R> consumer) {
+        if (pool == null) {
+            elements.map(mapper).forEachOrdered(consumer);
+            return;
+        }
+        int window = pool.getParallelism() * 2;
+        Deque<ForkJoinTask<R>> pending = new ArrayDeque<>(window);
+        Iterator<T> it = elements.iterator();
+        while (it.hasNext()) {
+            T element = it.next();
+            pending.add(pool.submit(() -> mapper.apply(element)));
+            if (pending.size() >= window) {
+                consumer.accept(pending.remove().join());
+            }
+        }
+        while (!pending.isEmpty()) {
+            consumer.accept(pending.remove().join());
+        }
+    }
+
+    /**
+     * Parsers communicate settings like the source charset through the execution context. Units running concurrently
+     * each need a context of their own so that those settings don't leak between them.
+     * <p>
+     * The fork starts out with every message of the given context, the parsing listener included. Message values are
+     * shared rather than copied, but messages put on the fork afterward are not seen by the given context.
+     */
+    ExecutionContext fork(ExecutionContext ctx) {
+        if (pool == null) {
+            return ctx;
+        }
+        ExecutionContext forked = new InMemoryExecutionContext(ctx.getOnError());
+        for (Map.Entry<String, @Nullable Object> message : ctx.getMessages().entrySet()) {
+            if (message.getValue() != null) {
+                forked.putMessage(message.getKey(), message.getValue());
+            }
+        }
+        return forked;
+    }
+
+    /**
+     * Work which has already been submitted continues to run to completion.
+     */
+    @Override
+    public void close() {
+        if (pool != null) {
+            pool.shutdown();
+        }
+    }
+}
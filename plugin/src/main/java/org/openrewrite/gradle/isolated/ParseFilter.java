@@ -0,0 +1,56 @@
+/*
+ * Licensed under the Moderne Source Available License.
+ * See https://docs.moderne.io/licensing/moderne-source-available-license
+ */
+package org.openrewrite.gradle.isolated;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Drops source paths that are excluded or that live in a build directory before they are handed to a parser, rather
+ * than parsing and type-attributing them in full only to throw the result away. Skipped files are tallied so that
+ * they can be reported once all parsing has been scheduled.
+ */
+class ParseFilter {
+    private final Path baseDir;
+    private final RepositoryFileIndex fileIndex;
+    private final AtomicInteger skippedFiles = new AtomicInteger();
+    private final AtomicLong skippedBytes = new AtomicLong();
+
+    ParseFilter(Path baseDir, RepositoryFileIndex fileIndex) {
+        this.baseDir = baseDir;
+        this.fileIndex = fileIndex;
+    }
+
+    /**
+     * @param paths      Absolute paths of the sources to parse.
+     * @param exclusions Exclusions, matched against paths relative to the repository root.
+     * @param buildDir   The project's build directory, relative to the repository root.
+     * @return The paths which should be parsed.
+     */
+    List<Path> filter(List<Path> paths, ExclusionMatcher exclusions, Path buildDir) {
+        List<Path> accepted = new ArrayList<>(paths.size());
+        for (Path path : paths) {
+            Path relativePath = baseDir.relativize(path);
+            if (exclusions.isExcluded(relativePath) || relativePath.startsWith(buildDir)) {
+                skippedFiles.incrementAndGet();
+                skippedBytes.addAndGet(fileIndex.size(path));
+            } else {
+                accepted.add(path);
+            }
+        }
+        return accepted;
+    }
+
+    int getSkippedFiles() {
+        return skippedFiles.get();
+    }
+
+    long getSkippedBytes() {
+        return skippedBytes.get();
+    }
+}
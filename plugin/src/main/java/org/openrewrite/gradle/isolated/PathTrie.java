@@ -0,0 +1,204 @@
+/*
+ * Licensed under the Moderne Source Available License.
+ * See https://docs.moderne.io/licensing/moderne-source-available-license
+ */
+package org.openrewrite.gradle.isolated;
+
+import org.jspecify.annotations.Nullable;
+
+import java.io.File;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The set of paths that have already been claimed for parsing, stored as a trie of path segments so that the many
+ * paths sharing a common prefix share its storage, and so that claimed directories can be looked up by prefix.
+ * <p>
+ * Files and directories are claimed separately. As a {@link Set}, the trie contains exactly the paths that were
+ * claimed, files and directories alike, which is what {@link org.openrewrite.polyglot.OmniParser} expects of its
+ * exclusions. {@link #isClaimed(Path)} additionally considers a path claimed when any directory above it is.
+ * <p>
+ * Claims may be made while other threads are looking paths up.
+ */
+class PathTrie extends AbstractSet<Path> {
+    private static final boolean CASE_INSENSITIVE = File.separatorChar == '\\';
+
+    private final Node root = new Node("");
+    private final AtomicInteger size = new AtomicInteger();
+
+    /**
+     * Paths claimed here are also added to this set, for callers who passed in a set of their own.
+     */
+    @Nullable
+    private final Set<Path> mirror;
+
+    PathTrie() {
+        this.mirror = null;
+    }
+
+    private PathTrie(Set<Path> mirror) {
+        this.mirror = mirror;
+        for (Path path : mirror) {
+            claim(path, false);
+        }
+    }
+
+    /**
+     * @return The given set if it is already a trie, otherwise a trie that starts out with its contents and keeps
+     * it up to date with every subsequent claim. The paths of a plain set are claimed as exact paths, even those
+     * which are directories, just as the set itself would only contain them exactly.
+     */
+    static PathTrie of(Set<Path> alreadyParsed) {
+        return alreadyParsed instanceof PathTrie ? (PathTrie) alreadyParsed : new PathTrie(alreadyParsed);
+    }
+
+    /**
+     * Claim a file.
+     */
+    @Override
+    public boolean add(Path path) {
+        if (mirror != null) {
+            mirror.add(path);
+        }
+        return claim(path, false);
+    }
+
+    /**
+     * Claim a directory, and with it everything beneath it as far as {@link #isClaimed(Path)} is concerned.
+     */
+    void claimDirectory(Path dir) {
+        if (mirror != null) {
+            mirror.add(dir);
+        }
+        claim(dir, true);
+    }
+
+    /**
+     * @return Whether this exact path was claimed, either as a file or as a directory.
+     */
+    @Override
+    public boolean contains(Object o) {
+        if (!(o instanceof Path)) {
+            return false;
+        }
+        Path path = (Path) o;
+        Node node = root.child(rootName(path));
+        for (int i = 0; node != null && i < path.getNameCount(); i++) {
+            node = node.child(path.getName(i).toString());
+        }
+        return node != null && (node.file || node.directory);
+    }
+
+    /**
+     * @return Whether this path, or any directory above it, was claimed.
+     */
+    boolean isClaimed(Path path) {
+        Node node = root.child(rootName(path));
+        for (int i = 0; node != null; i++) {
+            if (node.directory) {
+                return true;
+            }
+            if (i == path.getNameCount()) {
+                return node.file;
+            }
+            node = node.child(path.getName(i).toString());
+        }
+        return false;
+    }
+
+    @Override
+    public int size() {
+        return size.get();
+    }
+
+    @Override
+    public Iterator<Path> iterator() {
+        List<Path> paths = new ArrayList<>(size());
+        for (Node rootNode : root.children()) {
+            collect(rootNode, new ArrayList<>(), paths);
+        }
+        return Collections.unmodifiableList(paths).iterator();
+    }
+
+    private boolean claim(Path path, boolean directory) {
+        Node node = root.childOrCreate(rootName(path));
+        for (int i = 0; i < path.getNameCount(); i++) {
+            node = node.childOrCreate(path.getName(i).toString());
+        }
+        boolean added;
+        synchronized (node) {
+            added = !node.file && !node.directory;
+            if (directory) {
+                node.directory = true;
+            } else {
+                node.file = true;
+            }
+        }
+        if (added) {
+            size.incrementAndGet();
+        }
+        return added;
+    }
+
+    private void collect(Node node, List<String> names, List<Path> paths) {
+        names.add(node.name);
+        if (node.file || node.directory) {
+            paths.add(Paths.get(names.get(0), names.subList(1, names.size()).toArray(new String[0])));
+        }
+        for (Node child : node.children()) {
+            collect(child, names, paths);
+        }
+        names.remove(names.size() - 1);
+    }
+
+    private static String rootName(Path path) {
+        Path root = path.getRoot();
+        return root == null ? "" : root.toString();
+    }
+
+    private static String key(String name) {
+        return CASE_INSENSITIVE ? name.toLowerCase(Locale.ROOT) : name;
+    }
+
+    private static class Node {
+        private final String name;
+        private volatile boolean file;
+        private volatile boolean directory;
+
+        /**
+         * Created with the first child, as most nodes are files which never have any.
+         */
+        private volatile @Nullable Map<String, Node> children;
+
+        private Node(String name) {
+            this.name = name;
+        }
+
+        private @Nullable Node child(String name) {
+            Map<String, Node> children = this.children;
+            return children == null ? null : children.get(key(name));
+        }
+
+        private Node childOrCreate(String name) {
+            Map<String, Node> children = this.children;
+            if (children == null) {
+                synchronized (this) {
+                    children = this.children;
+                    if (children == null) {
+                        children = new ConcurrentHashMap<>(4);
+                        this.children = children;
+                    }
+                }
+            }
+            return children.computeIfAbsent(key(name), k -> new Node(name));
+        }
+
+        private Collection<Node> children() {
+            Map<String, Node> children = this.children;
+            return children == null ? Collections.emptyList() : children.values();
+        }
+    }
+}
@@ -0,0 +1,392 @@
+/*
+ * Licensed under the Moderne Source Available License.
+ * See https://docs.moderne.io/licensing/moderne-source-available-license
+ */
+package org.openrewrite.gradle.isolated;
+
+import com.fasterxml.jackson.annotation.JsonAutoDetect;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.gradle.api.logging.Logger;
+import org.gradle.api.logging.Logging;
+import org.jspecify.annotations.Nullable;
+import org.openrewrite.Recipe;
+import org.openrewrite.config.CompositeRecipe;
+import org.openrewrite.config.Environment;
+import org.openrewrite.config.RecipeIntrospectionUtils;
+import org.openrewrite.config.YamlResourceLoader;
+import org.openrewrite.style.NamedStyles;
+
+import java.io.*;
+import java.lang.reflect.Modifier;
+import java.net.URI;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.net.URLConnection;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import static java.util.stream.Collectors.toList;
+
+/**
+ * An index of the recipes and styles on the rewrite classpath, persisted so that it is only built by scanning the
+ * classpath when the classpath changes. Besides the names of everything that is available, it records which YAML
+ * resource declares each declarative recipe and style, and which of the others each of those resources refers to.
+ * <p>
+ * That is enough to activate recipes and styles by loading only the YAML resources they need, along with the classes
+ * of any recipes and styles which are implemented in Java, instead of instantiating everything on the classpath.
+ * Activation returns {@code null} whenever the index can't account for a name, so that the caller can fall back to
+ * scanning the classpath. That includes names referred to only from outside the classpath, like the recipe list of a
+ * recipe declared in a rewrite.yml.
+ */
+class RecipeCatalog {
+    private static final Logger logger = Logging.getLogger(RecipeCatalog.class);
+
+    private static final String RESOURCE_DIR = "META-INF/rewrite/";
+
+    /**
+     * Anything in a YAML resource that could be the name of a recipe or style.
+     */
+    private static final Pattern NAME = Pattern.compile("[\\w$.-]+");
+
+    private static final ObjectMapper MAPPER;
+
+    static {
+        MAPPER = new ObjectMapper().disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES);
+        MAPPER.setVisibility(MAPPER.getSerializationConfig().getDefaultVisibilityChecker()
+                .withFieldVisibility(JsonAutoDetect.Visibility.ANY)
+                .withGetterVisibility(JsonAutoDetect.Visibility.NONE)
+                .withIsGetterVisibility(JsonAutoDetect.Visibility.NONE));
+    }
+
+    private final ClassLoader classLoader;
+    private final Properties properties;
+    private final Index index;
+
+    private RecipeCatalog(ClassLoader classLoader, Properties properties, Index index) {
+        this.classLoader = classLoader;
+        this.properties = properties;
+        this.index = index;
+    }
+
+    /**
+     * @param cacheDir    Where catalogs are persisted, one per distinct rewrite classpath.
+     * @param classLoader The class loader holding the rewrite classpath.
+     * @return The catalog of the class loader's classpath, or {@code null} if its classpath can't be determined.
+     */
+    static @Nullable RecipeCatalog load(Path cacheDir, ClassLoader classLoader, Properties properties) {
+        if (!(classLoader instanceof URLClassLoader)) {
+            return null;
+        }
+        List<Path> classpath = new ArrayList<>();
+        for (URL url : ((URLClassLoader) classLoader).getURLs()) {
+            try {
+                classpath.add(Paths.get(url.toURI()));
+            } catch (Exception e) {
+                logger.debug("Unable to catalog the recipes of classpath entry {}", url, e);
+                return null;
+            }
+        }
+
+        Path file = cacheDir.resolve(fingerprint(classpath) + ".json");
+        if (Files.exists(file)) {
+            try (InputStream in = new BufferedInputStream(Files.newInputStream(file))) {
+                return new RecipeCatalog(classLoader, properties, MAPPER.readValue(in, Index.class));
+            } catch (Exception e) {
+                logger.debug("Discarding unreadable recipe catalog {}", file, e);
+            }
+        }
+
+        long start = System.nanoTime();
+        Index index = build(classpath, classLoader, properties);
+        logger.info("Cataloged {} recipes and {} styles in {} ms", index.recipes.size(), index.styles.size(),
+                (System.nanoTime() - start) / 1_000_000);
+        store(file, index);
+        return new RecipeCatalog(classLoader, properties, index);
+    }
+
+    List<String> getRecipeNames() {
+        return index.recipes;
+    }
+
+    List<String> getStyleNames() {
+        return index.styles;
+    }
+
+    /**
+     * @param env An environment to load the YAML resources that the recipes need into, which may already hold
+     *            recipes of its own, like those of a rewrite.yml.
+     * @return The named recipes, or {@code null} if any of them isn't in the environment nor known to this catalog, or
+     * if any recipe they include couldn't be resolved from the resources that were loaded.
+     */
+    @Nullable
+    Recipe activateRecipes(List<String> activeRecipes, Environment.Builder env) {
+        if (activeRecipes.isEmpty()) {
+            return Recipe.noop();
+        }
+        Map<String, Recipe> loaded = new HashMap<>();
+        for (Recipe recipe : load(env, activeRecipes).build().listRecipes()) {
+            loaded.putIfAbsent(recipe.getName(), recipe);
+        }
+        List<Recipe> recipes = new ArrayList<>(activeRecipes.size());
+        for (String name : activeRecipes) {
+            Recipe recipe = loaded.get(name);
+            if (recipe != null) {
+                // The index only knows what the cataloged resources refer to. A recipe declared elsewhere, like in a
+                // rewrite.yml, may include cataloged recipes whose resources were not loaded, which is reported as
+                // a validation failure. Any other failure is reported again once the classpath has been scanned.
+                if (recipe.validate().isInvalid()) {
+                    return null;
+                }
+            } else if (index.recipes.contains(name)) {
+                recipe = constructRecipe(name);
+            }
+            if (recipe == null) {
+                return null;
+            }
+            recipes.add(recipe);
+        }
+        return recipes.size() == 1 ? recipes.get(0) : new CompositeRecipe(recipes);
+    }
+
+    /**
+     * @param env An environment to load the YAML resources that the styles need into, which may already hold styles
+     *            of its own, like those of a rewrite.yml.
+     * @return The named styles that exist, or {@code null} if a style known to this catalog couldn't be loaded.
+     */
+    @Nullable
+    List<NamedStyles> activateStyles(List<String> activeStyles, Environment.Builder env) {
+        if (activeStyles.isEmpty()) {
+            return new ArrayList<>();
+        }
+        Map<String, NamedStyles> loaded = new HashMap<>();
+        for (NamedStyles style : load(env, activeStyles).build().listStyles()) {
+            loaded.putIfAbsent(style.getName(), style);
+        }
+        List<NamedStyles> styles = new ArrayList<>(activeStyles.size());
+        for (String name : activeStyles) {
+            NamedStyles style = loaded.get(name);
+            if (style == null && index.styles.contains(name)) {
+                style = constructStyle(name);
+                if (style == null) {
+                    return null;
+                }
+            }
+            // Like Environment#activateStyles, styles that don't exist at all are left out
+            if (style != null) {
+                styles.add(style);
+            }
+        }
+        return styles;
+    }
+
+    /**
+     * Load the YAML resources that declare the given names, along with every resource they refer to in turn.
+     */
+    private Environment.Builder load(Environment.Builder env, Collection<String> names) {
+        Set<String> sources = new LinkedHashSet<>();
+        Deque<String> pending = new ArrayDeque<>(names);
+        while (!pending.isEmpty()) {
+            String source = index.declaredIn.get(pending.pop());
+            if (source != null && sources.add(source)) {
+                pending.addAll(index.references.getOrDefault(source, Collections.emptyList()));
+            }
+        }
+        for (String source : sources) {
+            URI uri = URI.create(source);
+            try {
+                URLConnection connection = uri.toURL().openConnection();
+                // Don't hold on to the jar once it has been read
+                connection.setUseCaches(false);
+                try (InputStream in = connection.getInputStream()) {
+                    env.load(new YamlResourceLoader(in, uri, properties, classLoader));
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException("Unable to load recipes from " + source, e);
+            }
+        }
+        logger.debug("Loaded {} of the {} cataloged recipe resources", sources.size(),
+                new HashSet<>(index.declaredIn.values()).size());
+        return env;
+    }
+
+    private @Nullable Recipe constructRecipe(String name) {
+        try {
+            Class<?> recipeClass = Class.forName(name, true, classLoader);
+            if (Recipe.class.isAssignableFrom(recipeClass) && !Modifier.isAbstract(recipeClass.getModifiers())) {
+                return RecipeIntrospectionUtils.constructRecipe(recipeClass);
+            }
+        } catch (ClassNotFoundException | LinkageError | RuntimeException e) {
+            logger.debug("Unable to construct recipe {}", name, e);
+        }
+        return null;
+    }
+
+    private @Nullable NamedStyles constructStyle(String name) {
+        try {
+            Class<?> styleClass = Class.forName(name, true, classLoader);
+            if (NamedStyles.class.isAssignableFrom(styleClass) && !Modifier.isAbstract(styleClass.getModifiers())) {
+                return (NamedStyles) styleClass.getDeclaredConstructor().newInstance();
+            }
+        } catch (ReflectiveOperationException | LinkageError | RuntimeException e) {
+            logger.debug("Unable to construct style {}", name, e);
+        }
+        return null;
+    }
+
+    private static Index build(List<Path> classpath, ClassLoader classLoader, Properties properties) {
+        Index index = new Index();
+        Environment env = Environment.builder().scanClassLoader(classLoader).build();
+        index.recipes = env.listRecipes().stream().map(Recipe::getName).distinct().sorted().collect(toList());
+        index.styles = env.listStyles().stream().map(NamedStyles::getName).distinct().sorted().collect(toList());
+
+        Map<String, String> resources = new LinkedHashMap<>();
+        for (Path entry : classpath) {
+            try {
+                readResources(entry, resources);
+            } catch (IOException e) {
+                logger.debug("Unable to read the recipe resources of {}", entry, e);
+            }
+        }
+        for (Map.Entry<String, String> resource : resources.entrySet()) {
+            URI uri = URI.create(resource.getKey());
+            YamlResourceLoader loader = new YamlResourceLoader(
+                    new ByteArrayInputStream(resource.getValue().getBytes(StandardCharsets.UTF_8)),
+                    uri, properties, classLoader);
+            Stream.concat(loader.listRecipes().stream().map(Recipe::getName),
+                            loader.listStyles().stream().map(NamedStyles::getName))
+                    .forEach(name -> index.declaredIn.putIfAbsent(name, resource.getKey()));
+        }
+        // Over-approximate the references by taking every word that names something declared in another resource
+        for (Map.Entry<String, String> resource : resources.entrySet()) {
+            Set<String> references = new TreeSet<>();
+            Matcher matcher = NAME.matcher(resource.getValue());
+            while (matcher.find()) {
+                String source = index.declaredIn.get(matcher.group());
+                if (source != null && !source.equals(resource.getKey())) {
+                    references.add(matcher.group());
+                }
+            }
+            if (!references.isEmpty()) {
+                index.references.put(resource.getKey(), new ArrayList<>(references));
+            }
+        }
+        return index;
+    }
+
+    private static void readResources(Path entry, Map<String, String> resources) throws IOException {
+        if (Files.isDirectory(entry)) {
+            Path dir = entry.resolve(RESOURCE_DIR);
+            if (Files.isDirectory(dir)) {
+                try (Stream<Path> files = Files.walk(dir)) {
+                    for (Path file : (Iterable<Path>) files.filter(RecipeCatalog::isYaml).sorted()::iterator) {
+                        resources.put(file.toUri().toString(), new String(Files.readAllBytes(file), StandardCharsets.UTF_8));
+                    }
+                }
+            }
+        } else if (Files.isRegularFile(entry)) {
+            try (ZipFile jar = new ZipFile(entry.toFile())) {
+                Enumeration<? extends ZipEntry> entries = jar.entries();
+                while (entries.hasMoreElements()) {
+                    ZipEntry zipEntry = entries.nextElement();
+                    if (!zipEntry.isDirectory() && zipEntry.getName().startsWith(RESOURCE_DIR) &&
+                        isYaml(Paths.get(zipEntry.getName()))) {
+                        try (InputStream in = jar.getInputStream(zipEntry)) {
+                            resources.put("jar:" + entry.toUri() + "!/" + zipEntry.getName(), readFully(in));
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    private static boolean isYaml(Path path) {
+        String fileName = path.getFileName().toString();
+        return fileName.endsWith(".yml") || fileName.endsWith(".yaml");
+    }
+
+    private static String readFully(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buf = new byte[4096];
+        int length;
+        while ((length = in.read(buf)) > 0) {
+            out.write(buf, 0, length);
+        }
+        return new String(out.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    private static void store(Path file, Index index) {
+        Path temp = null;
+        try {
+            Files.createDirectories(file.getParent());
+            // Builds sharing a Gradle user home may catalog the same classpath at the same time
+            temp = Files.createTempFile(file.getParent(), file.getFileName().toString(), ".tmp");
+            try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(temp))) {
+                MAPPER.writeValue(out, index);
+            }
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (Exception e) {
+            logger.debug("Unable to write recipe catalog {}", file, e);
+            if (temp != null) {
+                try {
+                    Files.deleteIfExists(temp);
+                } catch (IOException ignored) {
+                }
+            }
+        }
+    }
+
+    /**
+     * Jars are identified by their path, size and modification time. Resolved dependencies live in Gradle's cache
+     * under a path that includes their checksum, so this changes whenever their contents do. Class directories are
+     * identified by their contents, as rebuilding them can leave their own size and modification time as they were.
+     */
+    private static String fingerprint(List<Path> classpath) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        for (Path entry : classpath) {
+            if (Files.isDirectory(entry)) {
+                LstCache.updateWithContents(digest, entry);
+            } else {
+                File file = entry.toFile();
+                digest.update((entry + ":" + file.length() + ":" + file.lastModified()).getBytes(StandardCharsets.UTF_8));
+                digest.update((byte) 0);
+            }
+        }
+        StringBuilder sb = new StringBuilder();
+        for (byte b : digest.digest()) {
+            sb.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return sb.toString();
+    }
+
+    private static class Index {
+        private List<String> recipes = new ArrayList<>();
+        private List<String> styles = new ArrayList<>();
+
+        /**
+         * The YAML resource that declares each declarative recipe and style.
+         */
+        private Map<String, String> declaredIn = new HashMap<>();
+
+        /**
+         * The names declared in other YAML resources that each YAML resource refers to.
+         */
+        private Map<String, List<String>> references = new HashMap<>();
+    }
+}
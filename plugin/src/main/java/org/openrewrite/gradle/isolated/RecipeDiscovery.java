@@ -0,0 +1,131 @@
+/*
+ * Licensed under the Moderne Source Available License.
+ * See https://docs.moderne.io/licensing/moderne-source-available-license
+ */
+package org.openrewrite.gradle.isolated;
+
+import org.gradle.api.logging.Logger;
+import org.gradle.api.logging.Logging;
+import org.jspecify.annotations.Nullable;
+import org.openrewrite.Recipe;
+import org.openrewrite.config.Environment;
+import org.openrewrite.config.RecipeDescriptor;
+import org.openrewrite.config.YamlResourceLoader;
+import org.openrewrite.gradle.RecipeEnvironmentModel;
+import org.openrewrite.style.NamedStyles;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static java.util.stream.Collectors.toList;
+
+/**
+ * Lists the available and active recipes and styles. Everything it needs is in the {@link RecipeEnvironmentModel}, so
+ * unlike parsing and running recipes, this works without the project.
+ */
+public class RecipeDiscovery implements Runnable {
+    private static final String LOG_INDENT_INCREMENT = "    ";
+
+    private static final Logger logger = Logging.getLogger(RecipeDiscovery.class);
+
+    private final RecipeEnvironmentModel model;
+
+    @Nullable
+    private final YamlResourceLoader rewriteConfig;
+
+    @Nullable
+    private final RecipeCatalog recipeCatalog;
+
+    @Nullable
+    private Environment environment;
+
+    public RecipeDiscovery(RecipeEnvironmentModel model) {
+        this.model = model;
+        ClassLoader classLoader = getClass().getClassLoader();
+        this.rewriteConfig = DefaultProjectParser.loadRewriteConfig(model, classLoader);
+        this.recipeCatalog = DefaultProjectParser.loadRecipeCatalog(model, classLoader);
+    }
+
+    @Override
+    public void run() {
+        List<String> availableRecipes = listRecipeNames();
+
+        List<String> activeRecipes = model.getActiveRecipes();
+        List<String> availableStyles = listStyleNames();
+        List<String> activeStyles = model.getActiveStyles();
+
+        logger.quiet("Available Recipes:");
+        for (String recipe : availableRecipes) {
+            logger.quiet(indent(1, recipe));
+        }
+
+        logger.quiet(indent(0, ""));
+        logger.quiet("Available Styles:");
+        for (String style : availableStyles) {
+            logger.quiet(indent(1, style));
+        }
+
+        logger.quiet(indent(0, ""));
+        logger.quiet("Active Styles:");
+        for (String style : activeStyles) {
+            logger.quiet(indent(1, style));
+        }
+
+        logger.quiet(indent(0, ""));
+        logger.quiet("Active Recipes:");
+        for (String activeRecipe : activeRecipes) {
+            logger.quiet(indent(1, activeRecipe));
+        }
+
+        logger.quiet(indent(0, ""));
+        logger.quiet("Found " + availableRecipes.size() + " available recipes and " + availableStyles.size() + " available styles.");
+        logger.quiet("Configured with " + activeRecipes.size() + " active recipes and " + activeStyles.size() + " active styles.");
+    }
+
+    List<String> listRecipeNames() {
+        if (recipeCatalog == null) {
+            return environment().listRecipeDescriptors().stream().map(RecipeDescriptor::getName).collect(toList());
+        }
+        List<String> recipes = new ArrayList<>(recipeCatalog.getRecipeNames());
+        if (rewriteConfig != null) {
+            rewriteConfig.listRecipes().stream().map(Recipe::getName).forEach(recipes::add);
+        }
+        return recipes;
+    }
+
+    List<String> listStyleNames() {
+        if (recipeCatalog == null) {
+            return environment().listStyles().stream().map(NamedStyles::getName).collect(toList());
+        }
+        List<String> styles = new ArrayList<>(recipeCatalog.getStyleNames());
+        if (rewriteConfig != null) {
+            rewriteConfig.listStyles().stream().map(NamedStyles::getName).forEach(styles::add);
+        }
+        return styles;
+    }
+
+    private Environment environment() {
+        if (environment == null) {
+            Environment.Builder env = Environment.builder();
+            env.scanClassLoader(getClass().getClassLoader());
+            if (rewriteConfig != null) {
+                env.load(rewriteConfig);
+            }
+            environment = env.build();
+        }
+        return environment;
+    }
+
+    private static String indent(int indent, CharSequence content) {
+        StringBuilder prefix = repeat(indent);
+        return prefix.append(content).toString();
+    }
+
+    private static StringBuilder repeat(int repeat) {
+        StringBuilder buffer = new StringBuilder(repeat * LOG_INDENT_INCREMENT.length());
+        for (int i = 0; i < repeat; i++) {
+            buffer.append(LOG_INDENT_INCREMENT);
+        }
+        return buffer;
+    }
+}
@@ -0,0 +1,238 @@
+/*
+ * Licensed under the Moderne Source Available License.
+ * See https://docs.moderne.io/licensing/moderne-source-available-license
+ */
+package org.openrewrite.gradle.isolated;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Every regular file in the directories of the projects being parsed, found by a parallel walk of each project
+ * directory, so that the different parsing stages don't each walk the same directories again. A walk stops at the
+ * directories of other projects, which are only walked once they are parsed themselves. Left out of the walk are
+ * build directories, included builds, excluded directories, top level directories like {@code .idea} or {@code out},
+ * and {@code .git}, {@code .gradle} and {@code node_modules} directories at any depth.
+ * <p>
+ * Looking up a directory which falls in one of those areas, or which hasn't been walked, walks that directory
+ * on demand just as if there were no index.
+ */
+class RepositoryFileIndex {
+    private final Path root;
+    private final Set<Path> skipped;
+    private final Set<Path> projectDirs;
+    private final ExclusionMatcher exclusions;
+    private final ConcurrentSkipListMap<String, Long> sizeByPath = new ConcurrentSkipListMap<>();
+    private final Set<Path> pruned = ConcurrentHashMap.newKeySet();
+    private final Set<Path> walked = ConcurrentHashMap.newKeySet();
+
+    /**
+     * @param root       The repository root.
+     * @param skipped    Directories that are neither walked nor indexed, such as build directories.
+     * @param exclusions Exclusions, matched against directories relative to the repository root.
+     */
+    RepositoryFileIndex(Path root, Collection<Path> skipped, ExclusionMatcher exclusions) {
+        this(root, skipped, Collections.emptyList(), exclusions);
+    }
+
+    /**
+     * @param root        The repository root.
+     * @param skipped     Directories that are neither walked nor indexed, such as build directories.
+     * @param projectDirs The directories of all projects of the build, at which a walk of another directory stops.
+     * @param exclusions  Exclusions, matched against directories relative to the repository root.
+     */
+    RepositoryFileIndex(Path root, Collection<Path> skipped, Collection<Path> projectDirs, ExclusionMatcher exclusions) {
+        this.root = root.toAbsolutePath().normalize();
+        this.skipped = normalize(skipped);
+        this.projectDirs = normalize(projectDirs);
+        this.exclusions = exclusions;
+    }
+
+    /**
+     * Index the whole repository.
+     *
+     * @param parallelism The number of directories to list at once.
+     */
+    RepositoryFileIndex build(int parallelism) {
+        return index(Collections.singletonList(root), parallelism);
+    }
+
+    /**
+     * Index the given directories, other than those that are indexed already.
+     *
+     * @param dirs        The directories to walk, usually the directories of the projects being parsed.
+     * @param parallelism The number of directories to list at once.
+     */
+    synchronized RepositoryFileIndex index(Collection<Path> dirs, int parallelism) {
+        List<Walk> walks = new ArrayList<>();
+        for (Path dir : normalize(dirs)) {
+            if (dir.startsWith(root) && !skipped.contains(dir) && !isIndexed(dir) && walked.add(dir)) {
+                walks.add(new Walk(dir));
+            }
+        }
+        if (walks.isEmpty()) {
+            return this;
+        }
+        ForkJoinPool pool = new ForkJoinPool(Math.max(1, parallelism));
+        try {
+            pool.invoke(new RecursiveAction() {
+                @Override
+                protected void compute() {
+                    invokeAll(walks);
+                }
+            });
+        } finally {
+            pool.shutdown();
+        }
+        return this;
+    }
+
+    /**
+     * @return The regular files anywhere beneath the given directory, in lexicographic order.
+     */
+    List<Path> files(Path dir) {
+        Path normalized = dir.toAbsolutePath().normalize();
+        if (!isIndexed(normalized)) {
+            return walk(normalized);
+        }
+        String separator = normalized.getFileSystem().getSeparator();
+        String from = normalized.toString().endsWith(separator) ? normalized.toString() : normalized + separator;
+        // Every path beneath the directory sorts between "dir/" and "dir0", '0' being the character after '/'
+        String to = from.substring(0, from.length() - 1) + (char) (from.charAt(from.length() - 1) + 1);
+        List<Path> files = new ArrayList<>();
+        for (String path : sizeByPath.subMap(from, to).keySet()) {
+            files.add(Paths.get(path));
+        }
+        return files;
+    }
+
+    /**
+     * @return The regular files beneath the given directory whose name ends with the given extension.
+     */
+    List<Path> files(Path dir, String extension) {
+        return files(dir).stream()
+                .filter(path -> path.toString().endsWith(extension))
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * @return The size of the given file in bytes, or 0 if it can't be determined.
+     */
+    long size(Path file) {
+        Long size = sizeByPath.get(file.toString());
+        if (size != null) {
+            return size;
+        }
+        try {
+            return Files.size(file);
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    private boolean isIndexed(Path dir) {
+        if (!dir.startsWith(root)) {
+            return false;
+        }
+        // The nearest walked directory is the one whose walk the given directory is part of, if any
+        for (Path d = dir; d != null && d.startsWith(root); d = d.getParent()) {
+            if (walked.contains(d)) {
+                return true;
+            }
+            if (pruned.contains(d)) {
+                return false;
+            }
+        }
+        return false;
+    }
+
+    private boolean prune(Path dir) {
+        if (skipped.contains(dir) || projectDirs.contains(dir)) {
+            return true;
+        }
+        String name = dir.getFileName().toString();
+        // Nested repositories, nested builds and package manager caches
+        if (name.equals(".git") || name.equals(".gradle") || name.equals("node_modules")) {
+            return true;
+        }
+        if (root.equals(dir.getParent()) && (name.startsWith(".") || name.equals("out"))) {
+            // .idea, .moderne, etc. and IntelliJ's standard output directory
+            return true;
+        }
+        return exclusions.isExcludedDirectory(root.relativize(dir));
+    }
+
+    private static Set<Path> normalize(Collection<Path> paths) {
+        return paths.stream()
+                .map(Path::toAbsolutePath)
+                .map(Path::normalize)
+                .collect(Collectors.toCollection(LinkedHashSet::new));
+    }
+
+    private static List<Path> walk(Path dir) {
+        if (!Files.isDirectory(dir)) {
+            return Collections.emptyList();
+        }
+        try (Stream<Path> paths = Files.walk(dir)) {
+            return paths.filter(Files::isRegularFile)
+                    .map(Path::toAbsolutePath)
+                    .map(Path::normalize)
+                    .sorted()
+                    .collect(Collectors.toList());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private class Walk extends RecursiveAction {
+        private final Path dir;
+
+        private Walk(Path dir) {
+            this.dir = dir;
+        }
+
+        @Override
+        protected void compute() {
+            List<Walk> subdirectories = new ArrayList<>();
+            try (DirectoryStream<Path> entries = Files.newDirectoryStream(dir)) {
+                for (Path entry : entries) {
+                    BasicFileAttributes attrs;
+                    try {
+                        attrs = Files.readAttributes(entry, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+                    } catch (IOException e) {
+                        continue;
+                    }
+                    if (attrs.isDirectory()) {
+                        if (prune(entry)) {
+                            pruned.add(entry);
+                        } else {
+                            subdirectories.add(new Walk(entry));
+                        }
+                    } else if (attrs.isRegularFile()) {
+                        sizeByPath.put(entry.toString(), attrs.size());
+                    } else if (attrs.isSymbolicLink() && Files.isRegularFile(entry)) {
+                        // Linked files are parsed, linked directories aren't descended into
+                        try {
+                            sizeByPath.put(entry.toString(), Files.size(entry));
+                        } catch (IOException ignored) {
+                        }
+                    }
+                }
+            } catch (IOException e) {
+                // Look the directory up on demand instead, which surfaces the failure to whoever needs it
+                pruned.add(dir);
+                return;
+            }
+            invokeAll(subdirectories);
+        }
+    }
+}
@@ -0,0 +1,555 @@
+/*
+ * Licensed under the Moderne Source Available License.
+ * See https://docs.moderne.io/licensing/moderne-source-available-license
+ */
+package org.openrewrite.gradle.isolated;
+
+import org.gradle.api.logging.Logger;
+import org.gradle.api.logging.Logging;
+import org.jspecify.annotations.Nullable;
+import org.openrewrite.ExecutionContext;
+import org.openrewrite.FileAttributes;
+import org.openrewrite.PrintOutputCapture;
+import org.openrewrite.SourceFile;
+import org.openrewrite.binary.Binary;
+import org.openrewrite.gradle.SanitizedMarkerPrinter;
+import org.openrewrite.quark.Quark;
+import org.openrewrite.remote.Remote;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.Charset;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+/**
+ * Applies the changes made by a recipe run to the file system as a whole. Changes are queued up front and then
+ * committed together:
+ * <ol>
+ *     <li>The contents of every file to be written are printed and written to a temporary file next to the file they
+ *     replace. This happens concurrently, as it is where nearly all the time goes.</li>
+ *     <li>Once every temporary file is in place, the queued changes are applied in order. Each written file is moved
+ *     into place atomically, so it is never seen half written.</li>
+ * </ol>
+ * If anything fails along the way, every change that was already applied is undone and every directory that was
+ * created for the changes is removed again, leaving the files and directories as they were.
+ */
+class ResultWriter {
+    private static final Logger logger = Logging.getLogger(ResultWriter.class);
+
+    /**
+     * How many files to write between progress messages.
+     */
+    private static final int PROGRESS_INTERVAL = 1000;
+
+    private final int parallelism;
+    private final boolean skipUnchanged;
+    private final ExecutionContext ctx;
+    private final List<Change> changes = new ArrayList<>();
+    private final Set<Path> renamedDirectories = new HashSet<>();
+
+    /**
+     * Directories created while staging or applying changes, which are removed again if the changes are undone.
+     * Directories are created concurrently while staging.
+     */
+    private final List<Path> createdDirectories = Collections.synchronizedList(new ArrayList<>());
+
+    /**
+     * @param skipUnchanged Whether to leave files alone when their contents on disk are already exactly what would be
+     *                      written, so that their modification times don't change.
+     */
+    ResultWriter(int parallelism, boolean skipUnchanged, ExecutionContext ctx) {
+        this.parallelism = parallelism;
+        this.skipUnchanged = skipUnchanged;
+        this.ctx = ctx;
+    }
+
+    /**
+     * Write the printed source file to the target path, replacing any file already there.
+     */
+    void write(Path target, SourceFile after) {
+        // We don't know the contents of a Quark, so there is nothing to write
+        if (!(after instanceof Quark)) {
+            changes.add(new Write(target, after, null, after.getFileAttributes()));
+        }
+    }
+
+    /**
+     * Write contents that were already printed to the target path, replacing any file already there.
+     */
+    void write(Path target, byte[] printed, @Nullable FileAttributes fileAttributes) {
+        changes.add(new Write(target, null, printed, fileAttributes));
+    }
+
+    /**
+     * Delete a file, failing the commit if it doesn't exist.
+     */
+    void delete(Path path) {
+        changes.add(new Delete(path, true));
+    }
+
+    void deleteIfExists(Path path) {
+        changes.add(new Delete(path, false));
+    }
+
+    /**
+     * Move a file, creating the directory it is moved to if needed and replacing any file already there.
+     */
+    void move(Path source, Path target) {
+        changes.add(new Move(source, target));
+    }
+
+    /**
+     * Rename a directory, for instance to change the case of its name. A directory is only renamed once, however
+     * often this is asked for.
+     */
+    void renameDirectory(Path source, Path target) {
+        if (renamedDirectories.add(source)) {
+            changes.add(new RenameDirectory(source, target));
+        }
+    }
+
+    /**
+     * Encode printed source text, failing on characters that the charset can't represent, where
+     * {@link String#getBytes(Charset)} would silently write replacements for them.
+     */
+    static byte[] encode(String text, Charset charset) throws CharacterCodingException {
+        ByteBuffer encoded = charset.newEncoder()
+                .onMalformedInput(CodingErrorAction.REPORT)
+                .onUnmappableCharacter(CodingErrorAction.REPORT)
+                .encode(CharBuffer.wrap(text));
+        byte[] bytes = new byte[encoded.remaining()];
+        encoded.get(bytes);
+        return bytes;
+    }
+
+    void commit() throws IOException {
+        long start = System.nanoTime();
+        List<Write> writes = new ArrayList<>();
+        for (Change change : changes) {
+            if (change instanceof Write) {
+                writes.add((Write) change);
+            }
+        }
+
+        try {
+            stage(writes);
+        } catch (IOException | RuntimeException e) {
+            discard(e);
+            removeCreatedDirectories(e);
+            throw e;
+        }
+
+        List<Change> applied = new ArrayList<>(changes.size());
+        try {
+            for (Change change : changes) {
+                change.apply();
+                applied.add(change);
+            }
+        } catch (IOException | RuntimeException e) {
+            logger.error("Unable to apply all changes, undoing the {} changes applied so far", applied.size());
+            for (int i = applied.size() - 1; i >= 0; i--) {
+                try {
+                    applied.get(i).undo();
+                } catch (IOException | RuntimeException undoFailure) {
+                    e.addSuppressed(undoFailure);
+                }
+            }
+            discard(e);
+            removeCreatedDirectories(e);
+            throw e;
+        }
+
+        discard(null);
+        if (!writes.isEmpty()) {
+            Duration elapsed = Duration.ofNanos(System.nanoTime() - start);
+            int unchanged = 0;
+            long bytes = 0;
+            for (Write write : writes) {
+                if (write.unchanged) {
+                    unchanged++;
+                } else {
+                    bytes += write.size;
+                }
+            }
+            if (unchanged > 0) {
+                logger.lifecycle("Skipped writing {} files whose contents were already up to date", unchanged);
+            }
+            logger.info("Wrote {} files ({} KB) in {} ms, {} files/s", writes.size() - unchanged, bytes / 1024,
+                    elapsed.toMillis(), (writes.size() - unchanged) * 1000 / Math.max(1, elapsed.toMillis()));
+        }
+    }
+
+    private void stage(List<Write> writes) throws IOException {
+        AtomicInteger staged = new AtomicInteger();
+        try (ParallelExecutor executor = new ParallelExecutor(parallelism)) {
+            Stream<Write> units = Stream.empty();
+            for (Write write : writes) {
+                units = Stream.concat(units, executor.submit(() -> {
+                    try {
+                        write.stage();
+                    } catch (IOException | RuntimeException e) {
+                        write.failure = e;
+                    }
+                    int count = staged.incrementAndGet();
+                    if (count % PROGRESS_INTERVAL == 0) {
+                        logger.lifecycle("Written {} of {} files", count, writes.size());
+                    }
+                    return Stream.of(write);
+                }));
+            }
+            // Wait for every write to finish, even after one has failed, so that no temporary file is left behind
+            units.forEach(write -> {
+            });
+        }
+        for (Write write : writes) {
+            if (write.failure instanceof IOException) {
+                throw (IOException) write.failure;
+            } else if (write.failure instanceof RuntimeException) {
+                throw (RuntimeException) write.failure;
+            }
+        }
+    }
+
+    /**
+     * Remove any temporary files and backups that are left over.
+     */
+    private void discard(@Nullable Exception failure) {
+        for (Change change : changes) {
+            try {
+                change.discard();
+            } catch (IOException e) {
+                if (failure == null) {
+                    logger.warn("Unable to clean up after writing changes", e);
+                } else {
+                    failure.addSuppressed(e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Create a directory and any missing parents, remembering which ones were created.
+     */
+    private void createDirectories(Path dir) throws IOException {
+        Deque<Path> missing = new ArrayDeque<>();
+        for (Path d = dir.toAbsolutePath(); d != null && !Files.isDirectory(d); d = d.getParent()) {
+            missing.push(d);
+        }
+        while (!missing.isEmpty()) {
+            Path d = missing.pop();
+            try {
+                Files.createDirectory(d);
+                createdDirectories.add(d);
+            } catch (FileAlreadyExistsException e) {
+                // Another write to the same directory may have just created it
+                if (!Files.isDirectory(d)) {
+                    throw e;
+                }
+            }
+        }
+    }
+
+    private void removeCreatedDirectories(Exception failure) {
+        List<Path> directories = new ArrayList<>(createdDirectories);
+        // Deepest first, so that every directory is empty by the time it is removed
+        directories.sort((d1, d2) -> Integer.compare(d2.getNameCount(), d1.getNameCount()));
+        for (Path directory : directories) {
+            try {
+                Files.deleteIfExists(directory);
+            } catch (IOException e) {
+                failure.addSuppressed(e);
+            }
+        }
+        createdDirectories.clear();
+    }
+
+    private static Path sibling(Path path, String suffix) {
+        return path.resolveSibling("." + path.getFileName() + "." + UUID.randomUUID() + suffix);
+    }
+
+    private static void moveAtomically(Path source, Path target) throws IOException {
+        try {
+            Files.move(source, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    private abstract static class Change {
+        @Nullable
+        Path backup;
+
+        abstract void apply() throws IOException;
+
+        abstract void undo() throws IOException;
+
+        void discard() throws IOException {
+            if (backup != null) {
+                Files.deleteIfExists(backup);
+                backup = null;
+            }
+        }
+    }
+
+    private class Write extends Change {
+        private final Path target;
+
+        @Nullable
+        private final SourceFile after;
+
+        private final byte @Nullable [] printed;
+
+        @Nullable
+        private final FileAttributes fileAttributes;
+
+        @Nullable
+        private Path temp;
+
+        private long size;
+
+        /**
+         * Whether the file on disk already has exactly the contents and permissions that would be written.
+         */
+        private boolean unchanged;
+
+        @Nullable
+        private Exception failure;
+
+        private Write(Path target,
+                      @Nullable SourceFile after,
+                      byte @Nullable [] printed,
+                      @Nullable FileAttributes fileAttributes) {
+            this.target = target;
+            this.after = after;
+            this.printed = printed;
+            this.fileAttributes = fileAttributes;
+        }
+
+        private void stage() throws IOException {
+            byte[] contents = printed;
+            if (after == null) {
+                assert contents != null;
+            } else if (after instanceof Binary) {
+                contents = ((Binary) after).getBytes();
+            } else if (!(after instanceof Remote)) {
+                Charset charset = after.getCharset() == null ? StandardCharsets.UTF_8 : after.getCharset();
+                try {
+                    contents = encode(after.printAll(new PrintOutputCapture<>(0, new SanitizedMarkerPrinter())), charset);
+                } catch (CharacterCodingException e) {
+                    throw new IOException("Unable to write " + target + ", which contains characters that " +
+                                          charset + " cannot encode", e);
+                }
+            }
+            if (skipUnchanged && contents != null && isUpToDate(contents)) {
+                unchanged = true;
+                return;
+            }
+
+            createDirectories(target.getParent());
+            temp = sibling(target, ".tmp");
+            try (OutputStream out = Files.newOutputStream(temp, StandardOpenOption.CREATE_NEW)) {
+                if (contents != null) {
+                    out.write(contents);
+                } else {
+                    try (InputStream source = ((Remote) after).getInputStream(ctx)) {
+                        byte[] buf = new byte[4096];
+                        int length;
+                        while ((length = source.read(buf)) > 0) {
+                            out.write(buf, 0, length);
+                        }
+                    }
+                }
+            }
+            size = Files.size(temp);
+
+            // The temporary file replaces the original, so it takes over the original's permissions
+            if (Files.exists(target)) {
+                try {
+                    Files.setPosixFilePermissions(temp, Files.getPosixFilePermissions(target));
+                } catch (UnsupportedOperationException ignored) {
+                }
+            }
+            if (fileAttributes != null) {
+                File tempFile = temp.toFile();
+                if (tempFile.canRead() != fileAttributes.isReadable()) {
+                    //noinspection ResultOfMethodCallIgnored
+                    tempFile.setReadable(fileAttributes.isReadable());
+                }
+                if (tempFile.canWrite() != fileAttributes.isWritable()) {
+                    //noinspection ResultOfMethodCallIgnored
+                    tempFile.setWritable(fileAttributes.isWritable());
+                }
+                if (tempFile.canExecute() != fileAttributes.isExecutable()) {
+                    //noinspection ResultOfMethodCallIgnored
+                    tempFile.setExecutable(fileAttributes.isExecutable());
+                }
+            }
+        }
+
+        private boolean isUpToDate(byte[] contents) throws IOException {
+            if (!Files.isRegularFile(target) || Files.size(target) != contents.length ||
+                !Arrays.equals(Files.readAllBytes(target), contents)) {
+                return false;
+            }
+            if (fileAttributes == null) {
+                return true;
+            }
+            File targetFile = target.toFile();
+            return targetFile.canRead() == fileAttributes.isReadable() &&
+                   targetFile.canWrite() == fileAttributes.isWritable() &&
+                   targetFile.canExecute() == fileAttributes.isExecutable();
+        }
+
+        @Override
+        void apply() throws IOException {
+            if (unchanged) {
+                return;
+            }
+            assert temp != null;
+            if (Files.exists(target)) {
+                backup = sibling(target, ".bak");
+                try {
+                    // The original stays where it is until the new contents replace it
+                    Files.createLink(backup, target);
+                } catch (UnsupportedOperationException | IOException e) {
+                    Files.copy(target, backup, StandardCopyOption.COPY_ATTRIBUTES);
+                }
+            }
+            moveAtomically(temp, target);
+            temp = null;
+        }
+
+        @Override
+        void undo() throws IOException {
+            if (unchanged) {
+                return;
+            }
+            if (backup != null) {
+                moveAtomically(backup, target);
+                backup = null;
+            } else {
+                Files.deleteIfExists(target);
+            }
+        }
+
+        @Override
+        void discard() throws IOException {
+            super.discard();
+            if (temp != null) {
+                Files.deleteIfExists(temp);
+                temp = null;
+            }
+        }
+    }
+
+    private static class Delete extends Change {
+        private final Path path;
+        private final boolean required;
+
+        private Delete(Path path, boolean required) {
+            this.path = path;
+            this.required = required;
+        }
+
+        @Override
+        void apply() throws IOException {
+            if (!Files.exists(path)) {
+                if (required) {
+                    throw new IOException("Unable to delete file " + path.toAbsolutePath());
+                }
+                return;
+            }
+            // Set the file aside rather than deleting it, so that it can be put back
+            Path aside = sibling(path, ".bak");
+            moveAtomically(path, aside);
+            backup = aside;
+        }
+
+        @Override
+        void undo() throws IOException {
+            if (backup != null) {
+                moveAtomically(backup, path);
+                backup = null;
+            }
+        }
+    }
+
+    private class Move extends Change {
+        private final Path source;
+        private final Path target;
+
+        private Move(Path source, Path target) {
+            this.source = source;
+            this.target = target;
+        }
+
+        @Override
+        void apply() throws IOException {
+            createDirectories(target.toAbsolutePath().getParent());
+            if (Files.exists(target)) {
+                // Set the file being replaced aside, so that it can be put back
+                Path aside = sibling(target, ".bak");
+                moveAtomically(target, aside);
+                backup = aside;
+            }
+            try {
+                moveAtomically(source, target);
+            } catch (IOException | RuntimeException e) {
+                // A change that fails is not undone, so put the replaced file back here
+                if (backup != null) {
+                    moveAtomically(backup, target);
+                    backup = null;
+                }
+                throw e;
+            }
+        }
+
+        @Override
+        void undo() throws IOException {
+            moveAtomically(target, source);
+            if (backup != null) {
+                moveAtomically(backup, target);
+                backup = null;
+            }
+        }
+    }
+
+    private static class RenameDirectory extends Change {
+        private final Path source;
+        private final Path target;
+
+        private RenameDirectory(Path source, Path target) {
+            this.source = source;
+            this.target = target;
+        }
+
+        @Override
+        void apply() throws IOException {
+            rename(source, target);
+        }
+
+        @Override
+        void undo() throws IOException {
+            rename(target, source);
+        }
+
+        private static void rename(Path source, Path target) throws IOException {
+            // Files.move does nothing when the names differ only in case on a case-insensitive file system, as it
+            // considers them to be the same file
+            if (!source.toFile().renameTo(target.toFile())) {
+                throw new IOException("Unable to rename directory from " + source.toAbsolutePath() + " to " + target.toAbsolutePath());
+            }
+        }
+    }
+}
@@ -0,0 +1,336 @@
+/*
+ * Licensed under the Moderne Source Available License.
+ * See https://docs.moderne.io/licensing/moderne-source-available-license
+ */
+package org.openrewrite.gradle.isolated;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.gradle.api.logging.Logger;
+import org.gradle.api.logging.Logging;
+import org.jspecify.annotations.Nullable;
+import org.openrewrite.ExecutionContext;
+import org.openrewrite.config.RecipeDescriptor;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Stream;
+
+import static java.util.stream.Collectors.joining;
+import static java.util.stream.Collectors.toList;
+import static org.openrewrite.PathUtils.separatorsToUnix;
+
+/**
+ * Reports the results of a recipe run and applies them, either by writing a patch for a dry run or by changing the
+ * files themselves.
+ */
+class ResultsApplier {
+    private static final Logger logger = Logging.getLogger(ResultsApplier.class);
+
+    private final int parallelism;
+    private final boolean skipUnchangedWrites;
+    private final boolean failOnDryRunResults;
+    private final Consumer<List<RecipeDescriptor>> logRecipes;
+
+    /**
+     * @param parallelism The number of threads used to compute diffs and write files.
+     * @param logRecipes  Logs the recipes that made a change, like {@link #logRecipesThatMadeChanges(List)}.
+     */
+    ResultsApplier(int parallelism,
+                   boolean skipUnchangedWrites,
+                   boolean failOnDryRunResults,
+                   Consumer<List<RecipeDescriptor>> logRecipes) {
+        this.parallelism = parallelism;
+        this.skipUnchangedWrites = skipUnchangedWrites;
+        this.failOnDryRunResults = failOnDryRunResults;
+        this.logRecipes = logRecipes;
+    }
+
+    void dryRun(Path reportPath, ResultsContainer results) {
+        RuntimeException firstException = results.getFirstException();
+        if (firstException != null) {
+            logger.error("The recipe produced an error. Please report this to the recipe author.");
+            throw firstException;
+        }
+
+        if (results.isNotEmpty()) {
+            Duration estimateTimeSaved = Duration.ZERO;
+            for (CompactResult result : results.getGenerated()) {
+                assert result.getAfterPath() != null;
+                logger.warn("These recipes would generate new file {}:", result.getAfterPath());
+                logRecipes.accept(result.getRecipeDescriptorsThatMadeChanges());
+                estimateTimeSaved = estimateTimeSavedSum(result, estimateTimeSaved);
+            }
+            for (CompactResult result : results.getDeleted()) {
+                assert result.getBeforePath() != null;
+                logger.warn("These recipes would delete file {}:", result.getBeforePath());
+                logRecipes.accept(result.getRecipeDescriptorsThatMadeChanges());
+                estimateTimeSaved = estimateTimeSavedSum(result, estimateTimeSaved);
+            }
+            for (CompactResult result : results.getMoved()) {
+                assert result.getBeforePath() != null;
+                assert result.getAfterPath() != null;
+                logger.warn("These recipes would move file from {} to {}:", result.getBeforePath(), result.getAfterPath());
+                logRecipes.accept(result.getRecipeDescriptorsThatMadeChanges());
+                estimateTimeSaved = estimateTimeSavedSum(result, estimateTimeSaved);
+            }
+            for (CompactResult result : results.getRefactoredInPlace()) {
+                assert result.getBeforePath() != null;
+                logger.warn("These recipes would make changes to {}:", result.getBeforePath());
+                logRecipes.accept(result.getRecipeDescriptorsThatMadeChanges());
+                estimateTimeSaved = estimateTimeSavedSum(result, estimateTimeSaved);
+            }
+
+            //noinspection ResultOfMethodCallIgnored
+            reportPath.getParent().toFile().mkdirs();
+            try (BufferedWriter writer = Files.newBufferedWriter(reportPath);
+                 ParallelExecutor executor = new ParallelExecutor(
+                         parallelism)) {
+                // Diffs are computed concurrently but written in order as they complete, so that only the diffs
+                // still waiting to be written are held in memory
+                executor.mapOrdered(Stream.concat(
+                                Stream.concat(results.getGenerated().stream(), results.getDeleted().stream()),
+                                Stream.concat(results.getMoved().stream(), results.getRefactoredInPlace().stream()))
+                        .filter(CompactResult::isDiffable),
+                        CompactResult::diff,
+                        diff -> {
+                            try {
+                                writer.write(diff + "\n");
+                            } catch (IOException e) {
+                                throw new RuntimeException(e);
+                            }
+                        });
+            } catch (Exception e) {
+                throw new RuntimeException("Unable to generate rewrite result file.", e);
+            }
+            writeSummary(summaryPath(reportPath), results, estimateTimeSaved);
+            logger.warn("Report available:");
+            logger.warn("    {}", reportPath.normalize());
+            logger.warn("Estimate time saved: {}", formatDuration(estimateTimeSaved));
+            logger.warn("Run 'gradle rewriteRun' to apply the recipes.");
+
+            if (failOnDryRunResults) {
+                throw new RuntimeException("Applying recipes would make changes. See logs for more details.");
+            }
+        } else {
+            try {
+                // A report left over from an earlier dry run would no longer be accurate
+                Files.deleteIfExists(reportPath);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            writeSummary(summaryPath(reportPath), results, Duration.ZERO);
+            logger.lifecycle("Applying recipes would make no changes. No report generated.");
+        }
+    }
+
+    /**
+     * The summary is written next to the report, whether or not there are any changes to report.
+     */
+    static Path summaryPath(Path reportPath) {
+        return reportPath.resolveSibling("rewrite-summary.json");
+    }
+
+    /**
+     * Write which files would change and which recipes would change them, for tools to read rather than the patch.
+     * Paths are relative to the root of the repository, so that the summary doesn't depend on where it is checked out.
+     */
+    private static void writeSummary(Path summaryPath, ResultsContainer results, Duration estimateTimeSaved) {
+        Map<String, Integer> recipes = new TreeMap<>();
+        Stream.of(results.getGenerated(), results.getDeleted(), results.getMoved(), results.getRefactoredInPlace())
+                .flatMap(List::stream)
+                .flatMap(result -> result.getRecipeDescriptorsThatMadeChanges().stream())
+                .forEach(recipe -> recipes.merge(recipe.getName(), 1, Integer::sum));
+
+        Map<String, Object> summary = new LinkedHashMap<>();
+        summary.put("estimatedTimeSavedSeconds", estimateTimeSaved.getSeconds());
+        summary.put("recipes", recipes);
+        summary.put("generated", paths(results.getGenerated(), CompactResult::getAfterPath));
+        summary.put("deleted", paths(results.getDeleted(), CompactResult::getBeforePath));
+        summary.put("moved", results.getMoved().stream()
+                .map(result -> {
+                    Map<String, String> move = new LinkedHashMap<>();
+                    move.put("from", unixPath(result.getBeforePath()));
+                    move.put("to", unixPath(result.getAfterPath()));
+                    return move;
+                })
+                .collect(toList()));
+        summary.put("changed", paths(results.getRefactoredInPlace(), CompactResult::getBeforePath));
+        writeSummary(summaryPath, summary);
+    }
+
+    static void writeSummary(Path summaryPath, Map<String, Object> summary) {
+        try {
+            Files.createDirectories(summaryPath.getParent());
+            new ObjectMapper().writerWithDefaultPrettyPrinter().writeValue(summaryPath.toFile(), summary);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to write rewrite summary " + summaryPath, e);
+        }
+    }
+
+    private static List<String> paths(List<CompactResult> results, Function<CompactResult, @Nullable Path> path) {
+        return results.stream().map(result -> unixPath(path.apply(result))).collect(toList());
+    }
+
+    private static String unixPath(@Nullable Path path) {
+        return path == null ? "" : separatorsToUnix(path.toString());
+    }
+
+    static String formatDuration(Duration duration) {
+        return duration.toString()
+                .substring(2)
+                .replaceAll("(\\d[HMS])(?!$)", "$1 ")
+                .toLowerCase()
+                .trim();
+    }
+
+    void run(ResultsContainer results, ExecutionContext ctx) {
+        if (results.isNotEmpty()) {
+            Duration estimateTimeSaved = Duration.ZERO;
+            RuntimeException firstException = results.getFirstException();
+            if (firstException != null) {
+                logger.error("The recipe produced an error. Please report this to the recipe author.");
+                throw firstException;
+            }
+
+            for (CompactResult result : results.getGenerated()) {
+                assert result.getAfterPath() != null;
+                logger.lifecycle("Generated new file " +
+                                 result.getAfterPath() +
+                                 " by:");
+                logRecipes.accept(result.getRecipeDescriptorsThatMadeChanges());
+                estimateTimeSaved = estimateTimeSavedSum(result, estimateTimeSaved);
+            }
+            for (CompactResult result : results.getDeleted()) {
+                assert result.getBeforePath() != null;
+                logger.lifecycle("Deleted file " +
+                                 result.getBeforePath() +
+                                 " by:");
+                logRecipes.accept(result.getRecipeDescriptorsThatMadeChanges());
+                estimateTimeSaved = estimateTimeSavedSum(result, estimateTimeSaved);
+            }
+            for (CompactResult result : results.getMoved()) {
+                assert result.getAfterPath() != null;
+                assert result.getBeforePath() != null;
+                logger.lifecycle("File has been moved from " +
+                                 result.getBeforePath() + " to " +
+                                 result.getAfterPath() + " by:");
+                logRecipes.accept(result.getRecipeDescriptorsThatMadeChanges());
+                estimateTimeSaved = estimateTimeSavedSum(result, estimateTimeSaved);
+            }
+            for (CompactResult result : results.getRefactoredInPlace()) {
+                assert result.getBeforePath() != null;
+                logger.lifecycle("Changes have been made to " +
+                                 result.getBeforePath() +
+                                 " by:");
+                logRecipes.accept(result.getRecipeDescriptorsThatMadeChanges());
+                estimateTimeSaved = estimateTimeSavedSum(result, estimateTimeSaved);
+            }
+
+            logger.lifecycle("Please review and commit the results.");
+
+            logger.lifecycle("Estimate time saved: {}", formatDuration(estimateTimeSaved));
+
+            try {
+                ResultWriter writer = new ResultWriter(
+                        parallelism,
+                        skipUnchangedWrites,
+                        ctx);
+                for (CompactResult result : results.getGenerated()) {
+                    result.write(writer, results.getProjectRoot());
+                }
+                for (CompactResult result : results.getDeleted()) {
+                    assert result.getBeforePath() != null;
+                    writer.delete(results.getProjectRoot().resolve(result.getBeforePath()));
+                }
+                for (CompactResult result : results.getMoved()) {
+                    // Should we try to use git to move the file first, and only if that fails fall back to this?
+                    assert result.getBeforePath() != null;
+                    Path originalLocation = results.getProjectRoot().resolve(result.getBeforePath());
+                    File originalParentDir = originalLocation.toFile().getParentFile();
+
+                    assert result.getAfterPath() != null;
+                    // The writer creates the directories of files moved into a hitherto nonexistent package
+                    Path afterLocation = results.getProjectRoot().resolve(result.getAfterPath());
+                    File afterParentDir = afterLocation.toFile().getParentFile();
+                    // Rename the directory if its name case has been changed, e.g. camel case to lower case.
+                    if (afterParentDir.exists() &&
+                        afterParentDir.getAbsolutePath().equalsIgnoreCase((originalParentDir.getAbsolutePath())) &&
+                        !afterParentDir.getAbsolutePath().equals(originalParentDir.getAbsolutePath())) {
+                        writer.renameDirectory(originalParentDir.toPath(), afterParentDir.toPath());
+                    }
+                    if (result.isQuark()) {
+                        // We don't know the contents of a Quark, but we can move it
+                        writer.move(originalLocation, afterLocation);
+                    } else {
+                        writer.deleteIfExists(originalLocation);
+                        result.write(writer, results.getProjectRoot());
+                    }
+                }
+
+                for (CompactResult result : results.getRefactoredInPlace()) {
+                    result.write(writer, results.getProjectRoot());
+                }
+                writer.commit();
+                List<Path> emptyDirectories = results.newlyEmptyDirectories();
+                if (!emptyDirectories.isEmpty()) {
+                    logger.quiet("Removing {} newly empty directories:",
+                            emptyDirectories.size());
+                    for (Path emptyDirectory : emptyDirectories) {
+                        logger.quiet("  {}", emptyDirectory);
+                        Files.delete(emptyDirectory);
+                    }
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException("Unable to rewrite source files", e);
+            }
+        }
+    }
+
+    private static Duration estimateTimeSavedSum(CompactResult result, Duration timeSaving) {
+        if (null != result.getTimeSavings()) {
+            return timeSaving.plus(result.getTimeSavings());
+        }
+        return timeSaving;
+    }
+
+    static void logRecipesThatMadeChanges(List<RecipeDescriptor> recipeDescriptors) {
+        String indent = "    ";
+        String prefix = "    ";
+        for (RecipeDescriptor recipeDescriptor : recipeDescriptors) {
+            logRecipe(recipeDescriptor, prefix);
+            prefix = prefix + indent;
+        }
+    }
+
+    private static void logRecipe(RecipeDescriptor rd, String prefix) {
+        StringBuilder recipeString = new StringBuilder(prefix + rd.getName());
+        if (!rd.getOptions().isEmpty()) {
+            String opts = rd.getOptions().stream().map(option -> {
+                        if (option.getValue() != null) {
+                            return option.getName() + "=" + option.getValue();
+                        }
+                        return null;
+                    }
+            ).filter(Objects::nonNull).collect(joining(", "));
+            if (!opts.isEmpty()) {
+                recipeString.append(": {").append(opts).append("}");
+            }
+        }
+        logger.warn("{}", recipeString);
+        for (RecipeDescriptor rChild : rd.getRecipeList()) {
+            logRecipe(rChild, prefix + "    ");
+        }
+    }
+}
@@ -7,7 +7,6 @@ package org.openrewrite.gradle.isolated;
 import org.jspecify.annotations.Nullable;
 import org.openrewrite.*;
 import org.openrewrite.marker.Marker;
-import org.openrewrite.marker.Markers;
 import org.openrewrite.marker.Markup;
 import org.openrewrite.marker.SearchResult;
 
@@ -15,19 +14,38 @@ import java.io.IOException;
 import java.io.UncheckedIOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.nio.file.Paths;
 import java.util.*;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.UnaryOperator;
 import java.util.stream.Stream;
 
 public class ResultsContainer {
     final Path projectRoot;
-    final RecipeRun recipeRun;
+
+    @Nullable
+    RecipeRun recipeRun;
     final List<Result> generated = new ArrayList<>();
     final List<Result> deleted = new ArrayList<>();
     final List<Result> moved = new ArrayList<>();
     final List<Result> refactoredInPlace = new ArrayList<>();
 
+    @Nullable
+    private List<CompactResult> compactGenerated;
+
+    @Nullable
+    private List<CompactResult> compactDeleted;
+
+    @Nullable
+    private List<CompactResult> compactMoved;
+
+    @Nullable
+    private List<CompactResult> compactRefactoredInPlace;
+
+    @Nullable
+    private RuntimeException firstException;
+
+    private boolean firstExceptionSearched;
+
     public ResultsContainer(Path projectRoot, @Nullable RecipeRun recipeRun) {
         this.projectRoot = projectRoot;
         this.recipeRun = recipeRun;
@@ -43,15 +61,83 @@ public class ResultsContainer {
                     deleted.add(result);
                 } else if (result.getBefore() != null && !result.getBefore().getSourcePath().equals(result.getAfter().getSourcePath())) {
                     moved.add(result);
-                } else {
-                    if (!result.diff(Paths.get(""), new FencedMarkerPrinter(), true).isEmpty()) {
-                        refactoredInPlace.add(result);
-                    }
+                } else if (isChanged(result)) {
+                    refactoredInPlace.add(result);
                 }
             }
         }
     }
 
+    /**
+     * Whether a result which leaves its file in place would produce a diff, ignoring whitespace, without computing
+     * that diff. Only the printed source and the file mode are compared, as those are all the diff is made of.
+     */
+    static boolean isChanged(Result result) {
+        SourceFile before = result.getBefore();
+        SourceFile after = result.getAfter();
+        assert before != null && after != null;
+        if (isExecutable(before) != isExecutable(after)) {
+            return true;
+        }
+        return !equalsIgnoringWhitespace(
+                before.printAll(new PrintOutputCapture<>(0, new FencedMarkerPrinter())),
+                after.printAll(new PrintOutputCapture<>(0, new FencedMarkerPrinter())));
+    }
+
+    private static boolean isExecutable(SourceFile sourceFile) {
+        return sourceFile.getFileAttributes() != null && sourceFile.getFileAttributes().isExecutable();
+    }
+
+    /**
+     * Compare line by line, disregarding whitespace within lines, which is how the diff compares when it ignores
+     * whitespace. Adding or removing lines is still a change, even blank ones, but a missing line break at the very
+     * end is not.
+     */
+    private static boolean equalsIgnoringWhitespace(String a, String b) {
+        if (a.equals(b)) {
+            return true;
+        }
+        int i = 0;
+        int j = 0;
+        while (i < a.length() && j < b.length()) {
+            int aEnd = lineEnd(a, i);
+            int bEnd = lineEnd(b, j);
+            if (!lineEqualsIgnoringWhitespace(a, i, aEnd, b, j, bEnd)) {
+                return false;
+            }
+            i = aEnd + 1;
+            j = bEnd + 1;
+        }
+        // Both must run out of lines at the same time
+        return i >= a.length() && j >= b.length();
+    }
+
+    private static int lineEnd(String s, int start) {
+        int end = s.indexOf('\n', start);
+        return end < 0 ? s.length() : end;
+    }
+
+    private static boolean lineEqualsIgnoringWhitespace(String a, int i, int aEnd, String b, int j, int bEnd) {
+        while (true) {
+            while (i < aEnd && isInlineWhitespace(a.charAt(i))) {
+                i++;
+            }
+            while (j < bEnd && isInlineWhitespace(b.charAt(j))) {
+                j++;
+            }
+            if (i == aEnd || j == bEnd) {
+                return i == aEnd && j == bEnd;
+            }
+            if (a.charAt(i++) != b.charAt(j++)) {
+                return false;
+            }
+        }
+    }
+
+    private static boolean isInlineWhitespace(char c) {
+        return c == ' ' || c == '\t' || c == '\r';
+    }
+
     /**
      * Only retains output for markers of type {@code SearchResult} and {@code Markup}.
      */
@@ -67,45 +153,116 @@ public class ResultsContainer {
         }
     }
 
-    public @Nullable RuntimeException getFirstException() {
-        for (Result result : generated) {
-            for (RuntimeException error : getRecipeErrors(result)) {
-                return error;
-            }
-        }
-        for (Result result : deleted) {
-            for (RuntimeException error : getRecipeErrors(result)) {
-                return error;
-            }
-        }
-        for (Result result : moved) {
-            for (RuntimeException error : getRecipeErrors(result)) {
-                return error;
-            }
+    /**
+     * @return An error raised while running the recipe, if there was any. Only the first is ever reported, so this
+     * stops looking as soon as one is found, and remembers what it found.
+     */
+    public synchronized @Nullable RuntimeException getFirstException() {
+        if (!firstExceptionSearched) {
+            firstException = findFirstException();
+            firstExceptionSearched = true;
         }
-        for (Result result : refactoredInPlace) {
-            for (RuntimeException error : getRecipeErrors(result)) {
-                return error;
+        return firstException;
+    }
+
+    private @Nullable RuntimeException findFirstException() {
+        List<Result> results = new ArrayList<>(
+                generated.size() + deleted.size() + moved.size() + refactoredInPlace.size());
+        results.addAll(generated);
+        results.addAll(deleted);
+        results.addAll(moved);
+        results.addAll(refactoredInPlace);
+
+        // A recipe which fails on a source file has the error marked on the source file itself,
+        // so look there before visiting any trees
+        for (Result result : results) {
+            SourceFile after = result.getAfter();
+            if (after != null) {
+                Optional<Markup.Error> error = after.getMarkers().findFirst(Markup.Error.class);
+                if (error.isPresent()) {
+                    return recipeError(after.getSourcePath().toString(), error.get());
+                }
             }
         }
-        return null;
+        return results.parallelStream()
+                .map(ResultsContainer::findRecipeError)
+                .filter(Objects::nonNull)
+                .findFirst()
+                .orElse(null);
     }
 
-    private List<RuntimeException> getRecipeErrors(Result result) {
-        List<RuntimeException> exceptions = new ArrayList<>();
+    private static @Nullable RuntimeException findRecipeError(Result result) {
+        AtomicReference<RuntimeException> found = new AtomicReference<>();
         new TreeVisitor<Tree, Integer>() {
             @Override
             public Tree preVisit(Tree tree, Integer integer) {
-                Markers markers = tree.getMarkers();
-                markers.findFirst(Markup.Error.class).ifPresent(e -> {
+                if (found.get() != null) {
+                    stopAfterPreVisit();
+                    return tree;
+                }
+                tree.getMarkers().findFirst(Markup.Error.class).ifPresent(e -> {
                     Optional<SourceFile> sourceFile = Optional.ofNullable(getCursor().firstEnclosing(SourceFile.class));
                     String sourcePath = sourceFile.map(SourceFile::getSourcePath).map(Path::toString).orElse("<unknown>");
-                    exceptions.add(new RuntimeException("Error while visiting " + sourcePath + ": " + e.getDetail()));
+                    found.set(recipeError(sourcePath, e));
+                    stopAfterPreVisit();
                 });
                 return tree;
             }
         }.visit(result.getAfter(), 0);
-        return exceptions;
+        return found.get();
+    }
+
+    private static RuntimeException recipeError(String sourcePath, Markup.Error error) {
+        return new RuntimeException("Error while visiting " + sourcePath + ": " + error.getDetail());
+    }
+
+    /**
+     * Reduce every result to a {@link CompactResult} which keeps its printed output, and drop the results themselves
+     * along with the recipe run, so that the LSTs they reference can be garbage collected. Compacted results can be
+     * applied, but not diffed. A dry run doesn't compact, as it writes out each diff as soon as it is computed.
+     */
+    synchronized void compact(ParallelExecutor executor) {
+        if (compactGenerated != null) {
+            return;
+        }
+        // Errors are found by looking at the LSTs
+        getFirstException();
+        compactGenerated = compact(generated, executor);
+        compactDeleted = compact(deleted, executor);
+        compactMoved = compact(moved, executor);
+        compactRefactoredInPlace = compact(refactoredInPlace, executor);
+        recipeRun = null;
+    }
+
+    private static List<CompactResult> compact(List<Result> results, ParallelExecutor executor) {
+        List<CompactResult> compacted = new ArrayList<>(results.size());
+        executor.mapOrdered(results.stream(), CompactResult::compact, compacted::add);
+        results.clear();
+        return compacted;
+    }
+
+    List<CompactResult> getGenerated() {
+        return compactGenerated == null ? view(generated) : compactGenerated;
+    }
+
+    List<CompactResult> getDeleted() {
+        return compactDeleted == null ? view(deleted) : compactDeleted;
+    }
+
+    List<CompactResult> getMoved() {
+        return compactMoved == null ? view(moved) : compactMoved;
+    }
+
+    List<CompactResult> getRefactoredInPlace() {
+        return compactRefactoredInPlace == null ? view(refactoredInPlace) : compactRefactoredInPlace;
+    }
+
+    private static List<CompactResult> view(List<Result> results) {
+        List<CompactResult> view = new ArrayList<>(results.size());
+        for (Result result : results) {
+            view.add(new CompactResult(result));
+        }
+        return view;
     }
 
     public Path getProjectRoot() {
@@ -113,7 +270,8 @@ public class ResultsContainer {
     }
 
     public boolean isNotEmpty() {
-        return !generated.isEmpty() || !deleted.isEmpty() || !moved.isEmpty() || !refactoredInPlace.isEmpty();
+        return !getGenerated().isEmpty() || !getDeleted().isEmpty() || !getMoved().isEmpty() ||
+               !getRefactoredInPlace().isEmpty();
     }
 
     /**
@@ -121,13 +279,13 @@ public class ResultsContainer {
      */
     public List<Path> newlyEmptyDirectories() {
         Set<Path> maybeEmptyDirectories = new LinkedHashSet<>();
-        for (Result result : moved) {
-            assert result.getBefore() != null;
-            maybeEmptyDirectories.add(projectRoot.resolve(result.getBefore().getSourcePath()).getParent());
+        for (CompactResult result : getMoved()) {
+            assert result.getBeforePath() != null;
+            maybeEmptyDirectories.add(projectRoot.resolve(result.getBeforePath()).getParent());
         }
-        for (Result result : deleted) {
-            assert result.getBefore() != null;
-            maybeEmptyDirectories.add(projectRoot.resolve(result.getBefore().getSourcePath()).getParent());
+        for (CompactResult result : getDeleted()) {
+            assert result.getBeforePath() != null;
+            maybeEmptyDirectories.add(projectRoot.resolve(result.getBeforePath()).getParent());
         }
         if (maybeEmptyDirectories.isEmpty()) {
             return Collections.emptyList();
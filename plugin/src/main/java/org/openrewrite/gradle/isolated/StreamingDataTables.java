@@ -0,0 +1,170 @@
+/*
+ * Licensed under the Moderne Source Available License.
+ * See https://docs.moderne.io/licensing/moderne-source-available-license
+ */
+package org.openrewrite.gradle.isolated;
+
+import org.jspecify.annotations.Nullable;
+import org.openrewrite.Column;
+import org.openrewrite.DataTable;
+import org.openrewrite.ExecutionContext;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.lang.reflect.Field;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Data tables which write each row to a CSV file as soon as a recipe inserts it, instead of keeping every row on heap
+ * until the recipe run is over. The files have the same names, columns and header rows as
+ * {@link org.openrewrite.RecipeRun#exportDatatablesToCsv(Path, ExecutionContext)} would produce, and are optionally
+ * gzipped.
+ * <p>
+ * This relies on how {@link DataTable#insertRow(ExecutionContext, Object)} stores rows, which is not part of its
+ * contract: it looks up the list for its table with {@code computeIfAbsent} on the map in the
+ * {@link ExecutionContext#DATA_TABLES} message and then only ever calls {@code add} on that list. So putting
+ * {@link #getTables()} there before the run is all that it takes. The lists in it are write-only: they always appear
+ * empty, so {@link org.openrewrite.RecipeRun#getDataTables()} has no rows. {@code StreamingDataTablesTest} pins this
+ * against the version of rewrite in use.
+ */
+class StreamingDataTables implements AutoCloseable {
+    private final Path dir;
+    private final boolean compress;
+    private final ExecutionContext ctx;
+    private final AtomicLong rowCount = new AtomicLong();
+
+    private final Map<DataTable<?>, List<?>> tables = new ConcurrentHashMap<DataTable<?>, List<?>>() {
+        /**
+         * {@link DataTable#insertRow(ExecutionContext, Object)} asks for an {@link ArrayList}, which gets a writer
+         * instead.
+         */
+        @Override
+        public List<?> computeIfAbsent(DataTable<?> dataTable,
+                                       Function<? super DataTable<?>, ? extends List<?>> mappingFunction) {
+            return super.computeIfAbsent(dataTable, RowWriter::new);
+        }
+    };
+
+    /**
+     * @param compress Whether to gzip the CSV files, which are then named {@code .csv.gz}.
+     */
+    StreamingDataTables(Path dir, boolean compress, ExecutionContext ctx) {
+        this.dir = dir;
+        this.compress = compress;
+        this.ctx = ctx;
+        try {
+            Files.createDirectories(dir);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    Map<DataTable<?>, List<?>> getTables() {
+        return tables;
+    }
+
+    long getRowCount() {
+        return rowCount.get();
+    }
+
+    @Override
+    public void close() {
+        for (List<?> table : tables.values()) {
+            try {
+                ((RowWriter) table).close();
+            } catch (IOException e) {
+                ctx.getOnError().accept(e);
+            }
+        }
+    }
+
+    private static String formatForCsv(@Nullable Object data) {
+        return data == null ? "\"\"" : "\"" + data.toString().replace("\"", "\"\"") + "\"";
+    }
+
+    private class RowWriter extends AbstractList<Object> {
+        private final List<Field> columns = new ArrayList<>();
+
+        @Nullable
+        private Writer out;
+
+        private RowWriter(DataTable<?> dataTable) {
+            List<String> titles = new ArrayList<>();
+            List<String> descriptions = new ArrayList<>();
+            for (Field field : dataTable.getType().getDeclaredFields()) {
+                Column column = field.getAnnotation(Column.class);
+                if (column != null) {
+                    field.setAccessible(true);
+                    columns.add(field);
+                    titles.add(formatForCsv(column.displayName()));
+                    descriptions.add(formatForCsv(column.description()));
+                }
+            }
+            try {
+                OutputStream file = compress ?
+                        new GZIPOutputStream(Files.newOutputStream(dir.resolve(dataTable.getName() + ".csv.gz"))) :
+                        Files.newOutputStream(dir.resolve(dataTable.getName() + ".csv"));
+                out = new BufferedWriter(new OutputStreamWriter(file, StandardCharsets.UTF_8));
+                out.write(String.join(",", titles) + "\n");
+                out.write(String.join(",", descriptions) + "\n");
+            } catch (IOException e) {
+                out = null;
+                ctx.getOnError().accept(e);
+            }
+        }
+
+        @Override
+        public synchronized boolean add(Object row) {
+            if (out == null) {
+                return false;
+            }
+            List<String> values = new ArrayList<>(columns.size());
+            for (Field column : columns) {
+                try {
+                    values.add(formatForCsv(column.get(row)));
+                } catch (IllegalAccessException e) {
+                    ctx.getOnError().accept(e);
+                }
+            }
+            try {
+                out.write(String.join(",", values) + "\n");
+            } catch (IOException e) {
+                ctx.getOnError().accept(e);
+                return false;
+            }
+            rowCount.incrementAndGet();
+            return true;
+        }
+
+        @Override
+        public Object get(int index) {
+            throw new IndexOutOfBoundsException("Rows are written out as they are added, and can't be read back");
+        }
+
+        @Override
+        public int size() {
+            return 0;
+        }
+
+        private synchronized void close() throws IOException {
+            if (out != null) {
+                out.close();
+                out = null;
+            }
+        }
+    }
+}
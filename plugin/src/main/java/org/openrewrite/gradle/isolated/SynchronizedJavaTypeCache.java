@@ -0,0 +1,42 @@
+/*
+ * Licensed under the Moderne Source Available License.
+ * See https://docs.moderne.io/licensing/moderne-source-available-license
+ */
+package org.openrewrite.gradle.isolated;
+
+import org.jspecify.annotations.Nullable;
+import org.openrewrite.java.internal.JavaTypeCache;
+
+/**
+ * A {@link JavaTypeCache} that the Java, Kotlin and Groovy sources of one source set can share while they are parsed
+ * in parallel, so that the types on its classpath are attributed only once.
+ * <p>
+ * Types are cached by their signature, so a cache is never shared between source sets. Two source sets with the same
+ * classpath may each declare a class with the same fully qualified name, and would otherwise resolve each other's.
+ */
+class SynchronizedJavaTypeCache extends JavaTypeCache {
+    @Override
+    public synchronized <T> @Nullable T get(String signature) {
+        return super.get(signature);
+    }
+
+    @Override
+    public synchronized void put(String signature, Object o) {
+        super.put(signature, o);
+    }
+
+    @Override
+    public synchronized void clear() {
+        super.clear();
+    }
+
+    @Override
+    public synchronized int size() {
+        return super.size();
+    }
+
+    @Override
+    public synchronized JavaTypeCache clone() {
+        return super.clone();
+    }
+}
@@ -0,0 +1,116 @@
+/*
+ * Licensed under the Moderne Source Available License.
+ * See https://docs.moderne.io/licensing/moderne-source-available-license
+ */
+package org.openrewrite.gradle.isolated;
+
+import org.gradle.api.file.Directory;
+import org.gradle.api.file.RegularFile;
+import org.gradle.api.logging.Logger;
+import org.gradle.api.logging.Logging;
+import org.jspecify.annotations.Nullable;
+import org.openrewrite.ExecutionContext;
+import org.openrewrite.InMemoryExecutionContext;
+import org.openrewrite.Recipe;
+import org.openrewrite.SourceFile;
+import org.openrewrite.config.Environment;
+import org.openrewrite.config.YamlResourceLoader;
+import org.openrewrite.gradle.RewriteWorkParameters;
+import org.openrewrite.internal.InMemoryLargeSourceSet;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.Properties;
+
+/**
+ * Runs the active recipes against the source files that the build parsed and exported to a {@link LstDirectory}, and
+ * then reports or applies the results, all in a worker process. What is logged here shows up in the build's output.
+ */
+public class WorkerRecipeRun implements Runnable {
+    private static final Logger logger = Logging.getLogger(WorkerRecipeRun.class);
+
+    private final RewriteWorkParameters parameters;
+
+    public WorkerRecipeRun(RewriteWorkParameters parameters) {
+        this.parameters = parameters;
+    }
+
+    @Override
+    public void run() {
+        boolean dryRun = parameters.getDryRun().get();
+        ExecutionContext ctx = new InMemoryExecutionContext(throwable ->
+                logger.info(dryRun ? "Error during rewrite dry run" : "Error during rewrite run", throwable));
+
+        Recipe recipe = activateRecipes(parameters.getActiveRecipes().get());
+        DefaultProjectParser.validate(recipe, parameters.getFailOnInvalidActiveRecipes().get(), ctx);
+
+        List<SourceFile> sourceFiles = DefaultProjectParser.withAutodetectedStyles(
+                new LstDirectory(parameters.getSourcesDir().get().getAsFile().toPath()).read());
+        logger.info("Loaded {} source files", sourceFiles.size());
+
+        Directory datatablesDir = parameters.getDatatablesDir().getOrNull();
+        ResultsContainer results = new ResultsContainer(
+                parameters.getBaseDir().get().getAsFile().toPath(),
+                DefaultProjectParser.run(recipe, new InMemoryLargeSourceSet(sourceFiles),
+                        datatablesDir == null ? null : datatablesDir.getAsFile().toPath(),
+                        parameters.getCompressDatatables().get(), ctx));
+
+        int parallelism = parameters.getParallelism().get();
+        if (!dryRun && parameters.getCompactResults().get()) {
+            try (ParallelExecutor executor = new ParallelExecutor(parallelism)) {
+                results.compact(executor);
+            }
+        }
+        ResultsApplier applier = new ResultsApplier(
+                parallelism,
+                parameters.getSkipUnchangedWrites().get(),
+                parameters.getFailOnDryRunResults().get(),
+                ResultsApplier::logRecipesThatMadeChanges);
+        if (dryRun) {
+            applier.dryRun(parameters.getReportPath().get().getAsFile().toPath(), results);
+        } else {
+            applier.run(results, ctx);
+        }
+    }
+
+    private Recipe activateRecipes(List<String> activeRecipes) {
+        ClassLoader classLoader = getClass().getClassLoader();
+        Properties properties = new Properties();
+        properties.putAll(parameters.getProperties().get());
+
+        RegularFile configFile = parameters.getConfigFile().getOrNull();
+        YamlResourceLoader rewriteConfig = null;
+        if (configFile != null && configFile.getAsFile().exists()) {
+            File file = configFile.getAsFile();
+            try (FileInputStream is = new FileInputStream(file)) {
+                rewriteConfig = new YamlResourceLoader(is, file.toURI(), properties, classLoader);
+            } catch (IOException e) {
+                throw new RuntimeException("Unable to load rewrite configuration", e);
+            }
+        }
+
+        Directory catalogDir = parameters.getRecipeCatalogDir().getOrNull();
+        if (catalogDir != null) {
+            RecipeCatalog catalog = RecipeCatalog.load(catalogDir.getAsFile().toPath(), classLoader, properties);
+            if (catalog != null) {
+                Recipe recipe = catalog.activateRecipes(activeRecipes, withConfig(Environment.builder(), rewriteConfig));
+                if (recipe != null) {
+                    return recipe;
+                }
+                logger.info("Not all active recipes are in the recipe catalog, scanning the classpath for them");
+            }
+        }
+        Environment.Builder env = Environment.builder();
+        env.scanClassLoader(classLoader);
+        return withConfig(env, rewriteConfig).build().activateRecipes(activeRecipes);
+    }
+
+    private static Environment.Builder withConfig(Environment.Builder env, @Nullable YamlResourceLoader rewriteConfig) {
+        if (rewriteConfig != null) {
+            env.load(rewriteConfig);
+        }
+        return env;
+    }
+}
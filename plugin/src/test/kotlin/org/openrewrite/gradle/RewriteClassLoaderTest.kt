@@ -0,0 +1,124 @@
+/*
+ * Licensed under the Moderne Source Available License.
+ * See https://docs.moderne.io/licensing/moderne-source-available-license
+ */
+package org.openrewrite.gradle
+
+import org.assertj.core.api.Assertions.assertThat
+import org.assertj.core.api.Assertions.assertThatThrownBy
+import org.junit.jupiter.api.Assumptions.assumeFalse
+import org.junit.jupiter.api.Test
+import org.junit.jupiter.api.io.TempDir
+import java.nio.file.Files
+import java.nio.file.Path
+import java.util.concurrent.Callable
+import java.util.concurrent.Executors
+import java.util.concurrent.TimeUnit
+import java.util.jar.Attributes
+import java.util.jar.JarEntry
+import java.util.jar.JarOutputStream
+import java.util.jar.Manifest
+
+class RewriteClassLoaderTest {
+    @TempDir
+    lateinit var dir: Path
+
+    private val pathTrie = "org.openrewrite.gradle.isolated.PathTrie"
+    private val pathTrieEntry = "org/openrewrite/gradle/isolated/PathTrie.class"
+
+    private fun classBytes(entryName: String): ByteArray =
+        javaClass.classLoader.getResourceAsStream(entryName)!!.use { it.readBytes() }
+
+    private fun jar(name: String, entries: Map<String, ByteArray>, multiRelease: Boolean = false): Path {
+        val jar = dir.resolve(name)
+        val manifest = Manifest()
+        manifest.mainAttributes[Attributes.Name.MANIFEST_VERSION] = "1.0"
+        if (multiRelease) {
+            manifest.mainAttributes[Attributes.Name("Multi-Release")] = "true"
+        }
+        JarOutputStream(Files.newOutputStream(jar), manifest).use { out ->
+            for ((entryName, bytes) in entries) {
+                out.putNextEntry(JarEntry(entryName))
+                out.write(bytes)
+                out.closeEntry()
+            }
+        }
+        return jar
+    }
+
+    private fun classLoader(vararg artifacts: Path) =
+        RewriteClassLoader(artifacts.map { it.toUri().toURL() })
+
+    @Test
+    fun `classes are read from the artifact that contains them`() {
+        val empty = jar("empty.jar", mapOf("org/openrewrite/gradle/isolated/README.txt" to ByteArray(0)))
+        val jar = jar("isolated.jar", mapOf(pathTrieEntry to classBytes(pathTrieEntry)))
+        classLoader(empty, jar).use { classLoader ->
+            val loaded = classLoader.loadClass(pathTrie)
+            assertThat(loaded.classLoader).isSameAs(classLoader)
+            assertThat(loaded.protectionDomain.codeSource.location).isEqualTo(jar.toUri().toURL())
+            assertThat(loaded.`package`.name).isEqualTo("org.openrewrite.gradle.isolated")
+            assertThat(classLoader.loadClass(pathTrie)).isSameAs(loaded)
+        }
+    }
+
+    @Test
+    fun `classes of a class directory are found`() {
+        val classes = dir.resolve("classes")
+        val file = classes.resolve(pathTrieEntry)
+        Files.createDirectories(file.parent)
+        Files.write(file, classBytes(pathTrieEntry))
+        classLoader(classes).use { classLoader ->
+            assertThat(classLoader.loadClass(pathTrie).classLoader).isSameAs(classLoader)
+        }
+    }
+
+    @Test
+    fun `classes of a multi-release jar are found`() {
+        assumeFalse(System.getProperty("java.specification.version") == "1.8", "Java 8 doesn't read multi-release jars")
+        val jar = jar("multi-release.jar", mapOf("META-INF/versions/9/$pathTrieEntry" to classBytes(pathTrieEntry)), true)
+        classLoader(jar).use { classLoader ->
+            assertThat(classLoader.loadClass(pathTrie).classLoader).isSameAs(classLoader)
+        }
+    }
+
+    @Test
+    fun `classes shared with the build are loaded by the parent`() {
+        val jar = jar("isolated.jar", mapOf(pathTrieEntry to classBytes(pathTrieEntry)))
+        classLoader(jar).use { classLoader ->
+            assertThat(classLoader.loadClass("org.openrewrite.gradle.RewriteExtension"))
+                .isSameAs(RewriteExtension::class.java)
+            assertThat(classLoader.loadClass("org.gradle.api.Project"))
+                .isSameAs(org.gradle.api.Project::class.java)
+        }
+    }
+
+    @Test
+    fun `classes in none of the artifacts are loaded by the parent`() {
+        val jar = jar("isolated.jar", mapOf(pathTrieEntry to classBytes(pathTrieEntry)))
+        classLoader(jar).use { classLoader ->
+            assertThat(classLoader.loadClass("java.lang.String")).isSameAs(String::class.java)
+            // The package is indexed, but this class is not in it
+            assertThat(classLoader.loadClass("org.openrewrite.gradle.isolated.ExclusionMatcher").classLoader)
+                .isSameAs(javaClass.classLoader)
+            assertThatThrownBy { classLoader.loadClass("com.acme.Missing") }
+                .isInstanceOf(ClassNotFoundException::class.java)
+        }
+    }
+
+    @Test
+    fun `a class loaded concurrently is defined once`() {
+        val jar = jar("isolated.jar", mapOf(pathTrieEntry to classBytes(pathTrieEntry)))
+        classLoader(jar).use { classLoader ->
+            val pool = Executors.newFixedThreadPool(8)
+            try {
+                val loaded = pool.invokeAll((0 until 32).map { Callable { classLoader.loadClass(pathTrie) } })
+                    .map { it.get(30, TimeUnit.SECONDS) }
+                assertThat(loaded.toSet()).hasSize(1)
+                assertThat(loaded[0].classLoader).isSameAs(classLoader)
+            } finally {
+                pool.shutdown()
+            }
+        }
+    }
+}
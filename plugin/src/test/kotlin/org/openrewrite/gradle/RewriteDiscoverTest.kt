@@ -54,4 +54,51 @@ class RewriteDiscoverTest : RewritePluginTest {
 
         assertThat(result.output).contains("Configured with 2 active recipes and 1 active styles.")
     }
+
+    // rewriteRun and rewriteDryRun parse the project, so only rewriteDiscover can be restored from the configuration
+    // cache. notCompatibleWithConfigurationCache, which the others rely on, is only available on Gradle 7.4+.
+    @DisabledIf("lessThanGradle7_4")
+    @Test
+    fun `rewriteDiscover is restored from the configuration cache`(
+        @TempDir projectDir: File
+    ) {
+        gradleProject(projectDir) {
+            rewriteYaml("""
+                type: specs.openrewrite.org/v1beta/recipe
+                name: org.openrewrite.test.SayHello
+                displayName: Say hello
+                description: Replaces every text with a greeting.
+                recipeList:
+                  - org.openrewrite.text.ChangeText:
+                      toText: Hello
+            """)
+            buildGradle("""
+                plugins {
+                    id("java")
+                    id("org.openrewrite.rewrite")
+                }
+
+                repositories {
+                    mavenLocal()
+                    mavenCentral()
+                    maven {
+                        url = uri("https://oss.sonatype.org/content/repositories/snapshots")
+                    }
+                }
+
+                rewrite {
+                    activeRecipe("org.openrewrite.test.SayHello")
+                }
+            """)
+        }
+        val first = runGradle(projectDir, taskName(), "--configuration-cache")
+        assertThat(first.task(":${taskName()}")!!.outcome).isEqualTo(TaskOutcome.SUCCESS)
+        assertThat(first.output).doesNotContain("Reusing configuration cache")
+
+        val second = runGradle(projectDir, taskName(), "--configuration-cache")
+        assertThat(second.task(":${taskName()}")!!.outcome).isEqualTo(TaskOutcome.SUCCESS)
+        assertThat(second.output)
+            .contains("Reusing configuration cache")
+            .contains("Configured with 1 active recipes and 0 active styles.")
+    }
 }
@@ -14,6 +14,9 @@ import org.junit.jupiter.params.ParameterizedTest
 import org.junit.jupiter.params.provider.ValueSource
 import org.openrewrite.Issue
 import java.io.File
+import java.nio.charset.StandardCharsets
+import java.util.jar.JarEntry
+import java.util.jar.JarOutputStream
 
 @Suppress("GroovyUnusedAssignment")
 class RewriteDryRunTest : RewritePluginTest {
@@ -79,6 +82,8 @@ class RewriteDryRunTest : RewritePluginTest {
             File(projectDir, "src/main/java/org/openrewrite/before/HelloWorld.java").readText()
         ).isEqualTo(helloWorld)
         assertThat(File(projectDir, "build/reports/rewrite/rewrite.patch").exists()).isTrue
+        assertThat(File(projectDir, "build/reports/rewrite/rewrite-summary.json").readText())
+            .contains("org.openrewrite.gradle.SayHello")
     }
 
     @Test
@@ -125,6 +130,535 @@ class RewriteDryRunTest : RewritePluginTest {
         assertThat(File(projectDir, "build/reports/rewrite/rewrite.patch").exists()).isTrue
     }
 
+    @Test
+    fun `rewriteDryRun is up to date until its sources change`() {
+        gradleProject(projectDir) {
+            buildGradle(
+                """
+                plugins {
+                    id("java")
+                    id("org.openrewrite.rewrite")
+                }
+
+                repositories {
+                    mavenLocal()
+                    mavenCentral()
+                    maven {
+                       url = uri("https://oss.sonatype.org/content/repositories/snapshots")
+                    }
+                }
+
+                rewrite {
+                    activeRecipe("org.openrewrite.java.OrderImports")
+                }
+            """
+            )
+            sourceSet("main") {
+                java(
+                    """
+                    package org.openrewrite.before;
+
+                    import java.util.List;
+                    import java.util.ArrayList;
+
+                    public class HelloWorld {
+                    }
+                """
+                )
+            }
+        }
+
+        assertThat(runGradle(projectDir, taskName()).task(":${taskName()}")!!.outcome)
+            .isEqualTo(TaskOutcome.SUCCESS)
+        assertThat(runGradle(projectDir, taskName()).task(":${taskName()}")!!.outcome)
+            .isEqualTo(TaskOutcome.UP_TO_DATE)
+
+        File(projectDir, "src/main/java/org/openrewrite/before/HelloWorld.java").appendText("\n")
+        assertThat(runGradle(projectDir, taskName()).task(":${taskName()}")!!.outcome)
+            .isEqualTo(TaskOutcome.SUCCESS)
+    }
+
+    @Test
+    fun `only projects that changed are parsed again`() {
+        gradleProject(projectDir) {
+            rewriteYaml(
+                """
+                type: specs.openrewrite.org/v1beta/recipe
+                name: org.openrewrite.ChangeFooToBar
+                recipeList:
+                  - org.openrewrite.properties.ChangePropertyKey:
+                      oldPropertyKey: foo
+                      newPropertyKey: bar
+            """
+            )
+            buildGradle(
+                """
+                plugins {
+                    id("org.openrewrite.rewrite")
+                    id("java")
+                }
+
+                rewrite {
+                    activeRecipe("org.openrewrite.ChangeFooToBar")
+                    parseEachProjectSeparately = true
+                }
+
+                repositories {
+                    mavenLocal()
+                    mavenCentral()
+                    maven {
+                       url = uri("https://oss.sonatype.org/content/repositories/snapshots")
+                    }
+                }
+
+                subprojects {
+                    apply plugin: "java"
+
+                    repositories {
+                        mavenCentral()
+                    }
+                }
+            """
+            )
+            subproject("a") {
+                sourceSet("main") {
+                    propertiesFile("a.properties", "foo=baz\n")
+                }
+            }
+            subproject("b") {
+                sourceSet("main") {
+                    propertiesFile("b.properties", "foo=baz\n")
+                }
+            }
+        }
+
+        val first = runGradle(projectDir, taskName(), "--parallel")
+        assertThat(first.task(":${taskName()}")!!.outcome).isEqualTo(TaskOutcome.SUCCESS)
+        assertThat(first.task(":a:rewriteParse")!!.outcome).isEqualTo(TaskOutcome.SUCCESS)
+        assertThat(first.task(":b:rewriteParse")!!.outcome).isEqualTo(TaskOutcome.SUCCESS)
+
+        val unchanged = runGradle(projectDir, taskName(), "--parallel")
+        assertThat(unchanged.task(":${taskName()}")!!.outcome).isEqualTo(TaskOutcome.UP_TO_DATE)
+        assertThat(unchanged.task(":a:rewriteParse")!!.outcome).isEqualTo(TaskOutcome.UP_TO_DATE)
+        assertThat(unchanged.task(":b:rewriteParse")!!.outcome).isEqualTo(TaskOutcome.UP_TO_DATE)
+
+        File(projectDir, "a/src/main/resources/a.properties").writeText("foo=qux\n")
+        val changed = runGradle(projectDir, taskName(), "--parallel")
+        assertThat(changed.task(":${taskName()}")!!.outcome).isEqualTo(TaskOutcome.SUCCESS)
+        assertThat(changed.task(":a:rewriteParse")!!.outcome).isEqualTo(TaskOutcome.SUCCESS)
+        assertThat(changed.task(":b:rewriteParse")!!.outcome).isEqualTo(TaskOutcome.UP_TO_DATE)
+        assertThat(File(projectDir, "build/reports/rewrite/rewrite.patch").readText())
+            .contains("-foo=qux")
+            .contains("+bar=qux")
+            .contains("-foo=baz")
+    }
+
+    @Test
+    fun `rewriteDryRun runs again when the classpath of a source set changes`() {
+        gradleProject(projectDir) {
+            buildGradle(
+                """
+                plugins {
+                    id("java")
+                    id("org.openrewrite.rewrite")
+                }
+
+                repositories {
+                    mavenLocal()
+                    mavenCentral()
+                    maven {
+                       url = uri("https://oss.sonatype.org/content/repositories/snapshots")
+                    }
+                }
+
+                dependencies {
+                    compileOnly(files("build/libs/extra.jar"))
+                }
+
+                rewrite {
+                    activeRecipe("org.openrewrite.java.OrderImports")
+                }
+            """
+            )
+            sourceSet("main") {
+                java(
+                    """
+                    package org.openrewrite.before;
+
+                    import java.util.List;
+                    import java.util.ArrayList;
+
+                    public class HelloWorld {
+                    }
+                """
+                )
+            }
+        }
+        // Kept in the build directory, which isn't parsed, so that only the classpath sees it change
+        val extraJar = File(projectDir, "build/libs/extra.jar")
+        fun writeExtraJar(text: String) {
+            extraJar.parentFile.mkdirs()
+            JarOutputStream(extraJar.outputStream()).use { out ->
+                out.putNextEntry(JarEntry("extra.txt"))
+                out.write(text.toByteArray())
+                out.closeEntry()
+            }
+        }
+
+        writeExtraJar("one")
+        assertThat(runGradle(projectDir, taskName()).task(":${taskName()}")!!.outcome)
+            .isEqualTo(TaskOutcome.SUCCESS)
+        assertThat(runGradle(projectDir, taskName()).task(":${taskName()}")!!.outcome)
+            .isEqualTo(TaskOutcome.UP_TO_DATE)
+
+        writeExtraJar("two")
+        assertThat(runGradle(projectDir, taskName()).task(":${taskName()}")!!.outcome)
+            .isEqualTo(TaskOutcome.SUCCESS)
+    }
+
+    @Test
+    fun `rewriteDryRun of the same sources checked out somewhere else is taken from the build cache`() {
+        // Both checkouts have the same name, which is the name of the root project
+        val checkouts = listOf(File(projectDir, "first/checkout"), File(projectDir, "second/checkout"))
+        for (checkout in checkouts) {
+            gradleProject(checkout) {
+                buildGradle(
+                    """
+                    plugins {
+                        id("java")
+                        id("org.openrewrite.rewrite")
+                    }
+
+                    repositories {
+                        mavenLocal()
+                        mavenCentral()
+                        maven {
+                           url = uri("https://oss.sonatype.org/content/repositories/snapshots")
+                        }
+                    }
+
+                    rewrite {
+                        activeRecipe("org.openrewrite.java.OrderImports")
+                    }
+                """
+                )
+                sourceSet("main") {
+                    java(
+                        """
+                        package org.openrewrite.before;
+
+                        import java.util.List;
+                        import java.util.ArrayList;
+
+                        public class HelloWorld {
+                        }
+                    """
+                    )
+                }
+            }
+            File(checkout, "settings.gradle").appendText(
+                """
+
+                buildCache {
+                    local {
+                        directory = new File(settingsDir, "../../build-cache")
+                    }
+                }
+                """.trimIndent()
+            )
+        }
+
+        val first = runGradle(checkouts[0], taskName(), "--build-cache")
+        assertThat(first.task(":${taskName()}")!!.outcome).isEqualTo(TaskOutcome.SUCCESS)
+
+        val second = runGradle(checkouts[1], taskName(), "--build-cache")
+        assertThat(second.task(":${taskName()}")!!.outcome).isEqualTo(TaskOutcome.FROM_CACHE)
+        assertThat(File(checkouts[1], "build/reports/rewrite/rewrite.patch").readText())
+            .isEqualTo(File(checkouts[0], "build/reports/rewrite/rewrite.patch").readText())
+        // Its results are logged from the summary that was restored along with the report
+        assertThat(second.output)
+            .contains("The results of the dry run were taken from the build cache.")
+            .contains("Recipes would make changes to src/main/java/org/openrewrite/before/HelloWorld.java")
+            .contains("    org.openrewrite.java.OrderImports (")
+            .contains("Report available:")
+    }
+
+    @Test
+    fun `the results of the shards of rewriteDryRun can be merged`() {
+        gradleProject(projectDir) {
+            buildGradle(
+                """
+                plugins {
+                    id("java")
+                    id("org.openrewrite.rewrite")
+                }
+
+                repositories {
+                    mavenLocal()
+                    mavenCentral()
+                    maven {
+                       url = uri("https://oss.sonatype.org/content/repositories/snapshots")
+                    }
+                }
+
+                rewrite {
+                    activeRecipe("org.openrewrite.java.OrderImports")
+                }
+            """
+            )
+            sourceSet("main") {
+                java(
+                    """
+                    package org.openrewrite.before;
+
+                    import java.util.List;
+                    import java.util.ArrayList;
+
+                    public class HelloWorld {
+                    }
+                """
+                )
+            }
+        }
+
+        assertThat(runGradle(projectDir, taskName(), "--shard=1/1").task(":${taskName()}")!!.outcome)
+            .isEqualTo(TaskOutcome.SUCCESS)
+        val shardPatch = File(projectDir, "build/reports/rewrite/shard-1-of-1/rewrite.patch")
+        assertThat(shardPatch).exists()
+        assertThat(File(projectDir, "build/reports/rewrite/rewrite.patch")).doesNotExist()
+
+        assertThat(runGradle(projectDir, "rewriteMergeResults").task(":rewriteMergeResults")!!.outcome)
+            .isEqualTo(TaskOutcome.SUCCESS)
+        assertThat(File(projectDir, "build/reports/rewrite/rewrite.patch").readText())
+            .isEqualTo(shardPatch.readText())
+        assertThat(File(projectDir, "build/reports/rewrite/rewrite-summary.json").readText())
+            .contains("org.openrewrite.java.OrderImports")
+    }
+
+    @Test
+    fun `the shards of a multi-project dry run are disjoint and merge into the unsharded results`() {
+        gradleProject(projectDir) {
+            rewriteYaml(
+                """
+                type: specs.openrewrite.org/v1beta/recipe
+                name: org.openrewrite.ChangeFooToBar
+                recipeList:
+                  - org.openrewrite.properties.ChangePropertyKey:
+                      oldPropertyKey: foo
+                      newPropertyKey: bar
+            """
+            )
+            buildGradle(
+                """
+                plugins {
+                    id("org.openrewrite.rewrite")
+                    id("java")
+                }
+
+                rewrite {
+                    activeRecipe("org.openrewrite.ChangeFooToBar")
+                }
+
+                repositories {
+                    mavenLocal()
+                    mavenCentral()
+                    maven {
+                       url = uri("https://oss.sonatype.org/content/repositories/snapshots")
+                    }
+                }
+
+                subprojects {
+                    apply plugin: "java"
+
+                    repositories {
+                        mavenCentral()
+                    }
+                }
+            """
+            )
+            sourceSet("main") {
+                propertiesFile("root.properties", "foo=baz\n")
+            }
+            for (name in listOf("a", "b", "c")) {
+                subproject(name) {
+                    sourceSet("main") {
+                        propertiesFile("$name.properties", "foo=baz\n")
+                    }
+                }
+            }
+        }
+        // The diff of each file, by the file it is of
+        fun diffs(patch: File): Map<String, String> = if (!patch.exists()) emptyMap() else
+            patch.readText().split("diff --git ")
+                .filter { it.isNotBlank() }
+                .associateBy { it.lineSequence().first() }
+
+        assertThat(runGradle(projectDir, taskName()).task(":${taskName()}")!!.outcome)
+            .isEqualTo(TaskOutcome.SUCCESS)
+        val unsharded = diffs(File(projectDir, "build/reports/rewrite/rewrite.patch"))
+        assertThat(unsharded).hasSize(4)
+
+        for (shard in listOf("1/2", "2/2")) {
+            assertThat(runGradle(projectDir, taskName(), "--shard=$shard").task(":${taskName()}")!!.outcome)
+                .isEqualTo(TaskOutcome.SUCCESS)
+        }
+        val first = diffs(File(projectDir, "build/reports/rewrite/shard-1-of-2/rewrite.patch"))
+        val second = diffs(File(projectDir, "build/reports/rewrite/shard-2-of-2/rewrite.patch"))
+        assertThat(first.keys).doesNotContainAnyElementsOf(second.keys)
+        assertThat(first + second).isEqualTo(unsharded)
+
+        assertThat(runGradle(projectDir, "rewriteMergeResults").task(":rewriteMergeResults")!!.outcome)
+            .isEqualTo(TaskOutcome.SUCCESS)
+        assertThat(diffs(File(projectDir, "build/reports/rewrite/rewrite.patch"))).isEqualTo(unsharded)
+    }
+
+    @DisabledIf("lessThanGradle6_1")
+    @Test
+    fun `a parallel dry run of Java, Kotlin and Groovy projects makes the same patch as a serial one`() {
+        gradleProject(projectDir) {
+            rewriteYaml(
+                """
+                type: specs.openrewrite.org/v1beta/recipe
+                name: org.openrewrite.FindStrings
+                recipeList:
+                  - org.openrewrite.java.search.FindTypes:
+                      fullyQualifiedTypeName: java.lang.String
+                  - org.openrewrite.java.search.FindTypes:
+                      fullyQualifiedTypeName: kotlin.String
+                  - org.openrewrite.properties.ChangePropertyKey:
+                      oldPropertyKey: foo
+                      newPropertyKey: bar
+            """
+            )
+            buildGradle(
+                """
+                plugins {
+                    id("org.openrewrite.rewrite")
+                }
+
+                rewrite {
+                    activeRecipe("org.openrewrite.FindStrings")
+                    parallelism = Integer.parseInt(findProperty("rewriteParallelism") ?: "1")
+                }
+
+                repositories {
+                    mavenLocal()
+                    mavenCentral()
+                    maven {
+                       url = uri("https://oss.sonatype.org/content/repositories/snapshots")
+                    }
+                }
+            """
+            )
+            subproject("java") {
+                buildGradle(
+                    """
+                    plugins {
+                        id("java")
+                    }
+
+                    repositories {
+                        mavenCentral()
+                    }
+
+                    tasks.compileJava {
+                        options.encoding = "ISO-8859-1"
+                    }
+                """
+                )
+                sourceSet("main", sourceCharset = StandardCharsets.ISO_8859_1) {
+                    for (i in 1..8) {
+                        java(
+                            """
+                            package org.openrewrite.java;
+
+                            public class Greeting$i {
+                                public String greet(String name) {
+                                    return "Grüß dich, " + name + " ($i)";
+                                }
+                            }
+                        """
+                        )
+                    }
+                    propertiesFile("java.properties", "foo=baz\n")
+                }
+            }
+            subproject("kotlin") {
+                buildGradle(
+                    """
+                    plugins {
+                        id("org.jetbrains.kotlin.jvm") version("1.8.0")
+                    }
+
+                    repositories {
+                        mavenCentral()
+                    }
+                """
+                )
+                sourceSet("main") {
+                    for (i in 1..8) {
+                        kotlin(
+                            """
+                            package org.openrewrite.kotlin
+
+                            class Greeting$i {
+                                fun greet(name: String): String = "Hello, " + name + " ($i)"
+                            }
+                        """
+                        )
+                    }
+                }
+            }
+            subproject("groovy") {
+                buildGradle(
+                    """
+                    plugins {
+                        id("groovy")
+                    }
+
+                    repositories {
+                        mavenCentral()
+                    }
+
+                    dependencies {
+                        implementation(localGroovy())
+                    }
+                """
+                )
+                sourceSet("main") {
+                    for (i in 1..8) {
+                        groovyClass(
+                            """
+                            package org.openrewrite.groovy
+
+                            class Greeting$i {
+                                String greet(String name) {
+                                    "Hello, " + name + " ($i)"
+                                }
+                            }
+                        """
+                        )
+                    }
+                    propertiesFile("groovy.properties", "foo=baz\n")
+                }
+            }
+        }
+        val patch = File(projectDir, "build/reports/rewrite/rewrite.patch")
+
+        assertThat(runGradle(projectDir, taskName(), "-PrewriteParallelism=1").task(":${taskName()}")!!.outcome)
+            .isEqualTo(TaskOutcome.SUCCESS)
+        val serial = patch.readBytes()
+        assertThat(String(serial, StandardCharsets.UTF_8))
+            .contains("a/java/src/main/java/org/openrewrite/java/Greeting1.java")
+            .contains("a/groovy/src/main/resources/groovy.properties")
+
+        assertThat(
+            runGradle(projectDir, taskName(), "-PrewriteParallelism=4", "--rerun-tasks")
+                .task(":${taskName()}")!!.outcome
+        ).isEqualTo(TaskOutcome.SUCCESS)
+        assertThat(patch.readBytes()).isEqualTo(serial)
+    }
+
     @DisabledIf("lessThanGradle6_1")
     @Test
     fun multiplatform() {
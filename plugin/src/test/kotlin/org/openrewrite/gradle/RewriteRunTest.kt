@@ -357,6 +357,185 @@ class RewriteRunTest : RewritePluginTest {
         assertThat(propertiesFile.readText()).isEqualTo("bar=baz\n")
     }
 
+    @Test
+    fun `recipes can run in a worker process`(
+        @TempDir projectDir: File
+    ) {
+        gradleProject(projectDir) {
+            rewriteYaml(
+                """
+                type: specs.openrewrite.org/v1beta/recipe
+                name: org.openrewrite.UseLinkedList
+                recipeList:
+                  - org.openrewrite.java.ChangeType:
+                      oldFullyQualifiedTypeName: java.util.ArrayList
+                      newFullyQualifiedTypeName: java.util.LinkedList
+                  - org.openrewrite.properties.ChangePropertyKey:
+                      oldPropertyKey: foo
+                      newPropertyKey: bar
+            """
+            )
+            buildGradle(
+                """
+                plugins {
+                    id("org.openrewrite.rewrite")
+                    id("java")
+                }
+
+                rewrite {
+                    activeRecipe("org.openrewrite.UseLinkedList")
+                    runInWorkerProcess = true
+                }
+
+                repositories {
+                    mavenLocal()
+                    mavenCentral()
+                    maven {
+                       url = uri("https://oss.sonatype.org/content/repositories/snapshots")
+                    }
+                }
+
+                subprojects {
+                    apply plugin: "java"
+
+                    repositories {
+                        mavenCentral()
+                    }
+                }
+            """
+            )
+            subproject("a") {
+                sourceSet("main") {
+                    java(
+                        """
+                        package com.foo;
+
+                        import java.util.ArrayList;
+
+                        class A {
+                            ArrayList<String> names = new ArrayList<>();
+                        }
+                    """
+                    )
+                    propertiesFile("a.properties", "foo=baz\n")
+                }
+            }
+            subproject("b") {
+                sourceSet("main") {
+                    java(
+                        """
+                        package com.foo;
+
+                        import java.util.ArrayList;
+
+                        class B {
+                            ArrayList<Integer> numbers = new ArrayList<>();
+                        }
+                    """
+                    )
+                }
+            }
+        }
+
+        val result = runGradle(projectDir, taskName())
+        assertThat(result.task(":${taskName()}")!!.outcome).isEqualTo(TaskOutcome.SUCCESS)
+        if (!lessThanGradle6_1()) {
+            assertThat(result.output).contains("running active recipes in a worker process")
+        }
+
+        // Types survive being handed to the worker process, as the recipes that need them still apply
+        //language=java
+        assertThat(File(projectDir, "a/src/main/java/com/foo/A.java").readText()).isEqualTo(
+            """
+            package com.foo;
+
+            import java.util.LinkedList;
+
+            class A {
+                LinkedList<String> names = new LinkedList<>();
+            }
+            """.trimIndent()
+        )
+        //language=java
+        assertThat(File(projectDir, "b/src/main/java/com/foo/B.java").readText()).isEqualTo(
+            """
+            package com.foo;
+
+            import java.util.LinkedList;
+
+            class B {
+                LinkedList<Integer> numbers = new LinkedList<>();
+            }
+            """.trimIndent()
+        )
+        assertThat(File(projectDir, "a/src/main/resources/a.properties").readText()).isEqualTo("bar=baz\n")
+    }
+
+    @Test
+    fun `each project can be parsed separately`(
+        @TempDir projectDir: File
+    ) {
+        gradleProject(projectDir) {
+            rewriteYaml(
+                """
+                type: specs.openrewrite.org/v1beta/recipe
+                name: org.openrewrite.ChangeFooToBar
+                recipeList:
+                  - org.openrewrite.properties.ChangePropertyKey:
+                      oldPropertyKey: foo
+                      newPropertyKey: bar
+            """
+            )
+            buildGradle(
+                """
+                plugins {
+                    id("org.openrewrite.rewrite")
+                    id("java")
+                }
+
+                rewrite {
+                    activeRecipe("org.openrewrite.ChangeFooToBar")
+                    parseEachProjectSeparately = true
+                }
+
+                repositories {
+                    mavenLocal()
+                    mavenCentral()
+                    maven {
+                       url = uri("https://oss.sonatype.org/content/repositories/snapshots")
+                    }
+                }
+
+                subprojects {
+                    apply plugin: "java"
+
+                    repositories {
+                        mavenCentral()
+                    }
+                }
+            """
+            )
+            subproject("a") {
+                sourceSet("main") {
+                    propertiesFile("a.properties", "foo=baz\n")
+                }
+            }
+            subproject("b") {
+                sourceSet("main") {
+                    propertiesFile("b.properties", "foo=baz\n")
+                }
+            }
+        }
+
+        val result = runGradle(projectDir, taskName(), "--parallel")
+        assertThat(result.task(":${taskName()}")!!.outcome).isEqualTo(TaskOutcome.SUCCESS)
+        assertThat(result.task(":a:rewriteParse")!!.outcome).isEqualTo(TaskOutcome.SUCCESS)
+        assertThat(result.task(":b:rewriteParse")!!.outcome).isEqualTo(TaskOutcome.SUCCESS)
+
+        assertThat(File(projectDir, "a/src/main/resources/a.properties").readText()).isEqualTo("bar=baz\n")
+        assertThat(File(projectDir, "b/src/main/resources/b.properties").readText()).isEqualTo("bar=baz\n")
+    }
+
     @Test
     fun `resources in subproject committed to git are correctly processed`(
         @TempDir projectDir: File
@@ -0,0 +1,80 @@
+/*
+ * Licensed under the Moderne Source Available License.
+ * See https://docs.moderne.io/licensing/moderne-source-available-license
+ */
+package org.openrewrite.gradle.isolated
+
+import org.assertj.core.api.Assertions.assertThat
+import org.junit.jupiter.api.Test
+import org.junit.jupiter.params.ParameterizedTest
+import org.junit.jupiter.params.provider.CsvSource
+import java.nio.file.FileSystems
+import java.nio.file.Paths
+
+class ExclusionMatcherTest {
+
+    @ParameterizedTest
+    @CsvSource(
+        delimiter = '|',
+        value = [
+            "**/generated/**       | a/generated/A.java",
+            "**/generated/**       | generated/A.java",
+            "**/generated/**       | a/generated",
+            "*.properties          | gradle.properties",
+            "*.properties          | a/gradle.properties",
+            "**.properties         | a/gradle.properties",
+            "**/build.gradle       | build.gradle",
+            "**/build.gradle       | a/b/build.gradle",
+            "{a,b}/**              | a/A.java",
+            "{a,b}/**              | b/B.java",
+            "{a,b}/**              | c/C.java",
+            "src/[!t]*/**          | src/main/A.java",
+            "src/[!t]*/**          | src/test/A.java",
+            "src/[a-m]*/**         | src/main/A.java",
+            "src/[a-m]*/**         | src/test/A.java",
+            "A?.java               | AB.java",
+            "A?.java               | A.java",
+            "legacy\\{1\\}/**      | legacy{1}/A.java",
+            "legacy\\{1\\}/**      | legacy1/A.java",
+            "a.b/**                | a.b/A.java",
+            "a.b/**                | axb/A.java",
+        ]
+    )
+    fun `globs match like the default file system's path matcher`(glob: String, path: String) {
+        val jdk = FileSystems.getDefault().getPathMatcher("glob:$glob")
+        val p = Paths.get(path)
+        assertThat(ExclusionMatcher(listOf(glob)).matches(p)).isEqualTo(jdk.matches(p))
+    }
+
+    @Test
+    fun `a path is excluded when any glob matches it`() {
+        val matcher = ExclusionMatcher(listOf("legacy/**", "**/*.bak"))
+        assertThat(matcher.isExcluded(Paths.get("legacy/A.java"))).isTrue()
+        assertThat(matcher.isExcluded(Paths.get("src/A.java.bak"))).isTrue()
+        assertThat(matcher.isExcluded(Paths.get("src/A.java"))).isFalse()
+    }
+
+    @Test
+    fun `globs for any directory also exclude files at the repository root`() {
+        val matcher = ExclusionMatcher(listOf("**/build.gradle"))
+        assertThat(matcher.matches(Paths.get("build.gradle"))).isFalse()
+        assertThat(matcher.isExcluded(Paths.get("build.gradle"))).isTrue()
+    }
+
+    @Test
+    fun `directories are excluded by globs that match the directory itself`() {
+        val matcher = ExclusionMatcher(listOf("**/node_modules", "legacy/**"))
+        assertThat(matcher.isExcludedDirectory(Paths.get("web/node_modules"))).isTrue()
+        assertThat(matcher.isExcludedDirectory(Paths.get("legacy"))).isFalse()
+        assertThat(matcher.isExcludedDirectory(Paths.get("legacy/a"))).isTrue()
+        // The verdict is remembered
+        assertThat(matcher.isExcludedDirectory(Paths.get("web/node_modules"))).isTrue()
+    }
+
+    @Test
+    fun `nothing is excluded without globs`() {
+        val matcher = ExclusionMatcher(emptyList())
+        assertThat(matcher.isExcluded(Paths.get("a/A.java"))).isFalse()
+        assertThat(matcher.isExcludedDirectory(Paths.get("a"))).isFalse()
+    }
+}
@@ -0,0 +1,87 @@
+/*
+ * Licensed under the Moderne Source Available License.
+ * See https://docs.moderne.io/licensing/moderne-source-available-license
+ */
+package org.openrewrite.gradle.isolated
+
+import io.micrometer.core.instrument.Gauge
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry
+import org.assertj.core.api.Assertions.assertThat
+import org.junit.jupiter.api.Test
+import org.openrewrite.ExecutionContext
+import org.openrewrite.InMemoryExecutionContext
+import org.openrewrite.SourceFile
+import org.openrewrite.java.JavaParser
+import java.nio.file.Path
+import java.nio.file.Paths
+import java.util.stream.Collectors.toList
+import java.util.stream.Stream
+
+class HeapAwareBatcherTest {
+    private val meterRegistry = SimpleMeterRegistry()
+
+    /**
+     * The share of the heap that is in use after the most recent collection of the long-lived pool.
+     */
+    private var usageAfterGc = 1.0
+
+    init {
+        Gauge.builder("jvm.memory.usage.after.gc", this) { it.usageAfterGc }
+            .tag("area", "heap")
+            .tag("pool", "long-lived")
+            .register(meterRegistry)
+    }
+
+    private val paths = (0 until 1000).map { Paths.get("src/main/java/A$it.java") }
+
+    private fun batchSizes(batcher: HeapAwareBatcher): List<Int> {
+        val sizes = mutableListOf<Int>()
+        var from = 0
+        while (from < paths.size) {
+            val end = batcher.batchEnd(paths, from)
+            sizes.add(end - from)
+            from = end
+        }
+        return sizes
+    }
+
+    @Test
+    fun `batches are sized by the heap that was free after the last collection`() {
+        usageAfterGc = 0.5
+        val budget = (0.5 * Runtime.getRuntime().maxMemory()).toLong() / HeapAwareBatcher.HEAP_BYTES_PER_SOURCE_BYTE
+        val batcher = HeapAwareBatcher(meterRegistry) { budget / 250 }
+        val sizes = batchSizes(batcher)
+        assertThat(sizes.dropLast(1)).allSatisfy { assertThat(it).isBetween(250, 251) }
+        assertThat(sizes.sum()).isEqualTo(paths.size)
+    }
+
+    @Test
+    fun `batches are never smaller than the minimum however little heap is free`() {
+        usageAfterGc = 1.0
+        val batcher = HeapAwareBatcher(meterRegistry) { 1L }
+        assertThat(batchSizes(batcher)).containsOnly(HeapAwareBatcher.MIN_BATCH_FILES)
+    }
+
+    @Test
+    fun `the parser is reset between batches`() {
+        usageAfterGc = 1.0
+        val parser = RecordingParser()
+        val batcher = HeapAwareBatcher(meterRegistry) { 1L }
+        batcher.parse(parser, paths.take(250), Paths.get(""), InMemoryExecutionContext()).collect(toList())
+        assertThat(parser.events).containsExactly("parse 100", "reset", "parse 100", "reset", "parse 50", "reset")
+    }
+
+    private class RecordingParser(delegate: JavaParser = JavaParser.fromJavaVersion().build()) : JavaParser by delegate {
+        val events = mutableListOf<String>()
+
+        override fun parse(sourceFiles: Iterable<Path>, relativeTo: Path?, ctx: ExecutionContext): Stream<SourceFile> {
+            events.add("parse ${sourceFiles.count()}")
+            return Stream.empty()
+        }
+
+        override fun reset(): JavaParser {
+            events.add("reset")
+            return this
+        }
+    }
+}
@@ -0,0 +1,192 @@
+/*
+ * Licensed under the Moderne Source Available License.
+ * See https://docs.moderne.io/licensing/moderne-source-available-license
+ */
+package org.openrewrite.gradle.isolated
+
+import org.assertj.core.api.Assertions.assertThat
+import org.junit.jupiter.api.Test
+import org.junit.jupiter.api.io.TempDir
+import org.openrewrite.InMemoryExecutionContext
+import org.openrewrite.SourceFile
+import org.openrewrite.java.JavaParser
+import org.openrewrite.java.internal.JavaTypeCache
+import org.openrewrite.java.tree.J
+import org.openrewrite.java.tree.JavaType
+import org.openrewrite.java.tree.TypeUtils
+import org.openrewrite.properties.PropertiesParser
+import java.nio.file.Files
+import java.nio.file.Path
+import java.nio.file.Paths
+import java.util.stream.Collectors.toList
+import java.util.stream.Stream
+import javax.tools.ToolProvider
+
+class LstCacheTest {
+    @TempDir
+    lateinit var baseDir: Path
+
+    private fun cache() = LstCache(baseDir, baseDir.resolve("build/rewrite/lst-cache"), "test")
+
+    private fun write(relativePath: String, text: String): Path {
+        val path = baseDir.resolve(relativePath)
+        Files.createDirectories(path.parent)
+        Files.write(path, text.toByteArray())
+        return path
+    }
+
+    private fun parseProperties(cache: LstCache, paths: List<Path>, parsed: MutableList<Path>): List<SourceFile> =
+        cache.parse(paths, cache.fingerprint(emptyList()), null) { misses ->
+            parsed.addAll(misses)
+            PropertiesParser().parse(misses, baseDir, InMemoryExecutionContext())
+        }.collect(toList())
+
+    @Test
+    fun `unchanged source files are loaded from the cache`() {
+        val a = write("a.properties", "a=1\n")
+        val b = write("b.properties", "b=2\n")
+
+        val parsed = mutableListOf<Path>()
+        val cold = parseProperties(cache(), listOf(a, b), parsed)
+        assertThat(parsed).containsExactly(a, b)
+
+        parsed.clear()
+        val warm = parseProperties(cache(), listOf(a, b), parsed)
+        assertThat(parsed).isEmpty()
+        assertThat(warm.map { it.printAll() }).isEqualTo(cold.map { it.printAll() })
+    }
+
+    @Test
+    fun `changed source files are parsed again`() {
+        val a = write("a.properties", "a=1\n")
+        parseProperties(cache(), listOf(a), mutableListOf())
+
+        write("a.properties", "a=2\n")
+        val parsed = mutableListOf<Path>()
+        val warm = parseProperties(cache(), listOf(a), parsed)
+        assertThat(parsed).containsExactly(a)
+        assertThat(warm.single().printAll()).isEqualTo("a=2\n")
+    }
+
+    @Test
+    fun `source files are returned in the order of their paths regardless of which are cached`() {
+        val a = write("a.properties", "a=1\n")
+        val b = write("b.properties", "b=2\n")
+        val c = write("c.properties", "c=3\n")
+        parseProperties(cache(), listOf(b), mutableListOf())
+
+        val parsed = mutableListOf<Path>()
+        val warm = parseProperties(cache(), listOf(a, b, c), parsed)
+        assertThat(parsed).containsExactly(a, c)
+        assertThat(warm.map { it.sourcePath }).containsExactly(
+            Paths.get("a.properties"),
+            Paths.get("b.properties"),
+            Paths.get("c.properties")
+        )
+    }
+
+    @Test
+    fun `source files the parser returns out of order are put back in the order of their paths`() {
+        val a = write("a.properties", "a=1\n")
+        val b = write("b.properties", "b=2\n")
+        val c = write("c.properties", "c=3\n")
+        val cache = cache()
+        val results = cache.parse(listOf(a, b, c), cache.fingerprint(emptyList()), null) { misses ->
+            PropertiesParser().parse(misses.reversed(), baseDir, InMemoryExecutionContext())
+        }.collect(toList())
+        assertThat(results.map { it.sourcePath }).containsExactly(
+            Paths.get("a.properties"),
+            Paths.get("b.properties"),
+            Paths.get("c.properties")
+        )
+    }
+
+    @Test
+    fun `a change nested inside a class directory changes the fingerprint`() {
+        val classes = baseDir.resolve("build/classes/java/main")
+        write("build/classes/java/main/org/example/A.class", "v1")
+        val before = cache().fingerprint(listOf(classes), "java")
+        assertThat(cache().fingerprint(listOf(classes), "java")).isEqualTo(before)
+
+        write("build/classes/java/main/org/example/A.class", "v2")
+        assertThat(cache().fingerprint(listOf(classes), "java")).isNotEqualTo(before)
+    }
+
+    @Test
+    fun `a class directory is read once per cache`() {
+        val classes = baseDir.resolve("build/classes/java/main")
+        write("build/classes/java/main/org/example/A.class", "v1")
+        val cache = cache()
+        val before = cache.fingerprint(listOf(classes), "java")
+
+        // Class directories don't change while a cache is in use, so this is not noticed until the next one
+        write("build/classes/java/main/org/example/A.class", "v2")
+        assertThat(cache.fingerprint(listOf(classes), "java")).isEqualTo(before)
+        assertThat(cache.fingerprint(listOf(classes), "kotlin")).isNotEqualTo(before)
+    }
+
+    @Test
+    fun `an unchanged source file picks up the new types of a sibling it depends on`() {
+        val classes = baseDir.resolve("a/build/classes/java/main")
+        fun compileA(returnType: String) {
+            val a = write("a/src/main/java/org/example/A.java",
+                "package org.example; public class A { public $returnType name() { return null; } }")
+            Files.createDirectories(classes)
+            assertThat(ToolProvider.getSystemJavaCompiler().run(null, null, null,
+                "-d", classes.toString(), a.toString())).isEqualTo(0)
+        }
+        val b = write("b/src/main/java/org/example/B.java",
+            "package org.example; class B { Object n = new A().name(); }")
+
+        fun parseB(parsed: MutableList<Path>): SourceFile {
+            val cache = cache()
+            return cache.parse(listOf(b), cache.fingerprint(listOf(classes), "java"), JavaTypeCache()) { misses ->
+                parsed.addAll(misses)
+                JavaParser.fromJavaVersion().classpath(listOf(classes)).build()
+                    .parse(misses, baseDir, InMemoryExecutionContext())
+            }.collect(toList()).single()
+        }
+
+        fun returnType(sourceFile: SourceFile): JavaType? =
+            ((((sourceFile as J.CompilationUnit).classes[0].body.statements[0] as J.VariableDeclarations)
+                .variables[0].initializer) as J.MethodInvocation).methodType!!.returnType
+
+        compileA("String")
+        val parsed = mutableListOf<Path>()
+        assertThat(TypeUtils.asFullyQualified(returnType(parseB(parsed)))!!.fullyQualifiedName)
+            .isEqualTo("java.lang.String")
+        assertThat(parsed).containsExactly(b)
+
+        compileA("Integer")
+        parsed.clear()
+        assertThat(TypeUtils.asFullyQualified(returnType(parseB(parsed)))!!.fullyQualifiedName)
+            .isEqualTo("java.lang.Integer")
+        assertThat(parsed).containsExactly(b)
+    }
+
+    @Test
+    fun `source files loaded from the cache share their types`() {
+        val a = write("src/main/java/A.java", "class A { String s; }")
+        val b = write("src/main/java/B.java", "class B { String s; }")
+
+        fun parseJava(typeCache: JavaTypeCache, parser: (List<Path>) -> Stream<SourceFile>): List<SourceFile> {
+            val cache = cache()
+            return cache.parse(listOf(a, b), cache.fingerprint(emptyList(), "java"), typeCache) { parser(it) }
+                .collect(toList())
+        }
+
+        fun fieldType(sourceFile: SourceFile): JavaType? =
+            ((sourceFile as J.CompilationUnit).classes[0].body.statements[0] as J.VariableDeclarations)
+                .typeExpression!!.type
+
+        val coldTypeCache = JavaTypeCache()
+        parseJava(coldTypeCache) { misses ->
+            JavaParser.fromJavaVersion().typeCache(coldTypeCache).build()
+                .parse(misses, baseDir, InMemoryExecutionContext())
+        }
+
+        val warm = parseJava(JavaTypeCache()) { throw AssertionError("Expected every source file to be cached") }
+        assertThat(fieldType(warm[0])).isInstanceOf(JavaType.FullyQualified::class.java)
+        assertThat(fieldType(warm[0])).isSameAs(fieldType(warm[1]))
+    }
+}
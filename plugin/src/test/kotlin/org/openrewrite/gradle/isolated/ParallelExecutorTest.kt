@@ -0,0 +1,100 @@
+/*
+ * Licensed under the Moderne Source Available License.
+ * See https://docs.moderne.io/licensing/moderne-source-available-license
+ */
+package org.openrewrite.gradle.isolated
+
+import org.assertj.core.api.Assertions.assertThat
+import org.junit.jupiter.api.Test
+import org.openrewrite.InMemoryExecutionContext
+import org.openrewrite.tree.ParsingExecutionContextView
+import java.nio.charset.StandardCharsets
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicInteger
+import java.util.stream.Collectors.toList
+import java.util.stream.Stream
+
+class ParallelExecutorTest {
+
+    @Test
+    fun `results are handed back in the order units were submitted`() {
+        ParallelExecutor(4).use { executor ->
+            val units = (0 until 20).map { i ->
+                executor.submit {
+                    // Let later units finish first
+                    Thread.sleep((20L - i) * 2)
+                    Stream.of(i * 2, i * 2 + 1)
+                }
+            }
+            val results = units.stream().flatMap { it }.collect(toList())
+            assertThat(results).isEqualTo((0 until 40).toList())
+        }
+    }
+
+    @Test
+    fun `units submitted to a parallel executor run concurrently`() {
+        ParallelExecutor(2).use { executor ->
+            val bothStarted = CountDownLatch(2)
+            val units = (0 until 2).map {
+                executor.submit {
+                    bothStarted.countDown()
+                    Stream.of(bothStarted.await(10, TimeUnit.SECONDS))
+                }
+            }
+            assertThat(units.stream().flatMap { it }.collect(toList())).containsExactly(true, true)
+        }
+    }
+
+    @Test
+    fun `units of a serial executor are evaluated lazily`() {
+        ParallelExecutor(1).use { executor ->
+            assertThat(executor.isParallel).isFalse()
+            val evaluated = AtomicInteger()
+            val results = executor.submit {
+                evaluated.incrementAndGet()
+                Stream.of("a")
+            }
+            assertThat(evaluated.get()).isEqualTo(0)
+            assertThat(results.collect(toList())).containsExactly("a")
+            assertThat(evaluated.get()).isEqualTo(1)
+        }
+    }
+
+    @Test
+    fun `mapOrdered consumes results in the order of the elements`() {
+        ParallelExecutor(4).use { executor ->
+            val consumed = mutableListOf<Int>()
+            executor.mapOrdered((0 until 50).toList().stream(), { i ->
+                Thread.sleep((50L - i) % 7)
+                i * i
+            }, { consumed.add(it) })
+            assertThat(consumed).isEqualTo((0 until 50).map { it * it })
+        }
+    }
+
+    @Test
+    fun `a forked context starts out with the messages of its parent`() {
+        val ctx = InMemoryExecutionContext()
+        ctx.putMessage("org.openrewrite.test.message", "value")
+        val listener = ParsingExecutionContextView.view(ctx).parsingListener
+
+        ParallelExecutor(2).use { executor ->
+            val forked = executor.fork(ctx)
+            assertThat(forked).isNotSameAs(ctx)
+            assertThat(forked.getMessage<String>("org.openrewrite.test.message")).isEqualTo("value")
+            assertThat(ParsingExecutionContextView.view(forked).parsingListener).isSameAs(listener)
+
+            ParsingExecutionContextView.view(forked).setCharset(StandardCharsets.ISO_8859_1)
+            assertThat(ParsingExecutionContextView.view(ctx).charset).isNotEqualTo(StandardCharsets.ISO_8859_1)
+        }
+    }
+
+    @Test
+    fun `a serial executor does not fork the context`() {
+        val ctx = InMemoryExecutionContext()
+        ParallelExecutor(1).use { executor ->
+            assertThat(executor.fork(ctx)).isSameAs(ctx)
+        }
+    }
+}
@@ -0,0 +1,97 @@
+/*
+ * Licensed under the Moderne Source Available License.
+ * See https://docs.moderne.io/licensing/moderne-source-available-license
+ */
+package org.openrewrite.gradle.isolated
+
+import org.assertj.core.api.Assertions.assertThat
+import org.junit.jupiter.api.Test
+import java.nio.file.Path
+import java.nio.file.Paths
+import java.util.concurrent.Executors
+import java.util.concurrent.TimeUnit
+
+class PathTrieTest {
+    private val root: Path = Paths.get("/repo").toAbsolutePath()
+
+    @Test
+    fun `contains only the exact paths that were claimed`() {
+        val trie = PathTrie()
+        trie.add(root.resolve("src/main/java/A.java"))
+        trie.claimDirectory(root.resolve("src/main/resources"))
+
+        assertThat(trie).contains(root.resolve("src/main/java/A.java"), root.resolve("src/main/resources"))
+        assertThat(trie.contains(root.resolve("src/main/java"))).isFalse()
+        assertThat(trie.contains(root.resolve("src/main/resources/application.yml"))).isFalse()
+        assertThat(trie).hasSize(2)
+    }
+
+    @Test
+    fun `everything beneath a claimed directory is claimed`() {
+        val trie = PathTrie()
+        trie.claimDirectory(root.resolve("src/main/java"))
+
+        assertThat(trie.isClaimed(root.resolve("src/main/java"))).isTrue()
+        assertThat(trie.isClaimed(root.resolve("src/main/java/org/example/A.java"))).isTrue()
+        assertThat(trie.isClaimed(root.resolve("src/main"))).isFalse()
+        assertThat(trie.isClaimed(root.resolve("src/main/javascript/a.js"))).isFalse()
+    }
+
+    @Test
+    fun `nothing beneath a claimed file is claimed`() {
+        val trie = PathTrie()
+        trie.add(root.resolve("src/main/java"))
+        assertThat(trie.isClaimed(root.resolve("src/main/java"))).isTrue()
+        assertThat(trie.isClaimed(root.resolve("src/main/java/A.java"))).isFalse()
+    }
+
+    @Test
+    fun `claiming a path twice counts it once`() {
+        val trie = PathTrie()
+        assertThat(trie.add(root.resolve("A.java"))).isTrue()
+        assertThat(trie.add(root.resolve("A.java"))).isFalse()
+        trie.claimDirectory(root.resolve("A.java"))
+        assertThat(trie).hasSize(1)
+    }
+
+    @Test
+    fun `iterates over every claimed path`() {
+        val trie = PathTrie()
+        val paths = listOf(
+            root.resolve("build.gradle"),
+            root.resolve("a/build.gradle"),
+            root.resolve("a/src/main/java/A.java")
+        )
+        trie.addAll(paths)
+        assertThat(trie.toList()).containsExactlyInAnyOrderElementsOf(paths)
+    }
+
+    @Test
+    fun `paths of a plain set are claimed exactly and later claims are mirrored to it`() {
+        val alreadyParsed = mutableSetOf(root.resolve("src/main/java"))
+        val trie = PathTrie.of(alreadyParsed)
+
+        assertThat(trie.contains(root.resolve("src/main/java"))).isTrue()
+        assertThat(trie.isClaimed(root.resolve("src/main/java/A.java"))).isFalse()
+
+        trie.add(root.resolve("src/main/java/A.java"))
+        assertThat(alreadyParsed).contains(root.resolve("src/main/java/A.java"))
+        assertThat(PathTrie.of(trie)).isSameAs(trie)
+    }
+
+    @Test
+    fun `claims may be made concurrently`() {
+        val trie = PathTrie()
+        val pool = Executors.newFixedThreadPool(4)
+        for (t in 0 until 4) {
+            pool.execute {
+                for (i in 0 until 1000) {
+                    trie.add(root.resolve("src/main/java/org/example/A$i.java"))
+                }
+            }
+        }
+        pool.shutdown()
+        assertThat(pool.awaitTermination(30, TimeUnit.SECONDS)).isTrue()
+        assertThat(trie).hasSize(1000)
+    }
+}
@@ -0,0 +1,152 @@
+/*
+ * Licensed under the Moderne Source Available License.
+ * See https://docs.moderne.io/licensing/moderne-source-available-license
+ */
+package org.openrewrite.gradle.isolated
+
+import org.assertj.core.api.Assertions.assertThat
+import org.junit.jupiter.api.Test
+import org.junit.jupiter.api.io.TempDir
+import org.openrewrite.Recipe
+import org.openrewrite.config.Environment
+import org.openrewrite.config.YamlResourceLoader
+import java.io.ByteArrayInputStream
+import java.net.URI
+import java.net.URLClassLoader
+import java.nio.file.Files
+import java.nio.file.Path
+import java.util.Properties
+
+class RecipeCatalogTest {
+    @TempDir
+    lateinit var dir: Path
+
+    private val classes: Path by lazy { dir.resolve("classes") }
+    private val cacheDir: Path by lazy { dir.resolve("catalogs") }
+
+    private fun recipeResource(name: String, yaml: String): Path {
+        val file = classes.resolve("META-INF/rewrite/$name")
+        Files.createDirectories(file.parent)
+        Files.write(file, yaml.trimIndent().toByteArray())
+        return file
+    }
+
+    private fun classLoader() = URLClassLoader(arrayOf(classes.toUri().toURL()), javaClass.classLoader)
+
+    private fun catalog(classLoader: ClassLoader = classLoader()) =
+        RecipeCatalog.load(cacheDir, classLoader, Properties())!!
+
+    private fun rewriteYml(classLoader: ClassLoader, yaml: String): Environment.Builder =
+        Environment.builder().load(
+            YamlResourceLoader(
+                ByteArrayInputStream(yaml.trimIndent().toByteArray()),
+                URI.create("file:///project/rewrite.yml"),
+                Properties(),
+                classLoader
+            )
+        )
+
+    private fun names(recipe: Recipe): List<String> =
+        listOf(recipe.name) + recipe.recipeList.flatMap { names(it) }
+
+    private fun writeClasspathRecipes() {
+        recipeResource(
+            "greetings.yml",
+            """
+            type: specs.openrewrite.org/v1beta/recipe
+            name: com.acme.SayHello
+            displayName: Say hello
+            description: Replaces every text with a greeting.
+            recipeList:
+              - org.openrewrite.text.ChangeText:
+                  toText: Hello
+            """
+        )
+        recipeResource(
+            "unrelated.yml",
+            """
+            type: specs.openrewrite.org/v1beta/recipe
+            name: com.acme.Unrelated
+            displayName: Unrelated
+            description: Not used by anything.
+            recipeList:
+              - org.openrewrite.text.ChangeText:
+                  toText: Unrelated
+            """
+        )
+    }
+
+    @Test
+    fun `catalogs the recipes of the classpath`() {
+        writeClasspathRecipes()
+        val catalog = catalog()
+        assertThat(catalog.recipeNames).contains("com.acme.SayHello", "com.acme.Unrelated", "org.openrewrite.text.ChangeText")
+        assertThat(Files.list(cacheDir).use { it.count() }).isEqualTo(1)
+    }
+
+    @Test
+    fun `activates a cataloged recipe from its own resource`() {
+        writeClasspathRecipes()
+        val classLoader = classLoader()
+        val recipe = catalog(classLoader).activateRecipes(listOf("com.acme.SayHello"), Environment.builder())!!
+        assertThat(names(recipe)).containsExactly("com.acme.SayHello", "org.openrewrite.text.ChangeText")
+        assertThat(recipe.validate().isValid).isTrue()
+    }
+
+    @Test
+    fun `a rewrite yml composite over a classpath recipe is never activated unresolved`() {
+        writeClasspathRecipes()
+        val classLoader = classLoader()
+        val rewriteYml = """
+            type: specs.openrewrite.org/v1beta/recipe
+            name: my.Composite
+            displayName: Composite
+            description: Refers to a recipe declared on the classpath.
+            recipeList:
+              - com.acme.SayHello
+            """
+
+        // Whatever the catalog can't resolve on its own is left to a scan of the classpath, as the parser does
+        val recipe = catalog(classLoader).activateRecipes(listOf("my.Composite"), rewriteYml(classLoader, rewriteYml))
+            ?: rewriteYml(classLoader, rewriteYml).scanClassLoader(classLoader).build()
+                .activateRecipes("my.Composite")
+
+        assertThat(names(recipe)).contains("my.Composite", "com.acme.SayHello", "org.openrewrite.text.ChangeText")
+        assertThat(recipe.validate().isValid).isTrue()
+    }
+
+    @Test
+    fun `names that are not cataloged are left to a scan of the classpath`() {
+        writeClasspathRecipes()
+        assertThat(catalog().activateRecipes(listOf("com.acme.Missing"), Environment.builder())).isNull()
+    }
+
+    @Test
+    fun `class directories are fingerprinted by their contents`() {
+        val resource = recipeResource(
+            "greetings.yml",
+            """
+            type: specs.openrewrite.org/v1beta/recipe
+            name: com.acme.SayHello
+            displayName: Say hello
+            description: Replaces every text with a greeting.
+            """
+        )
+        val modified = Files.getLastModifiedTime(resource)
+        assertThat(catalog().recipeNames).contains("com.acme.SayHello")
+
+        // Rebuilt with the same size and modification time, but different contents
+        Files.write(
+            resource,
+            """
+            type: specs.openrewrite.org/v1beta/recipe
+            name: com.acme.SayHallo
+            displayName: Say hallo
+            description: Replaces every text with a greeting.
+            """.trimIndent().toByteArray()
+        )
+        Files.setLastModifiedTime(resource, modified)
+
+        assertThat(catalog().recipeNames).contains("com.acme.SayHallo").doesNotContain("com.acme.SayHello")
+    }
+}
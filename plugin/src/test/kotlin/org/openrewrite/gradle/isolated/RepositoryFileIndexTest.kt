@@ -0,0 +1,116 @@
+/*
+ * Licensed under the Moderne Source Available License.
+ * See https://docs.moderne.io/licensing/moderne-source-available-license
+ */
+package org.openrewrite.gradle.isolated
+
+import org.assertj.core.api.Assertions.assertThat
+import org.junit.jupiter.api.Test
+import org.junit.jupiter.api.io.TempDir
+import java.nio.file.Files
+import java.nio.file.Path
+
+class RepositoryFileIndexTest {
+    @TempDir
+    lateinit var root: Path
+
+    private fun write(relativePath: String, text: String = ""): Path {
+        val path = root.resolve(relativePath)
+        Files.createDirectories(path.parent)
+        Files.write(path, text.toByteArray())
+        return path
+    }
+
+    private fun index(skipped: List<Path> = emptyList(), exclusions: List<String> = emptyList()) =
+        RepositoryFileIndex(root, skipped, ExclusionMatcher(exclusions)).build(2)
+
+    private fun relativeFiles(index: RepositoryFileIndex, dir: Path = root) =
+        index.files(dir).map { root.relativize(it).toString().replace('\\', '/') }
+
+    @Test
+    fun `files are listed in lexicographic order`() {
+        write("b/B.java")
+        write("a/A.java")
+        write("a/b/C.java")
+        assertThat(relativeFiles(index())).containsExactly("a/A.java", "a/b/C.java", "b/B.java")
+    }
+
+    @Test
+    fun `nested repositories, builds and package manager caches are not walked`() {
+        write("src/main/java/A.java")
+        write("module/.git/config")
+        write("module/.gradle/8.12/fileHashes.lock")
+        write("web/node_modules/left-pad/index.js")
+        write(".idea/workspace.xml")
+        write("out/production/A.class")
+        assertThat(relativeFiles(index())).containsExactly("src/main/java/A.java")
+    }
+
+    @Test
+    fun `skipped and excluded directories are not walked`() {
+        write("src/main/java/A.java")
+        write("app/build/generated/B.java")
+        write("legacy/C.java")
+        val index = index(listOf(root.resolve("app/build")), listOf("legacy"))
+        assertThat(relativeFiles(index)).containsExactly("src/main/java/A.java")
+    }
+
+    @Test
+    fun `a directory that was not walked is walked on demand`() {
+        write("web/node_modules/left-pad/index.js")
+        write("legacy/C.java")
+        val index = index(exclusions = listOf("legacy"))
+        assertThat(relativeFiles(index, root.resolve("web/node_modules")))
+            .containsExactly("web/node_modules/left-pad/index.js")
+        assertThat(relativeFiles(index, root.resolve("legacy"))).containsExactly("legacy/C.java")
+    }
+
+    @Test
+    fun `files of a directory do not include those of a sibling sharing its prefix`() {
+        write("src/A.java")
+        write("src0/B.java")
+        write("src-gen/C.java")
+        assertThat(relativeFiles(index(), root.resolve("src"))).containsExactly("src/A.java")
+    }
+
+    @Test
+    fun `sizes are known without reading the file system again`() {
+        val file = write("src/A.java", "class A {}")
+        val index = index()
+        Files.delete(file)
+        assertThat(index.size(file)).isEqualTo(10)
+        assertThat(index.files(root.resolve("src"), ".java")).containsExactly(file)
+    }
+
+    @Test
+    fun `only the directories of the projects being parsed are walked`() {
+        write("build.gradle")
+        write("app/src/A.java")
+        write("lib/src/B.java")
+        val projectDirs = listOf(root, root.resolve("app"), root.resolve("lib"))
+        val index = RepositoryFileIndex(root, emptyList(), projectDirs, ExclusionMatcher(emptyList()))
+            .index(listOf(root.resolve("app")), 2)
+
+        // Files that appear after a directory is walked are only seen in directories that weren't walked
+        write("app/src/C.java")
+        write("lib/src/D.java")
+        assertThat(relativeFiles(index, root.resolve("app"))).containsExactly("app/src/A.java")
+        assertThat(relativeFiles(index, root.resolve("lib"))).containsExactly("lib/src/B.java", "lib/src/D.java")
+    }
+
+    @Test
+    fun `the walk of a project stops at the directories of other projects`() {
+        write("build.gradle")
+        write("app/src/A.java")
+        write("lib/src/B.java")
+        val projectDirs = listOf(root, root.resolve("app"), root.resolve("lib"))
+        val index = RepositoryFileIndex(root, emptyList(), projectDirs, ExclusionMatcher(emptyList()))
+            .index(listOf(root), 2)
+        assertThat(relativeFiles(index)).containsExactly("build.gradle")
+
+        index.index(listOf(root.resolve("app"), root), 2)
+        write("app/src/C.java")
+        assertThat(relativeFiles(index, root.resolve("app"))).containsExactly("app/src/A.java")
+        assertThat(relativeFiles(index)).containsExactly("app/src/A.java", "build.gradle")
+    }
+}
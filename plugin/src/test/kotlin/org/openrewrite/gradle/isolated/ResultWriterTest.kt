@@ -0,0 +1,161 @@
+/*
+ * Licensed under the Moderne Source Available License.
+ * See https://docs.moderne.io/licensing/moderne-source-available-license
+ */
+package org.openrewrite.gradle.isolated
+
+import org.assertj.core.api.Assertions.assertThat
+import org.assertj.core.api.Assertions.assertThatThrownBy
+import org.junit.jupiter.api.Test
+import org.junit.jupiter.api.io.TempDir
+import org.openrewrite.InMemoryExecutionContext
+import org.openrewrite.text.PlainText
+import org.openrewrite.text.PlainTextParser
+import java.io.IOException
+import java.nio.charset.CharacterCodingException
+import java.nio.charset.StandardCharsets
+import java.nio.file.Files
+import java.nio.file.Path
+import java.nio.file.Paths
+import java.util.stream.Collectors.toList
+
+class ResultWriterTest {
+    @TempDir
+    lateinit var root: Path
+
+    private fun write(relativePath: String, text: String): Path {
+        val path = root.resolve(relativePath)
+        Files.createDirectories(path.parent)
+        Files.write(path, text.toByteArray())
+        return path
+    }
+
+    private fun read(relativePath: String) = String(Files.readAllBytes(root.resolve(relativePath)))
+
+    /**
+     * Every file and directory beneath the root, so that leftover temporary files and backups show up.
+     */
+    private fun tree(): List<String> = Files.walk(root).use { paths ->
+        paths.filter { it != root }
+            .map { root.relativize(it).toString().replace('\\', '/') }
+            .sorted()
+            .collect(toList())
+    }
+
+    private fun writer() = ResultWriter(2, false, InMemoryExecutionContext())
+
+    @Test
+    fun `writes, deletes and moves are applied`() {
+        write("A.txt", "a")
+        write("B.txt", "b")
+        write("C.txt", "c")
+
+        val writer = writer()
+        writer.write(root.resolve("A.txt"), "A".toByteArray(), null)
+        writer.write(root.resolve("new/D.txt"), "D".toByteArray(), null)
+        writer.delete(root.resolve("B.txt"))
+        writer.move(root.resolve("C.txt"), root.resolve("moved/C.txt"))
+        writer.commit()
+
+        assertThat(tree()).containsExactly("A.txt", "moved", "moved/C.txt", "new", "new/D.txt")
+        assertThat(read("A.txt")).isEqualTo("A")
+        assertThat(read("new/D.txt")).isEqualTo("D")
+        assertThat(read("moved/C.txt")).isEqualTo("c")
+    }
+
+    @Test
+    fun `a failure part way through the commit restores the originals`() {
+        write("A.txt", "a")
+        write("B.txt", "b")
+        write("C.txt", "c")
+        write("D.txt", "d")
+        val before = tree()
+
+        val writer = writer()
+        writer.write(root.resolve("A.txt"), "A".toByteArray(), null)
+        writer.write(root.resolve("new/package/E.txt"), "E".toByteArray(), null)
+        writer.delete(root.resolve("B.txt"))
+        writer.move(root.resolve("C.txt"), root.resolve("D.txt"))
+        writer.move(root.resolve("D.txt"), root.resolve("moved/D.txt"))
+        // Fails, as there is no such file
+        writer.delete(root.resolve("missing.txt"))
+
+        assertThatThrownBy { writer.commit() }.isInstanceOf(IOException::class.java)
+
+        // No temporary files, backups or newly created directories are left behind
+        assertThat(tree()).isEqualTo(before)
+        assertThat(read("A.txt")).isEqualTo("a")
+        assertThat(read("B.txt")).isEqualTo("b")
+        assertThat(read("C.txt")).isEqualTo("c")
+        assertThat(read("D.txt")).isEqualTo("d")
+    }
+
+    @Test
+    fun `a failure while writing leaves the files alone`() {
+        write("A.txt", "a")
+        val before = tree()
+
+        val writer = writer()
+        writer.write(root.resolve("A.txt"), "A".toByteArray(), null)
+        writer.write(root.resolve("new/B.txt"), "B".toByteArray(), null)
+        // Fails, as a file is in the way of the directory
+        writer.write(root.resolve("A.txt/C.txt"), "C".toByteArray(), null)
+
+        assertThatThrownBy { writer.commit() }.isInstanceOf(IOException::class.java)
+
+        assertThat(tree()).isEqualTo(before)
+        assertThat(read("A.txt")).isEqualTo("a")
+    }
+
+    @Test
+    fun `a character that the charset of a source file cannot encode fails the commit`() {
+        write("A.txt", "a")
+        write("B.txt", "b")
+        val before = tree()
+
+        val latin1 = (PlainTextParser().parse("caf\u00e9 \u65e5\u672c").findFirst().get() as PlainText)
+            .withSourcePath(Paths.get("B.txt"))
+            .withCharset(StandardCharsets.ISO_8859_1)
+        val writer = writer()
+        writer.write(root.resolve("A.txt"), "A".toByteArray(), null)
+        writer.write(root.resolve("B.txt"), latin1)
+
+        assertThatThrownBy { writer.commit() }
+            .isInstanceOf(IOException::class.java)
+            .hasRootCauseInstanceOf(CharacterCodingException::class.java)
+
+        assertThat(tree()).isEqualTo(before)
+        assertThat(read("A.txt")).isEqualTo("a")
+        assertThat(read("B.txt")).isEqualTo("b")
+    }
+
+    @Test
+    fun `renamed directories are renamed back`() {
+        write("Pkg/A.txt", "a")
+        val before = tree()
+
+        val writer = writer()
+        // Asked for once by every file moved out of the directory, but only renamed once
+        writer.renameDirectory(root.resolve("Pkg"), root.resolve("pkg2"))
+        writer.renameDirectory(root.resolve("Pkg"), root.resolve("pkg2"))
+        writer.delete(root.resolve("missing.txt"))
+
+        assertThatThrownBy { writer.commit() }.isInstanceOf(IOException::class.java)
+
+        assertThat(tree()).isEqualTo(before)
+        assertThat(read("Pkg/A.txt")).isEqualTo("a")
+    }
+
+    @Test
+    fun `files that are already up to date are not written`() {
+        val file = write("A.txt", "a")
+        val modified = Files.getLastModifiedTime(file)
+
+        val writer = ResultWriter(1, true, InMemoryExecutionContext())
+        writer.write(file, "a".toByteArray(), null)
+        writer.commit()
+
+        assertThat(Files.getLastModifiedTime(file)).isEqualTo(modified)
+        assertThat(tree()).containsExactly("A.txt")
+    }
+}
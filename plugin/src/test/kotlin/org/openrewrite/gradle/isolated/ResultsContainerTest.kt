@@ -0,0 +1,114 @@
+/*
+ * Licensed under the Moderne Source Available License.
+ * See https://docs.moderne.io/licensing/moderne-source-available-license
+ */
+package org.openrewrite.gradle.isolated
+
+import org.assertj.core.api.Assertions.assertThat
+import org.assertj.core.api.Assertions.assertThatThrownBy
+import org.junit.jupiter.api.Test
+import org.junit.jupiter.api.io.TempDir
+import org.junit.jupiter.params.ParameterizedTest
+import org.junit.jupiter.params.provider.Arguments
+import org.junit.jupiter.params.provider.MethodSource
+import org.openrewrite.InMemoryExecutionContext
+import org.openrewrite.PrintOutputCapture
+import org.openrewrite.Result
+import org.openrewrite.SourceFile
+import org.openrewrite.internal.InMemoryLargeSourceSet
+import org.openrewrite.text.ChangeText
+import org.openrewrite.text.PlainText
+import org.openrewrite.text.PlainTextParser
+import java.io.UncheckedIOException
+import java.lang.ref.WeakReference
+import java.nio.charset.CharacterCodingException
+import java.nio.charset.StandardCharsets
+import java.nio.file.Files
+import java.nio.file.Path
+import java.nio.file.Paths
+import java.util.stream.Collectors.toList
+
+class ResultsContainerTest {
+    companion object {
+        @JvmStatic
+        fun edits(): List<Arguments> = listOf(
+            Arguments.of("identical", "a\nb\n", "a\nb\n"),
+            Arguments.of("line endings changed to CRLF", "a\nb\n", "a\r\nb\r\n"),
+            Arguments.of("line endings changed to LF", "a\r\nb\r\n", "a\nb\n"),
+            Arguments.of("trailing whitespace added", "a\nb\n", "a  \nb\t\n"),
+            Arguments.of("trailing whitespace removed", "a \r\nb\t\r\n", "a\r\nb\r\n"),
+            Arguments.of("indentation changed", "class A {\n    int a;\n}\n", "class A {\n\tint a;\n}\n"),
+            Arguments.of("whitespace within a line changed", "int a=1;\n", "int a = 1;\n"),
+            Arguments.of("line break at the end added", "a\nb", "a\nb\n"),
+            Arguments.of("blank line added", "a\nb\n", "a\n\nb\n"),
+            Arguments.of("blank line removed", "a\r\n\r\nb\r\n", "a\r\nb\r\n"),
+            Arguments.of("whitespace-only line added", "a\nb\n", "a\n  \nb\n"),
+            Arguments.of("blank line added at the end", "a\nb\n", "a\nb\n\n"),
+            Arguments.of("whitespace-only line added at the end", "a\n", "a\n  "),
+            Arguments.of("line break added to empty text", "", "\n"),
+            Arguments.of("lines joined", "a\nb\n", "a b\n"),
+            Arguments.of("text changed", "a\nb\n", "a\nc\n"),
+            Arguments.of("text changed alongside line endings", "a\nb\n", "a\r\nc\r\n"),
+        )
+    }
+
+    @ParameterizedTest(name = "{0}")
+    @MethodSource("edits")
+    fun `classifies like a diff ignoring all whitespace`(@Suppress("UNUSED_PARAMETER") name: String, before: String, after: String) {
+        val beforeText = PlainTextParser().parse(before).findFirst().get() as PlainText
+        val result = Result(beforeText, beforeText.withText(after), emptyList())
+
+        val diff = result.diff(Paths.get(""), PrintOutputCapture.MarkerPrinter.DEFAULT, true)
+        assertThat(ResultsContainer.isChanged(result))
+            .`as`("diff:\n%s", diff)
+            .isEqualTo(diff.isNotEmpty())
+    }
+
+    private fun changedText(root: Path, references: MutableList<WeakReference<SourceFile>>): ResultsContainer {
+        val ctx = InMemoryExecutionContext { throw it }
+        val file = root.resolve("a.txt")
+        Files.write(file, "before".toByteArray())
+        val sourceFiles = PlainTextParser().parse(listOf(file), root, ctx).collect(toList())
+        val recipeRun = ChangeText("after").run(InMemoryLargeSourceSet(sourceFiles), ctx)
+        for (result in recipeRun.changeset.allResults) {
+            references.add(WeakReference(result.before))
+            references.add(WeakReference(result.after))
+        }
+        return ResultsContainer(root, recipeRun)
+    }
+
+    @Test
+    fun `compacting releases the LSTs`(@TempDir root: Path) {
+        val references = mutableListOf<WeakReference<SourceFile>>()
+        val results = changedText(root, references)
+        assertThat(references).hasSize(2)
+
+        ParallelExecutor(1).use { results.compact(it) }
+        for (i in 0 until 100) {
+            if (references.all { it.get() == null }) {
+                break
+            }
+            System.gc()
+            Thread.sleep(10)
+        }
+        assertThat(references).allSatisfy { assertThat(it.get()).isNull() }
+
+        // What it takes to apply the results is kept
+        assertThat(results.refactoredInPlace).hasSize(1)
+        val writer = ResultWriter(1, false, InMemoryExecutionContext())
+        results.refactoredInPlace[0].write(writer, root)
+        writer.commit()
+        assertThat(String(Files.readAllBytes(root.resolve("a.txt")))).isEqualTo("after")
+    }
+
+    @Test
+    fun `compacting fails on a character that the charset of the result cannot encode`() {
+        val before = (PlainTextParser().parse("cafe").findFirst().get() as PlainText)
+            .withCharset(StandardCharsets.ISO_8859_1)
+        val result = Result(before, before.withText("caf\u00e9 \u65e5\u672c"), emptyList())
+
+        assertThatThrownBy { CompactResult.compact(result) }
+            .isInstanceOf(UncheckedIOException::class.java)
+            .hasRootCauseInstanceOf(CharacterCodingException::class.java)
+    }
+}
@@ -0,0 +1,115 @@
+/*
+ * Licensed under the Moderne Source Available License.
+ * See https://docs.moderne.io/licensing/moderne-source-available-license
+ */
+package org.openrewrite.gradle.isolated
+
+import org.assertj.core.api.Assertions.assertThat
+import org.junit.jupiter.api.Test
+import org.junit.jupiter.api.io.TempDir
+import org.openrewrite.*
+import org.openrewrite.internal.InMemoryLargeSourceSet
+import org.openrewrite.text.PlainTextParser
+import java.io.InputStreamReader
+import java.nio.charset.StandardCharsets
+import java.nio.file.Files
+import java.nio.file.Path
+import java.util.stream.Collectors.toList
+import java.util.zip.GZIPInputStream
+
+/**
+ * Pins the assumptions [StreamingDataTables] makes about how [DataTable.insertRow] stores rows, by running a recipe
+ * against the version of rewrite in use.
+ */
+class StreamingDataTablesTest {
+    @TempDir
+    lateinit var dir: Path
+
+    class VisitedFiles(recipe: Recipe) : DataTable<VisitedFiles.Row>(recipe, "Visited files", "Every file that was visited.") {
+        class Row(
+            @field:Column(displayName = "Source path", description = "The path of the file.")
+            val sourcePath: String,
+            @field:Column(displayName = "Text", description = "What the file says, \"quoted\".")
+            val text: String
+        )
+    }
+
+    class ListFiles : Recipe() {
+        @Transient
+        private val visitedFiles = VisitedFiles(this)
+
+        override fun getDisplayName() = "List files"
+
+        override fun getDescription() = "Lists every file it visits."
+
+        override fun getVisitor(): TreeVisitor<*, ExecutionContext> = object : TreeVisitor<Tree, ExecutionContext>() {
+            override fun visit(tree: Tree?, ctx: ExecutionContext): Tree? {
+                if (tree is SourceFile) {
+                    visitedFiles.insertRow(ctx, VisitedFiles.Row(tree.sourcePath.toString(), tree.printAll()))
+                }
+                return tree
+            }
+        }
+    }
+
+    private fun sourceFiles(ctx: ExecutionContext): List<SourceFile> {
+        val sources = dir.resolve("sources")
+        Files.createDirectories(sources)
+        val paths = listOf("a.txt" to "hello", "b.txt" to "a \"quoted\" word").map { (name, text) ->
+            Files.write(sources.resolve(name), text.toByteArray())
+            sources.resolve(name)
+        }
+        return PlainTextParser().parse(paths, sources, ctx).collect(toList())
+    }
+
+    private fun streamed(compress: Boolean): Pair<Path, RecipeRun> {
+        val ctx = InMemoryExecutionContext { throw it }
+        val sourceFiles = sourceFiles(ctx)
+        val out = dir.resolve(if (compress) "compressed" else "streamed")
+        val recipeRun = StreamingDataTables(out, compress, ctx).use { tables ->
+            ctx.putMessage(ExecutionContext.DATA_TABLES, tables.tables)
+            val run = ListFiles().run(InMemoryLargeSourceSet(sourceFiles), ctx)
+            assertThat(tables.rowCount).isEqualTo(2)
+            run
+        }
+        return out to recipeRun
+    }
+
+    private fun exported(): Path {
+        val ctx = InMemoryExecutionContext { throw it }
+        val out = dir.resolve("exported")
+        ListFiles().run(InMemoryLargeSourceSet(sourceFiles(ctx)), ctx).exportDatatablesToCsv(out, ctx)
+        return out
+    }
+
+    private fun files(dir: Path): Map<String, String> = Files.list(dir).use { files ->
+        files.collect(toList()).associate { file ->
+            val name = file.fileName.toString()
+            name to if (name.endsWith(".gz")) {
+                InputStreamReader(GZIPInputStream(Files.newInputStream(file)), StandardCharsets.UTF_8).use { it.readText() }
+            } else {
+                String(Files.readAllBytes(file), StandardCharsets.UTF_8)
+            }
+        }
+    }
+
+    @Test
+    fun `rows are written like the recipe run exports them`() {
+        val (streamed, recipeRun) = streamed(false)
+
+        val expected = files(exported())
+        assertThat(expected).isNotEmpty
+        assertThat(files(streamed)).isEqualTo(expected)
+
+        // The rows were never kept on heap
+        assertThat(recipeRun.dataTables.values).allSatisfy { rows -> assertThat(rows).isEmpty() }
+    }
+
+    @Test
+    fun `rows are gzipped when asked for`() {
+        val (compressed, _) = streamed(true)
+
+        val expected = files(exported()).mapKeys { (name, _) -> "$name.gz" }
+        assertThat(files(compressed)).isEqualTo(expected)
+    }
+}